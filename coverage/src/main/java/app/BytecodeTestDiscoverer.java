@@ -0,0 +1,135 @@
+package app;
+
+import io.ContentCache;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Lists the test methods of a test class from its class file, without loading it, with the
+ * same rules as {@link ListTests}: methods declared by the class itself, annotated directly
+ * with a JUnit 5 test annotation if there is any, otherwise with JUnit 4's @Test.
+ * (@RunWith only selects JUnit 4 in ListTests; the listed methods are the same.)
+ *
+ * Results are cached under {@link ContentCache#root()} per hash of the class file.
+ */
+public final class BytecodeTestDiscoverer {
+
+    private static final int CACHE_VERSION = 1;
+
+    private static final Set<String> JUNIT5_TESTS = Set.of(
+            "Lorg/junit/jupiter/api/Test;",
+            "Lorg/junit/jupiter/api/RepeatedTest;",
+            "Lorg/junit/jupiter/params/ParameterizedTest;",
+            "Lorg/junit/jupiter/api/TestFactory;",
+            "Lorg/junit/jupiter/api/TestTemplate;"
+    );
+    private static final String JUNIT4_TEST = "Lorg/junit/Test;";
+
+    private BytecodeTestDiscoverer() {
+    }
+
+    /**
+     * Sorted test method names of testClassFqcn, or null if its class file is not under
+     * testClassesPath (a directory or jar) and the caller has to fall back to ListTests.
+     */
+    public static List<String> discover(File testClassesPath, String testClassFqcn) throws IOException {
+        byte[] bytes = readClass(testClassesPath, testClassFqcn.replace('.', '/') + ".class");
+        if (bytes == null) {
+            return null;
+        }
+
+        Path cached = new File(ContentCache.root(),
+                "tests-" + ContentCache.sha256(concat(bytes, CACHE_VERSION)) + ".txt").toPath();
+        if (Files.isRegularFile(cached)) {
+            return Files.readAllLines(cached, StandardCharsets.UTF_8);
+        }
+
+        List<String> methods = list(bytes);
+        try {
+            Files.createDirectories(cached.getParent());
+            Path tmp = Files.createTempFile(cached.getParent(), cached.getFileName().toString(), ".tmp");
+            Files.write(tmp, methods, StandardCharsets.UTF_8);
+            ContentCache.publish(tmp, cached);
+        } catch (IOException e) {
+            // The cache is an optimization only.
+            System.out.println("[BytecodeTestDiscoverer] could not cache " + cached + ": " + e);
+        }
+        return methods;
+    }
+
+    static List<String> list(byte[] classBytes) {
+        List<String> junit5 = new ArrayList<>();
+        List<String> junit4 = new ArrayList<>();
+
+        new ClassReader(classBytes).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                             String signature, String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM9) {
+                    private boolean isJUnit5;
+                    private boolean isJUnit4;
+
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String annDescriptor, boolean visible) {
+                        // Reflection (isAnnotationPresent) only sees runtime-visible annotations.
+                        if (visible) {
+                            isJUnit5 |= JUNIT5_TESTS.contains(annDescriptor);
+                            isJUnit4 |= JUNIT4_TEST.equals(annDescriptor);
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        if (isJUnit5) junit5.add(name);
+                        if (isJUnit4) junit4.add(name);
+                    }
+                };
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        List<String> methods = junit5.isEmpty() ? junit4 : junit5;
+        methods.sort(Comparator.naturalOrder());
+        return methods;
+    }
+
+    static byte[] readClass(File testClassesPath, String entryName) throws IOException {
+        if (testClassesPath.isDirectory()) {
+            Path p = testClassesPath.toPath().resolve(entryName);
+            return Files.isRegularFile(p) ? Files.readAllBytes(p) : null;
+        }
+        if (testClassesPath.isFile()) {
+            try (ZipFile zip = new ZipFile(testClassesPath)) {
+                ZipEntry entry = zip.getEntry(entryName);
+                if (entry == null) return null;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    return in.readAllBytes();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] concat(byte[] bytes, int version) {
+        byte[] out = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, out, 0, bytes.length);
+        out[bytes.length] = (byte) version;
+        return out;
+    }
+}
@@ -0,0 +1,125 @@
+package app;
+
+import jacoco.TestDelta;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Orders AGT candidates by expected gain, so that the keep/drop replay meets the high-yield
+ * tests first and the saturation stop cuts off more of the tail. Signals, each scaled to
+ * [0, 1] by its largest value among the candidates and averaged over those present for a
+ * candidate:
+ *   - distinct methods of analyzed (SUT) classes the test method invokes, from its bytecode;
+ *   - analyzed probes it hits beyond the baseline in a batched per-test sessions run;
+ *   - instructions it added over the baseline in the previous run (test_deltas_all.csv).
+ * Candidates without any signal keep their relative order after the others; ties too.
+ */
+final class CandidatePrioritizer {
+
+    private final Map<String, Map<String, Double>> signals = new HashMap<>();
+
+    /** Adds one signal: raw values per selector (fqcn#method), larger = more expected gain. */
+    CandidatePrioritizer signal(String name, Map<String, ? extends Number> values) {
+        if (values == null || values.isEmpty()) {
+            return this;
+        }
+        double max = 0;
+        for (Number v : values.values()) {
+            max = Math.max(max, v.doubleValue());
+        }
+        Map<String, Double> scaled = new HashMap<>();
+        for (Map.Entry<String, ? extends Number> e : values.entrySet()) {
+            scaled.put(e.getKey(), max > 0 ? e.getValue().doubleValue() / max : 0);
+        }
+        signals.put(name, scaled);
+        return this;
+    }
+
+    Set<String> signalNames() {
+        return signals.keySet();
+    }
+
+    /** The selectors, highest score first; stable. */
+    List<String> order(List<String> selectors) {
+        Map<String, Double> score = new HashMap<>();
+        for (String s : selectors) {
+            double sum = 0;
+            int n = 0;
+            for (Map<String, Double> signal : signals.values()) {
+                Double v = signal.get(s);
+                if (v != null) {
+                    sum += v;
+                    n++;
+                }
+            }
+            score.put(s, n == 0 ? -1 : sum / n);
+        }
+        List<String> ordered = new ArrayList<>(selectors);
+        ordered.sort(Comparator.comparingDouble((String s) -> score.get(s)).reversed());
+        return ordered;
+    }
+
+    /**
+     * Per test method of the class: the number of distinct methods of the given classes
+     * (internal names) it invokes directly. Null if the class file is not in the test classes.
+     */
+    static Map<String, Integer> referencedMethods(File testClassesPath,
+                                                  String testClassFqcn,
+                                                  Set<String> analyzedClasses) throws IOException {
+        byte[] bytes = BytecodeTestDiscoverer.readClass(testClassesPath, testClassFqcn.replace('.', '/') + ".class");
+        if (bytes == null) {
+            return null;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                             String signature, String[] exceptions) {
+                Set<String> called = new HashSet<>();
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String mName, String mDescriptor,
+                                                boolean isInterface) {
+                        if (analyzedClasses.contains(owner)) {
+                            called.add(owner + "." + mName + mDescriptor);
+                        }
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        counts.merge(testClassFqcn + "#" + name, called.size(), Math::max);
+                    }
+                };
+            }
+        }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return counts;
+    }
+
+    /** Added instructions per selector from a test_deltas_all.csv; empty if there is none. */
+    static Map<String, Integer> history(File testDeltasCsv) {
+        Map<String, Integer> added = new HashMap<>();
+        if (!testDeltasCsv.isFile()) {
+            return added;
+        }
+        try {
+            for (TestDelta d : new io.TestDeltaCsvReader().read(testDeltasCsv)) {
+                added.put(d.getTestSelector(), d.getAddedInstructions());
+            }
+        } catch (IOException e) {
+            System.out.println("[CandidatePrioritizer] ignoring unreadable " + testDeltasCsv.getPath() + ": " + e);
+        }
+        return added;
+    }
+}
@@ -0,0 +1,82 @@
+package app;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates AGT candidates ahead of the keep/drop replay and hands them out strictly in
+ * index order, whatever order they finish in. At most 2 * parallelism candidates, the one
+ * being replayed included, are in flight; with parallelism 1 each candidate is evaluated on
+ * the caller's thread when it is taken. The replay, and so every decision and journal line,
+ * does not depend on the parallelism.
+ */
+final class CandidateWindow<T> implements AutoCloseable {
+
+    @FunctionalInterface
+    interface Evaluation<T> {
+        T evaluate(int index) throws Exception;
+    }
+
+    private final int end;
+    private final int parallelism;
+    private final Evaluation<T> evaluation;
+    private final ExecutorService pool;
+    private final Map<Integer, Future<T>> inFlight = new HashMap<>();
+    private int nextToSubmit;
+
+    /** A window over candidates [first, end). */
+    CandidateWindow(int first, int end, int parallelism, Evaluation<T> evaluation) {
+        this.end = end;
+        this.parallelism = Math.max(1, parallelism);
+        this.evaluation = evaluation;
+        this.pool = this.parallelism > 1 ? newPool(this.parallelism) : null;
+        this.nextToSubmit = first;
+    }
+
+    boolean isParallel() {
+        return pool != null;
+    }
+
+    /** The evaluated candidate at index; indexes must be taken in increasing order. */
+    T take(int index) throws Exception {
+        if (pool == null) {
+            return evaluation.evaluate(index);
+        }
+        while (nextToSubmit < end && nextToSubmit < index + 2 * parallelism) {
+            final int k = nextToSubmit++;
+            inFlight.put(k, pool.submit(() -> evaluation.evaluate(k)));
+        }
+        Future<T> f = inFlight.remove(index);
+        if (f == null) {
+            throw new IllegalStateException("candidate " + index + " not in the window");
+        }
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    /** Interrupts candidates still in flight (their forks are killed). */
+    @Override
+    public void close() {
+        if (pool != null) pool.shutdownNow();
+    }
+
+    private static ExecutorService newPool(int parallelism) {
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "covfilter-candidate-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
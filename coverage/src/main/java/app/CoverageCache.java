@@ -0,0 +1,192 @@
+package app;
+
+import io.ContentCache;
+import runner.TestOutcome;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coverage of single selectors kept across runs under {@link ContentCache#root()}: the exec
+ * file of a fork that ran one test method (or one whole class, for the manual baseline) and
+ * the status of its tests, keyed by the rest of the fork's environment
+ * ({@link ForkedJacocoRunner#coverageFingerprint()}: SUT content, agent, options, class path),
+ * the content of the whole test class path and the selector. A test whose test classes and
+ * SUT did not change since it last ran, in any target or variant, is not forked again.
+ *
+ * Only forks whose tests all finished without failure are stored (skipped and aborted tests
+ * count as finished); a fork with a failed, timed out or stalled test runs again next time.
+ */
+final class CoverageCache {
+
+    /** Reuse and store per-selector coverage across runs (default true). */
+    static final String CACHE_PROP = "covfilter.coverage.cache";
+
+    private static final String CACHE_VERSION = "2";
+
+    /** What the cache needs of a {@link ForkedJacocoRunner}. */
+    interface Forks {
+        String testClassesPath();
+
+        /** See {@link ForkedJacocoRunner#coverageFingerprint()}. */
+        String coverageFingerprint() throws IOException;
+
+        /** See {@link ForkedJacocoRunner#runSelectors}. */
+        Map<String, TestOutcome.Status> runSelectors(List<String> selectors, File execFile, boolean append)
+                throws Exception;
+    }
+
+    private final Forks runner;
+    private final boolean enabled;
+    // Test class -> whether it is in the test class path.
+    private final Map<String, Boolean> inTestClasses = new ConcurrentHashMap<>();
+    // Hash of the test class path, computed on first use.
+    private volatile String testClassesHash;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    CoverageCache(ForkedJacocoRunner runner) {
+        this(new Forks() {
+            @Override
+            public String testClassesPath() {
+                return runner.getTestClassesPath();
+            }
+
+            @Override
+            public String coverageFingerprint() throws IOException {
+                return runner.coverageFingerprint();
+            }
+
+            @Override
+            public Map<String, TestOutcome.Status> runSelectors(List<String> selectors, File execFile, boolean append)
+                    throws Exception {
+                return runner.runSelectors(selectors, execFile, append);
+            }
+        });
+    }
+
+    CoverageCache(Forks runner) {
+        this.runner = runner;
+        this.enabled = Boolean.parseBoolean(System.getProperty(CACHE_PROP, "true"));
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Writes the coverage of one selector to execFile and returns the status of its tests:
+     * those of the cached entry if there is one, else what a fork records (which is then
+     * cached if every test finished).
+     */
+    Map<String, TestOutcome.Status> runSelector(String selector, File execFile) throws Exception {
+        File entry = enabled ? entryFor(selector) : null;
+        File outcomeEntry = entry == null ? null : outcomeFile(entry);
+        if (entry != null && entry.isFile() && outcomeEntry.isFile()) {
+            Map<String, TestOutcome.Status> cached = RunMany.readOutcomes(outcomeEntry);
+            if (cacheable(cached)) {
+                File parent = execFile.getParentFile();
+                if (parent != null) parent.mkdirs();
+                Files.copy(entry.toPath(), execFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        if (enabled) {
+            misses.incrementAndGet();
+        }
+
+        Map<String, TestOutcome.Status> outcomes = runner.runSelectors(List.of(selector), execFile, false);
+
+        if (entry != null && execFile.isFile() && cacheable(outcomes)) {
+            try {
+                Path dir = Files.createDirectories(entry.toPath().getParent());
+                // The outcome goes first: an exec entry without it is never a hit.
+                Path tmp = Files.createTempFile(dir, outcomeEntry.getName(), ".tmp");
+                List<String> lines = new ArrayList<>();
+                outcomes.forEach((test, status) -> lines.add(test + "\t0\t" + status));
+                Files.write(tmp, lines, StandardCharsets.UTF_8);
+                ContentCache.publish(tmp, outcomeEntry.toPath());
+
+                tmp = Files.createTempFile(dir, entry.getName(), ".tmp");
+                Files.copy(execFile.toPath(), tmp, StandardCopyOption.REPLACE_EXISTING);
+                ContentCache.publish(tmp, entry.toPath());
+            } catch (IOException e) {
+                // The cache is an optimization only.
+                System.out.println("[CoverageCache] could not cache " + entry + ": " + e);
+            }
+        }
+        return outcomes;
+    }
+
+    int hits() {
+        return hits.get();
+    }
+
+    int misses() {
+        return misses.get();
+    }
+
+    /** At least one test ran, and none failed, timed out or stalled. */
+    static boolean cacheable(Map<String, TestOutcome.Status> outcomes) {
+        if (outcomes.isEmpty()) return false;
+        for (TestOutcome.Status status : outcomes.values()) {
+            if (status != TestOutcome.Status.SUCCESSFUL
+                    && status != TestOutcome.Status.SKIPPED
+                    && status != TestOutcome.Status.ABORTED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Status of the entry's tests, in the format of {@link RunMany#writeDurations}. */
+    private static File outcomeFile(File entry) {
+        return new File(entry.getPath() + ".outcome");
+    }
+
+    /** Cache file of the selector, or null if its test class is not in the test class path. */
+    private File entryFor(String selector) throws IOException {
+        int hash = selector.indexOf('#');
+        String testClass = hash >= 0 ? selector.substring(0, hash) : selector;
+        File testClassesPath = new File(runner.testClassesPath());
+        Boolean present = inTestClasses.get(testClass);
+        if (present == null) {
+            present = BytecodeTestDiscoverer.readClass(testClassesPath, testClass.replace('.', '/') + ".class") != null;
+            inTestClasses.put(testClass, present);
+        }
+        if (!present) {
+            return null;
+        }
+        String key = ContentCache.sha256(String.join("\n",
+                CACHE_VERSION, runner.coverageFingerprint(), testClassesHash(testClassesPath), selector)
+                .getBytes(StandardCharsets.UTF_8));
+        return new File(ContentCache.root(), "coverage-" + key + ".exec");
+    }
+
+    /**
+     * Content of every class and resource in the test class path, so that a change to any
+     * helper a test calls (not only to the test class itself) misses the cache.
+     */
+    private String testClassesHash(File testClassesPath) throws IOException {
+        String h = testClassesHash;
+        if (h == null) {
+            synchronized (this) {
+                if (testClassesHash == null) {
+                    testClassesHash = ContentCache.sha256(testClassesPath);
+                }
+                h = testClassesHash;
+            }
+        }
+        return h;
+    }
+}
@@ -2,7 +2,7 @@ package app;
 
 import jacoco.CoverageAnalyzer;
 import model.CoverageSet;
-import runner.TestTimeouts;
+import runner.ExitTrap;
 
 import java.io.File;
 import java.io.IOException;
@@ -16,19 +16,86 @@ import java.util.Objects;
 
 public final class CoverageFilterApp {
 
+    /**
+     * Run all AGT methods in one fork with one coverage session per test instead of one fork
+     * per method. SUT static initializers are credited to every test that hits their class.
+     */
+    public static final String SESSIONS_PROP = "covfilter.sessions";
+    /** Number of candidates evaluated concurrently (forks + analysis); 1 = sequential. */
+    public static final String PARALLELISM_PROP = "covfilter.parallelism";
+    /**
+     * Continue the filtering run of the work directory from its journal (see
+     * {@link io.FilterJournal}) instead of starting over.
+     */
+    public static final String RESUME_PROP = "covfilter.resume";
+    /**
+     * How the kept set is chosen: incremental (default; a candidate is kept if it adds a unit
+     * beyond the earlier kept ones, in candidate order) or lines | branches | instructions for
+     * a greedy maximum-coverage pick over all candidates by that counter, see
+     * {@link jacoco.CoverageAnalyzer#selectGreedy}.
+     */
+    public static final String SELECTION_PROP = "covfilter.selection";
+    /**
+     * Run the whole AGT class once up front and stop evaluating candidates as soon as the kept
+     * set covers every unit of manual + AGT; the rest are dropped without running them.
+     */
+    public static final String SATURATION_PROP = "covfilter.saturation.stop";
+    /**
+     * Evaluate the candidates in order of expected gain instead of discovery order, see
+     * {@link CandidatePrioritizer}; with the incremental selection this changes which tests
+     * are kept, and the saturation stop is reached sooner.
+     */
+    public static final String PRIORITIZE_PROP = "covfilter.prioritize";
+
+    // "--name value" / "--name=value" options accepted anywhere on the command line.
+    private static final java.util.Map<String, String> VALUE_OPTIONS = java.util.Map.of(
+            "parallelism", PARALLELISM_PROP,
+            "target-parallelism", ManifestScheduler.TARGET_PARALLELISM_PROP,
+            "daemon-port", FilterDaemon.PORT_PROP,
+            "coverage-cache", CoverageCache.CACHE_PROP,
+            "trap-exit", ExitTrap.TRAP_EXIT_PROP,
+            "selection", SELECTION_PROP,
+            "analysis-scope", jacoco.AnalysisScope.MODE_PROP,
+            "analysis-includes", jacoco.AnalysisScope.INCLUDES_PROP,
+            "analysis-excludes", jacoco.AnalysisScope.EXCLUDES_PROP
+    );
+    // "--name" flags (true unless given "--name=false").
+    private static final java.util.Map<String, String> FLAG_OPTIONS = java.util.Map.of(
+            "resume", RESUME_PROP,
+            "saturation-stop", SATURATION_PROP,
+            "prioritize", PRIORITIZE_PROP
+    );
+
     private final CoverageAnalyzer coverageAnalyzer;
     private final ForkedJacocoRunner runner;
+    private final CoverageCache coverageCache;
+    // Candidate and sessions forks killed at their deadline; written to fork_timeouts.csv.
+    private final java.util.List<model.ForkTimeoutRow> forkTimeouts =
+            java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+    // Journal of the filtering run in progress, if any.
+    private volatile io.FilterJournal journal;
 
     public CoverageFilterApp(CoverageAnalyzer coverageAnalyzer,
                              ForkedJacocoRunner runner) {
         this.coverageAnalyzer = Objects.requireNonNull(coverageAnalyzer);
         this.runner = Objects.requireNonNull(runner);
+        this.coverageCache = new CoverageCache(runner);
     }
 
     /* =========================
      * Main entrypoint
      * ========================= */
     public static void main(String[] args) throws Exception {
+        args = applyOptions(args);
+        if (args.length == 3 && "manifest".equalsIgnoreCase(args[0])) {
+            File jarDir = resolveJarDir(CoverageFilterApp.class);
+            ManifestScheduler.run(args[1], resolveMaybeAbsolute(jarDir, args[2]), jarDir);
+            return;
+        }
+        if (args.length == 1 && "daemon".equalsIgnoreCase(args[0])) {
+            FilterDaemon.run(resolveJarDir(CoverageFilterApp.class));
+            return;
+        }
         if (args.length < 9) {
             throw new IllegalArgumentException(
                     "Usage:\n" +
@@ -37,14 +104,52 @@ public final class CoverageFilterApp {
                             "  <manualTestClass> <agtTestClass>\n" +
                             "  <jacocoAgentRel> <sutClassesRel> <libsDir>\n" +
                             "  <testClassesDirRel>\n" +
-                            "  [testTimeoutMs]"
+                            "  [testTimeoutMs]\n" +
+                            "  or: manifest <class|filter> <manifestFile>\n" +
+                            "      (one target per line: the arguments above, tab- or, in .csv, comma-separated;\n" +
+                            "       or a .json array of targets, each an array or an object of those arguments)\n" +
+                            "  or: daemon  (serve jobs over loopback HTTP, see FilterDaemon)\n" +
+                            "Options:\n" +
+                            "  --parallelism <n>   evaluate n candidates concurrently (default 1)\n" +
+                            "  --resume            filter mode: continue an interrupted run from the\n" +
+                            "                      journal in its work directory\n" +
+                            "  --saturation-stop   filter mode: stop once the kept set covers what the\n" +
+                            "                      whole AGT class covers\n" +
+                            "  --prioritize        filter mode: evaluate candidates by expected gain, not\n" +
+                            "                      in discovery order\n" +
+                            "  --selection <incremental|lines|branches|instructions>\n" +
+                            "                      filter mode: keep candidates that add a unit in order\n" +
+                            "                      (default), or a greedy maximum-coverage pick by counter\n" +
+                            "  --target-parallelism <n>\n" +
+                            "                      manifest mode: run n targets concurrently, longest\n" +
+                            "                      expected first (default 1)\n" +
+                            "  --daemon-port <n>   daemon mode: loopback port (default: any free port)\n" +
+                            "  --coverage-cache <true|false>\n" +
+                            "                      reuse per-test coverage of unchanged tests and SUT\n" +
+                            "                      across runs (default true)\n" +
+                            "  --trap-exit <true|false>\n" +
+                            "                      turn System.exit into a test failure in the test\n" +
+                            "                      JVMs (default false; installs a SecurityManager)\n" +
+                            "  --analysis-scope <all|exec|cut>\n" +
+                            "                      analyze every class, only executed classes, or only\n" +
+                            "                      the package of the AGT test class (default all)\n" +
+                            "  --analysis-includes <patterns> / --analysis-excludes <patterns>\n" +
+                            "                      JaCoCo-style class filters for the analysis"
             );
         }
 
-        String mode = args[0];
-        if (args.length >= 10) {
-            System.setProperty(TestTimeouts.TIMEOUT_PROP, args[9]);
+        try (TargetResources shared = new TargetResources()) {
+            runTarget(args, shared);
         }
+    }
+
+    /**
+     * One run over the positional arguments (mode first), with runners and analyzers taken
+     * from shared; used for the single target of a plain run and per target in batch mode.
+     */
+    static void runTarget(String[] args, TargetResources shared) throws Exception {
+        String mode = args[0];
+        String testTimeoutMs = args.length >= 10 ? args[9] : null;
 
         File jarDir = resolveJarDir(CoverageFilterApp.class);
 
@@ -64,69 +169,26 @@ public final class CoverageFilterApp {
         File libsDir = resolveMaybeAbsolute(jarDir, args[7]);
         File testClassesFile = resolveMaybeAbsolute(jarDir, args[8]);
 
-        // Unpack classes if provided as a fat JAR; otherwise, use the directory directly
-        File classesDir;
-        File tempExtractDir = null;
-        if (classesInput.isFile() && classesInput.getName().endsWith(".jar")) {
-            java.nio.file.Path tmpDirPath = java.nio.file.Files.createTempDirectory("covfilter_classes_");
-            tempExtractDir = tmpDirPath.toFile();
-            java.util.jar.JarFile jarFile = new java.util.jar.JarFile(classesInput);
-            try {
-                java.util.Enumeration<java.util.jar.JarEntry> entries = jarFile.entries();
-                while (entries.hasMoreElements()) {
-                    java.util.jar.JarEntry entry = entries.nextElement();
-                    // Skip multi-release classes and other nested versions to avoid
-                    // duplicate class names (e.g., META-INF/versions/9/net/...)
-                    String name = entry.getName();
-                    if (entry.isDirectory()) {
-                        continue;
-                    }
-                    // Skip multi-release versions, IDE-specific launcher resources, and
-                    // '.class.ide-launcher-res' files that cause duplicate class names
-                    if (name != null) {
-                        if (name.startsWith("META-INF/versions/") || name.startsWith("META-INF/ide-deps/")) {
-                            continue;
-                        }
-                        if (name.endsWith(".class.ide-launcher-res")) {
-                            continue;
-                        }
-                    }
-                    java.io.File outFile = new java.io.File(tempExtractDir, name);
-                    java.io.File parent = outFile.getParentFile();
-                    if (parent != null && !parent.exists()) {
-                        parent.mkdirs();
-                    }
-                    try (java.io.InputStream in = jarFile.getInputStream(entry);
-                         java.io.OutputStream out = new java.io.FileOutputStream(outFile)) {
-                        in.transferTo(out);
-                    }
-                }
-            } finally {
-                jarFile.close();
-            }
-            classesDir = tempExtractDir.getCanonicalFile();
-        } else {
-            classesDir = classesInput.getCanonicalFile();
-        }
+        // A fat JAR is analyzed in place (see ProbeIndex); no extraction.
+        File classesDir = classesInput.getCanonicalFile();
 
         String jacocoAgentJar = jacocoFile.getCanonicalPath();
         String sutClassesPath = sutClassesFile.getCanonicalPath();
         String testClassesPath = testClassesFile.getCanonicalPath();
         String toolJarPath = resolveJarPath(CoverageFilterApp.class);
 
-        ForkedJacocoRunner runner = new ForkedJacocoRunner(
+        ForkedJacocoRunner runner = shared.runner(
                 jacocoAgentJar,
                 libsDir,
                 sutClassesPath,
                 testClassesPath,
                 toolJarPath,
-                "app.RunMany"
+                testTimeoutMs
         );
 
-        CoverageFilterApp app = new CoverageFilterApp(
-                new CoverageAnalyzer(classesDir),
-                runner
-        );
+        CoverageAnalyzer analyzer =
+                shared.analyzer(classesDir, jacoco.AnalysisScope.fromSystemProperties(agtTestClass));
+        CoverageFilterApp app = new CoverageFilterApp(analyzer, runner);
 
         app.run(mode, workDir.getCanonicalFile(), manualTestClass, agtTestClass);
     }
@@ -152,11 +214,11 @@ public final class CoverageFilterApp {
         CoverageSet agtCoverage = coverageAnalyzer.analyze(agtExec);
 
         System.out.println("Manual covered units: " +
-                manualCoverage.getCoveredUnits().size());
+                manualCoverage.size());
         System.out.println("AGT covered units:    " +
-                agtCoverage.getCoveredUnits().size());
+                agtCoverage.size());
         System.out.println("AGT-only coverage:    " +
-                agtCoverage.subtract(manualCoverage).getCoveredUnits().size());
+                agtCoverage.subtract(manualCoverage).size());
     }
 
     public void runIncrementalFiltering(File workDir,
@@ -171,31 +233,27 @@ public final class CoverageFilterApp {
          * 1) Baseline: manual only
          * ========================= */
         File baselineExec = new File(workDir, "baseline_manual.exec");
-        runner.runSelectors(java.util.List.of(manualTestClass), baselineExec, false);
+        coverageCache.runSelector(manualTestClass, baselineExec);
 
-        jacoco.CoverageAnalyzer.AnalysisResult baselineAnalysis = coverageAnalyzer.analyzeExec(baselineExec);
+        // Loaded once; every candidate is OR-merged against this in-memory snapshot.
+        jacoco.ProbeSnapshot baselineProbes = coverageAnalyzer.loadSnapshot(baselineExec);
+        jacoco.CoverageAnalyzer.AnalysisResult baselineAnalysis = coverageAnalyzer.analyzeSnapshot(baselineProbes);
         model.CoverageSet baseline = baselineAnalysis.getCoverageSet();
 
         /* =========================
-         * 2) Discover AGT methods (forked)
+         * 2) Discover AGT methods (from bytecode; forked ListTests as fallback)
          * ========================= */
-        java.util.List<String> methods = runner.runAndCaptureLines(
-                        "app.ListTests",
-                        java.util.List.of(agtTestClass)
-                ).stream()
-                .filter(s -> s != null && !s.isBlank())
-                .filter(s -> !s.startsWith("SLF4J("))
-                .filter(s -> !s.startsWith("OpenJDK"))
-                .filter(s -> !s.startsWith("Dec "))
-                .filter(s -> !s.startsWith("["))
-                .toList();
+        java.util.List<String> methods = discoverTestMethods(agtTestClass);
 
         System.out.println("[CoverageFilterApp] AGT methods discovered: " + methods.size());
 
         /* =========================
          * 3) Incremental filtering
          * ========================= */
-        model.CoverageSet current = baseline;
+        // Grown in place as candidates are kept.
+        model.CoverageSet current = baseline.mutableCopy();
+        jacoco.ProbeAccumulator accumulated = coverageAnalyzer.newAccumulator(baselineProbes);
+        int fastPathDrops = 0;
         java.util.List<String> keptSelectors = new java.util.ArrayList<>();
 
         java.util.List<jacoco.TestDelta> allTestDeltas = new java.util.ArrayList<>();
@@ -206,63 +264,234 @@ public final class CoverageFilterApp {
         // Console spam control (CSV will still have full detail)
         final boolean PRINT_LINE_DELTAS_FOR_KEPT = false;
 
-        for (int i = 0; i < methods.size(); i++) {
-            String selector = agtTestClass + "#" + methods.get(i);
-            File candExec = new File(workDir, "cand_" + i + ".exec");
+        // Analyzed probes beyond the baseline of every candidate, for a greedy selection.
+        String selection = System.getProperty(SELECTION_PROP, "incremental").trim();
+        jacoco.GreedySelection.Metric greedyMetric =
+                selection.equalsIgnoreCase("incremental") ? null : jacoco.GreedySelection.Metric.parse(selection);
+        java.util.Map<String, org.jacoco.core.data.ExecutionDataStore> candidateProbes = new java.util.LinkedHashMap<>();
+
+        // Candidates decided by an earlier, interrupted run: replayed from the journal, not run.
+        File journalFile = new File(workDir, io.FilterJournal.FILE_NAME);
+        String journalHeader = io.FilterJournal.header(manualTestClass, agtTestClass,
+                coverageAnalyzer.analyzedOnly(baselineProbes.toStore()), methods.stream().sorted().toList());
+        io.FilterJournal.Restored restored = io.FilterJournal.Restored.NONE;
+        if (Boolean.getBoolean(RESUME_PROP)) {
+            restored = io.FilterJournal.read(journalFile, journalHeader);
+            if (restored.getEntries().isEmpty()) {
+                System.out.println("[CoverageFilterApp] no journal of this run in " + workDir.getPath() + "; starting over");
+            }
+        }
+        for (io.FilterJournal.Entry e : restored.getEntries()) {
+            jacoco.TestDelta td = e.getTestDelta();
+            allTestDeltas.add(td);
+            candidateProbes.put(td.getTestSelector(), e.getProbes());
+            if (e.getDecision() == io.FilterJournal.Decision.FAST_DROP) {
+                fastPathDrops++;
+            } else if (e.getDecision() == io.FilterJournal.Decision.KEEP) {
+                jacoco.CoverageDelta delta = coverageAnalyzer.delta(baselineProbes, e.getProbes(), td.getTestSelector());
+                keptSelectors.add(td.getTestSelector());
+                current.addAll(delta.getAddedUnits());
+                accumulated.add(e.getProbes());
+                keptTestDeltas.add(td);
+                addLineDeltaRows(csvWriter, td.getTestSelector(), delta, lineDeltaRows);
+            }
+        }
+        forkTimeouts.addAll(restored.getTimeouts());
+        final int firstCandidate = restored.getEntries().size();
+        if (firstCandidate > 0) {
+            System.out.println("[CoverageFilterApp] resumed " + firstCandidate + " of " + methods.size()
+                    + " candidates from " + journalFile.getPath() + " (" + keptSelectors.size() + " kept)");
+        }
+        journal = io.FilterJournal.create(journalFile, journalHeader, restored);
 
-            // Run candidate method only; baseline is merged during analysis.
-            runner.runSelectors(java.util.List.of(selector), candExec, false);
+        // Optional: units of manual + the whole AGT class, the most the candidates can reach.
+        model.CoverageSet ceiling = null;
+        if (Boolean.getBoolean(SATURATION_PROP) && firstCandidate < methods.size()) {
+            File agtExec = new File(workDir, "agt_class.exec");
+            try {
+                coverageCache.runSelector(agtTestClass, agtExec);
+                ceiling = coverageAnalyzer.analyzeMerged(baselineProbes, coverageAnalyzer.loadExec(agtExec))
+                        .getCoverageSet();
+                System.out.println("[CoverageFilterApp] coverage ceiling (manual + " + agtTestClass + "): "
+                        + ceiling.size() + " units");
+            } catch (ForkTimeoutException e) {
+                recordTimeout("ceiling", e);
+                System.out.println("[CoverageFilterApp] AGT class fork timed out; no saturation stop");
+            }
+        }
+        final boolean saturatedAtStart = ceiling != null && !ceiling.addsAnythingBeyond(current);
+        int saturatedDrops = 0;
+
+        // Evaluation order: the restored candidates as they were decided, then the rest.
+        java.util.List<String> remaining = new java.util.ArrayList<>(methods);
+        java.util.List<String> ordered = new java.util.ArrayList<>();
+        for (io.FilterJournal.Entry e : restored.getEntries()) {
+            String m = e.getTestDelta().getTestSelector().substring(agtTestClass.length() + 1);
+            remaining.remove(m);
+            ordered.add(m);
+        }
+        boolean prioritize = Boolean.getBoolean(PRIORITIZE_PROP) && remaining.size() > 1 && !saturatedAtStart;
+        java.util.Map<String, Integer> history = prioritize
+                ? CandidatePrioritizer.history(new File(workDir, "test_deltas_all.csv"))
+                : java.util.Map.of();
+
+        // Optional: all candidates in one fork, one exec session per test. Also the batched run
+        // that ranks candidates for --prioritize, unless the last run's deltas rank them all.
+        java.util.Map<String, org.jacoco.core.data.ExecutionDataStore> perTestSessions = null;
+        boolean sessionsMode = Boolean.getBoolean(SESSIONS_PROP);
+        boolean batchedForOrder = prioritize
+                && !remaining.stream().allMatch(m -> history.containsKey(agtTestClass + "#" + m));
+        if ((sessionsMode || batchedForOrder) && !remaining.isEmpty() && !saturatedAtStart) {
+            File sessionsExec = new File(workDir, "agt_sessions.exec");
+            java.util.List<String> allSelectors = remaining.stream()
+                    .map(m -> agtTestClass + "#" + m)
+                    .toList();
+            try {
+                runner.runSelectorsPerTest(allSelectors, sessionsExec);
+                perTestSessions = coverageAnalyzer.readTestSessions(sessionsExec);
+                System.out.println("[CoverageFilterApp] per-test sessions read: " + perTestSessions.size());
+            } catch (ForkTimeoutException e) {
+                recordTimeout("sessions", e);
+                System.out.println(sessionsMode
+                        ? "[CoverageFilterApp] sessions fork timed out; running candidates in separate forks"
+                        : "[CoverageFilterApp] sessions fork timed out; ordering candidates without it");
+            }
+        }
+        final java.util.Map<String, org.jacoco.core.data.ExecutionDataStore> sessions =
+                sessionsMode ? perTestSessions : null;
+
+        if (prioritize) {
+            CandidatePrioritizer prioritizer = new CandidatePrioritizer()
+                    .signal("methods", CandidatePrioritizer.referencedMethods(
+                            new File(runner.getTestClassesPath()), agtTestClass,
+                            coverageAnalyzer.analyzedClassNames()))
+                    .signal("history", history);
+            if (perTestSessions != null) {
+                java.util.Map<String, Integer> probesBeyond = new java.util.HashMap<>();
+                for (java.util.Map.Entry<String, org.jacoco.core.data.ExecutionDataStore> e : perTestSessions.entrySet()) {
+                    probesBeyond.put(e.getKey(),
+                            baselineProbes.countBeyond(coverageAnalyzer.analyzedOnly(e.getValue())));
+                }
+                prioritizer.signal("session", probesBeyond);
+            }
+            java.util.List<String> bySelector = prioritizer.order(remaining.stream()
+                    .map(m -> agtTestClass + "#" + m)
+                    .toList());
+            remaining = bySelector.stream().map(sel -> sel.substring(agtTestClass.length() + 1)).toList();
+            System.out.println("[CoverageFilterApp] candidates ordered by expected gain (signals: "
+                    + String.join(", ", new java.util.TreeSet<>(prioritizer.signalNames())) + ")");
+        }
+        ordered.addAll(remaining);
+        methods = ordered;
+
+        // Candidates are evaluated independently (possibly in parallel); the keep/drop
+        // decision below is replayed strictly in method order, so results do not depend
+        // on the parallelism.
+        int parallelism = Math.max(1, Integer.getInteger(PARALLELISM_PROP, 1));
+        final java.util.List<String> candidates = methods;
+        CandidateWindow<CandidateResult> window = new CandidateWindow<>(firstCandidate, candidates.size(), parallelism,
+                k -> evaluateCandidate(workDir, k, agtTestClass + "#" + candidates.get(k), baselineProbes, sessions));
+        if (window.isParallel()) {
+            System.out.println("[CoverageFilterApp] evaluating candidates with parallelism=" + parallelism);
+        }
 
-            // Analyze baseline + candidate from merged exec data in one pass.
-            jacoco.CoverageAnalyzer.AnalysisResult baselinePlusCandidate =
-                    coverageAnalyzer.analyzeMergedExecs(baselineExec, candExec);
+        try {
+            for (int i = firstCandidate; i < methods.size(); i++) {
+                String selector = agtTestClass + "#" + methods.get(i);
+
+                if (ceiling != null && !ceiling.addsAnythingBeyond(current)) {
+                    // Nothing left to add: the rest is not run (in-flight forks are killed below).
+                    saturatedDrops = methods.size() - i;
+                    for (int j = i; j < methods.size(); j++) {
+                        System.out.println("[DROP] " + agtTestClass + "#" + methods.get(j) + "  (saturated)");
+                    }
+                    break;
+                }
 
-            // Candidate-only contribution beyond manual baseline.
-            model.CoverageSet candAddedVsBaseline =
-                    baselinePlusCandidate.getCoverageSet().subtract(baseline);
+                CandidateResult cand = window.take(i);
+
+                jacoco.TestDelta td = cand.testDelta;
+                allTestDeltas.add(td);
+                org.jacoco.core.data.ExecutionDataStore beyond =
+                        coverageAnalyzer.analyzedOnly(baselineProbes.beyond(cand.probes));
+                candidateProbes.put(selector, beyond);
+
+                // Fast path: no probe beyond baseline + kept means no unit beyond current either.
+                jacoco.CoverageDelta delta = null;
+                if (!accumulated.hitsNewProbes(cand.probes)) {
+                    fastPathDrops++;
+                    journal.candidate(i, td, io.FilterJournal.Decision.FAST_DROP, beyond);
+                } else {
+                    delta = coverageAnalyzer.delta(baselineProbes, cand.probes, selector);
+                }
 
-            // High-level totals for ranking (vs manual baseline).
-            jacoco.TestDelta td = coverageAnalyzer.testDeltaTotals(baselineAnalysis, baselinePlusCandidate, selector);
-            allTestDeltas.add(td);
+                if (delta != null && delta.getAddedUnits().addsAnythingBeyond(current)) {
+                    keptSelectors.add(selector);
+                    current.addAll(delta.getAddedUnits());
+                    accumulated.add(cand.probes);
 
-            if (candAddedVsBaseline.addsAnythingBeyond(current)) {
-                keptSelectors.add(selector);
-                current = current.union(candAddedVsBaseline);
+                    keptTestDeltas.add(td);
+                    journal.candidate(i, td, io.FilterJournal.Decision.KEEP, beyond);
 
-                keptTestDeltas.add(td);
+                    System.out.println("[KEEP] " + selector +
+                            "  +lines=" + td.getAddedLines() +
+                            " +methods=" + td.getAddedMethods() +
+                            " +branches=" + td.getAddedBranches() +
+                            " +instr=" + td.getAddedInstructions());
 
-                System.out.println("[KEEP] " + selector +
-                        "  +lines=" + td.getAddedLines() +
-                        " +methods=" + td.getAddedMethods() +
-                        " +branches=" + td.getAddedBranches() +
-                        " +instr=" + td.getAddedInstructions());
-
-                // Per-test line attribution (store into CSV rows)
-                java.util.Map<String, jacoco.CoverageAnalyzer.LineDelta> deltas =
-                        coverageAnalyzer.newlyCoveredLines(baselineAnalysis, baselinePlusCandidate);
-
-                for (java.util.Map.Entry<String, jacoco.CoverageAnalyzer.LineDelta> e : deltas.entrySet()) {
-                    jacoco.CoverageAnalyzer.LineDelta d = e.getValue();
-                    if (d == null || (d.newlyCovered.isEmpty() && d.upgradedToFull.isEmpty())) continue;
-
-                    lineDeltaRows.add(new model.LineDeltaRow(
-                            selector,
-                            e.getKey(),
-                            csvWriter.toRanges(d.newlyCovered),
-                            csvWriter.toRanges(d.upgradedToFull)
-                    ));
-                }
+                    // Per-test line attribution (store into CSV rows)
+                    addLineDeltaRows(csvWriter, selector, delta, lineDeltaRows);
 
-                if (PRINT_LINE_DELTAS_FOR_KEPT) {
-                    System.out.println("  (line deltas captured to CSV)");
+                    if (PRINT_LINE_DELTAS_FOR_KEPT) {
+                        System.out.println("  (line deltas captured to CSV)");
+                    }
+
+                } else {
+                    if (delta != null) {
+                        journal.candidate(i, td, io.FilterJournal.Decision.DROP, beyond);
+                    }
+                    System.out.println("[DROP] " + selector +
+                            "  +lines=" + td.getAddedLines() +
+                            " +methods=" + td.getAddedMethods() +
+                            " +branches=" + td.getAddedBranches() +
+                            " +instr=" + td.getAddedInstructions());
                 }
+            }
+        } finally {
+            window.close();
+            journal.close();
+            journal = null;
+        }
 
-            } else {
-                System.out.println("[DROP] " + selector +
-                        "  +lines=" + td.getAddedLines() +
-                        " +methods=" + td.getAddedMethods() +
-                        " +branches=" + td.getAddedBranches() +
-                        " +instr=" + td.getAddedInstructions());
+        int incrementalKept = keptSelectors.size();
+        jacoco.GreedySelection greedy = null;
+        if (greedyMetric != null) {
+            long start = System.nanoTime();
+            greedy = coverageAnalyzer.selectGreedy(baselineProbes, candidateProbes, greedyMetric);
+            System.out.println("[CoverageFilterApp] greedy selection by " + selection + ": "
+                    + greedy.getSteps().size() + " of " + methods.size() + " candidates, "
+                    + greedy.getEvaluations() + " gain evaluations, "
+                    + java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+
+            // The greedy pick replaces the order-dependent kept set.
+            java.util.Map<String, jacoco.TestDelta> deltasBySelector = new java.util.HashMap<>();
+            for (jacoco.TestDelta td : allTestDeltas) {
+                deltasBySelector.put(td.getTestSelector(), td);
+            }
+            keptSelectors.clear();
+            keptTestDeltas.clear();
+            lineDeltaRows.clear();
+            current = baseline.mutableCopy();
+            for (jacoco.GreedySelection.Step step : greedy.getSteps()) {
+                String selector = step.getTestSelector();
+                jacoco.CoverageDelta delta =
+                        coverageAnalyzer.delta(baselineProbes, candidateProbes.get(selector), selector);
+                keptSelectors.add(selector);
+                keptTestDeltas.add(deltasBySelector.get(selector));
+                current.addAll(delta.getAddedUnits());
+                addLineDeltaRows(csvWriter, selector, delta, lineDeltaRows);
+                System.out.println("[GREEDY] " + selector + "  +" + selection + "=" + step.getGain()
+                        + " (total " + step.getTotal() + ")");
             }
         }
 
@@ -277,7 +506,7 @@ public final class CoverageFilterApp {
         runner.runSelectors(finalSelectors, finalExec, false);
 
         java.util.List<jacoco.ClassDelta> classDeltas =
-                coverageAnalyzer.perClassDelta(baselineExec, finalExec);
+                coverageAnalyzer.perClassDelta(baselineAnalysis, coverageAnalyzer.analyzeExec(finalExec));
 
         /* =========================
          * 5) Sort rankings
@@ -296,9 +525,23 @@ public final class CoverageFilterApp {
          * 6) Print brief summary
          * ========================= */
         System.out.println();
-        System.out.println("Manual covered units: " + baseline.getCoveredUnits().size());
-        System.out.println("Kept AGT methods:     " + keptSelectors.size());
-        System.out.println("Final covered units:  " + current.getCoveredUnits().size());
+        System.out.println("Manual covered units: " + baseline.size());
+        System.out.println("Kept AGT methods:     " + keptSelectors.size()
+                + (greedy != null ? " (greedy by " + selection + "; incremental kept " + incrementalKept + ")" : ""));
+        System.out.println("Final covered units:  " + current.size());
+        System.out.println("Fast-path drops:      " + fastPathDrops + " of " + methods.size()
+                + " (no probe beyond baseline + kept)");
+        if (ceiling != null) {
+            System.out.println("Saturated drops:      " + saturatedDrops + " of " + methods.size()
+                    + " (not run; kept set reached manual + AGT class coverage)");
+        }
+        if (coverageCache.isEnabled()) {
+            System.out.println("Coverage cache:       hits=" + coverageCache.hits()
+                    + " misses=" + coverageCache.misses());
+        }
+        if (!forkTimeouts.isEmpty()) {
+            System.out.println("Fork timeouts:        " + forkTimeouts.size() + " (see fork_timeouts.csv)");
+        }
 
         System.out.println("\nTop classes by added covered lines:");
         for (int i = 0; i < Math.min(15, classDeltas.size()); i++) {
@@ -350,10 +593,105 @@ public final class CoverageFilterApp {
         csvWriter.writeTestDeltas(new File(workDir, "test_deltas_kept.csv"), keptTestDeltas);
         csvWriter.writeClassDeltas(new File(workDir, "class_deltas.csv"), classDeltas);
         csvWriter.writeLineDeltas(new File(workDir, "line_deltas_kept.csv"), lineDeltaRows);
+        csvWriter.writeForkTimeouts(new File(workDir, "fork_timeouts.csv"), forkTimeouts);
+        if (greedy != null) {
+            csvWriter.writeSelectionSteps(new File(workDir, "greedy_selection.csv"), greedy.getSteps());
+        }
 
         System.out.println("[CoverageFilterApp] CSVs written to: " + workDir.getPath());
     }
 
+    /**
+     * Probes of one candidate and its totals relative to the manual baseline. Independent
+     * of the other candidates, so it can be computed out of order.
+     */
+    private static final class CandidateResult {
+        final org.jacoco.core.data.ExecutionDataStore probes;
+        final jacoco.TestDelta testDelta;
+
+        CandidateResult(org.jacoco.core.data.ExecutionDataStore probes,
+                        jacoco.TestDelta testDelta) {
+            this.probes = probes;
+            this.testDelta = testDelta;
+        }
+    }
+
+    private CandidateResult evaluateCandidate(File workDir,
+                                              int index,
+                                              String selector,
+                                              jacoco.ProbeSnapshot baseline,
+                                              java.util.Map<String, org.jacoco.core.data.ExecutionDataStore> sessions)
+            throws Exception {
+
+        org.jacoco.core.data.ExecutionDataStore candStore;
+        if (sessions != null) {
+            // A test that never started has an empty session.
+            candStore = sessions.getOrDefault(selector, new org.jacoco.core.data.ExecutionDataStore());
+        } else {
+            File candExec = new File(workDir, "cand_" + index + ".exec");
+
+            // Run candidate method only; baseline is merged during analysis.
+            try {
+                coverageCache.runSelector(selector, candExec);
+                candStore = coverageAnalyzer.loadExec(candExec);
+            } catch (ForkTimeoutException e) {
+                // A hung candidate adds nothing and is dropped.
+                recordTimeout("candidate", e);
+                candStore = new org.jacoco.core.data.ExecutionDataStore();
+            }
+        }
+
+        // Totals of baseline + candidate vs. baseline, from the probe index (changed classes
+        // only). Units and line deltas are computed during replay, for non-trivial candidates.
+        return new CandidateResult(candStore, coverageAnalyzer.testDelta(baseline, candStore, selector));
+    }
+
+    private void recordTimeout(String stage, ForkTimeoutException e) throws IOException {
+        System.out.println("[CoverageFilterApp] TIMEOUT (" + stage + "): " + e.getMessage());
+        model.ForkTimeoutRow row = e.toRow(stage);
+        forkTimeouts.add(row);
+        io.FilterJournal j = journal;
+        if (j != null) {
+            j.timeout(row);
+        }
+    }
+
+    private static void addLineDeltaRows(io.CsvReportWriter csvWriter,
+                                         String selector,
+                                         jacoco.CoverageDelta delta,
+                                         java.util.List<model.LineDeltaRow> rows) {
+        for (java.util.Map.Entry<String, jacoco.CoverageAnalyzer.LineDelta> e : delta.getLineDeltas().entrySet()) {
+            jacoco.CoverageAnalyzer.LineDelta d = e.getValue();
+            if (d == null || (d.newlyCovered.isEmpty() && d.upgradedToFull.isEmpty())) continue;
+
+            rows.add(new model.LineDeltaRow(
+                    selector,
+                    e.getKey(),
+                    csvWriter.toRanges(d.newlyCovered),
+                    csvWriter.toRanges(d.upgradedToFull)
+            ));
+        }
+    }
+
+    private java.util.List<String> discoverTestMethods(String testClass) throws Exception {
+        java.util.List<String> methods =
+                BytecodeTestDiscoverer.discover(new File(runner.getTestClassesPath()), testClass);
+        if (methods != null) {
+            return methods;
+        }
+        System.out.println("[CoverageFilterApp] " + testClass + " not found in test classes; forking ListTests");
+        return runner.runAndCaptureLines(
+                        "app.ListTests",
+                        java.util.List.of(testClass)
+                ).stream()
+                .filter(s -> s != null && !s.isBlank())
+                .filter(s -> !s.startsWith("SLF4J("))
+                .filter(s -> !s.startsWith("OpenJDK"))
+                .filter(s -> !s.startsWith("Dec "))
+                .filter(s -> !s.startsWith("["))
+                .toList();
+    }
+
     /**
      * Prints line numbers in a compact way with a cap to avoid enormous logs.
      * Example: [12, 13, 14, ...] (truncated)
@@ -388,6 +726,58 @@ public final class CoverageFilterApp {
     }
 
 
+    /**
+     * Strips "--name value" / "--name=value" options and "--flag" flags from the arguments
+     * and applies them as system properties (see VALUE_OPTIONS, FLAG_OPTIONS). Returns the
+     * positional arguments.
+     */
+    private static String[] applyOptions(String[] args) {
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+            String name = arg.substring(2);
+            String value = null;
+            int eq = name.indexOf('=');
+            if (eq >= 0) {
+                value = name.substring(eq + 1);
+                name = name.substring(0, eq);
+            }
+            String flag = FLAG_OPTIONS.get(name);
+            if (flag != null) {
+                System.setProperty(flag, value == null ? "true" : value.trim());
+                continue;
+            }
+            String prop = VALUE_OPTIONS.get(name);
+            if (prop == null) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            if (value == null) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for option: " + arg);
+                }
+                value = args[++i];
+            }
+            System.setProperty(prop, value.trim());
+        }
+        return positional.toArray(new String[0]);
+    }
+
+    /** Adds the options applied by {@link #applyOptions} as -D properties, for a child JVM. */
+    static void addOptionProperties(List<String> cmd) {
+        List<String> props = new ArrayList<>(VALUE_OPTIONS.values());
+        props.addAll(FLAG_OPTIONS.values());
+        for (String prop : props) {
+            String value = System.getProperty(prop);
+            if (value != null) {
+                cmd.add("-D" + prop + "=" + value);
+            }
+        }
+    }
+
     /* =========================
      * Jar directory resolver
      * ========================= */
@@ -423,7 +813,7 @@ public final class CoverageFilterApp {
      * @param arg the raw argument string
      * @return a File representing the resolved path
      */
-    private static File resolveMaybeAbsolute(File jarDir, String arg) {
+    static File resolveMaybeAbsolute(File jarDir, String arg) {
         File f = new File(arg);
         // If the path starts with a file separator (Unix) or has a drive letter (Windows), treat it as absolute.
         if (f.isAbsolute()) {
@@ -0,0 +1,147 @@
+package app;
+
+import io.ContentCache;
+import runner.TestOutcome;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Observed durations of test methods (fqcn#method -> ms), kept across runs in one file per
+ * test class path under {@link ContentCache#root()}. The forks' wall-clock deadlines are
+ * derived from it: a test that took 40ms last time does not need the global 2-minute budget.
+ * A second file holds whole filter runs (target key -> ms) for the {@link ManifestScheduler}.
+ */
+final class DurationHistory {
+
+    /** Budget of a test with history, never below this (JIT, GC, class loading noise). */
+    static final long MIN_BUDGET_MS = 1_000;
+
+    private final File file;
+    private final Map<String, Long> durations = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private DurationHistory(File file) {
+        this.file = file;
+    }
+
+    static DurationHistory load(String testClassesPath) {
+        String key;
+        try {
+            key = ContentCache.sha256(new File(testClassesPath).getCanonicalPath().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            key = ContentCache.sha256(testClassesPath.getBytes(StandardCharsets.UTF_8));
+        }
+        return load(new File(ContentCache.root(), "durations-" + key + ".tsv"));
+    }
+
+    /** Durations of whole targets, see {@link ManifestScheduler#targetKey}. */
+    static DurationHistory loadTargets() {
+        return load(new File(ContentCache.root(), "durations-targets.tsv"));
+    }
+
+    private static DurationHistory load(File file) {
+        DurationHistory h = new DurationHistory(file);
+        if (h.file.isFile()) {
+            try {
+                for (String line : Files.readAllLines(h.file.toPath(), StandardCharsets.UTF_8)) {
+                    int tab = line.lastIndexOf('\t');
+                    if (tab <= 0) continue;
+                    h.durations.put(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+                }
+            } catch (IOException | NumberFormatException e) {
+                System.out.println("[DurationHistory] ignoring unreadable " + h.file.getPath() + ": " + e);
+                h.durations.clear();
+            }
+        }
+        return h;
+    }
+
+    /** Smoothed with the previous observation so a single slow or fast run does not dominate. */
+    void record(String selector, long ms) {
+        durations.merge(selector, ms, (old, now) -> (old + now) / 2);
+        dirty = true;
+    }
+
+    /**
+     * Reads a durations file written by {@link RunMany} (selector TAB ms TAB status per line);
+     * tests that were skipped or did not finish are not recorded.
+     */
+    void recordAll(File durationsFile) {
+        if (!durationsFile.isFile()) return;
+        try {
+            for (String line : Files.readAllLines(durationsFile.toPath(), StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length < 2 || fields[0].isEmpty()) continue;
+                if (fields.length > 2 && !completed(fields[2])) continue;
+                record(fields[0], Long.parseLong(fields[1]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("[DurationHistory] ignoring unreadable " + durationsFile.getPath() + ": " + e);
+        }
+    }
+
+    private static boolean completed(String status) {
+        return !status.equals(TestOutcome.Status.SKIPPED.name())
+                && !status.equals(TestOutcome.Status.TIMEOUT.name())
+                && !status.equals(TestOutcome.Status.STALLED.name());
+    }
+
+    /**
+     * factor x the observed duration, at least {@link #MIN_BUDGET_MS}, at most fallbackMs
+     * (if positive); fallbackMs for tests without history (0 = unbounded).
+     */
+    long budgetMs(String selector, double factor, long fallbackMs) {
+        Long observed = durations.get(selector);
+        if (observed == null) {
+            return fallbackMs;
+        }
+        long budget = Math.max(MIN_BUDGET_MS, (long) Math.ceil(factor * observed));
+        return fallbackMs > 0 ? Math.min(budget, fallbackMs) : budget;
+    }
+
+    /** The smoothed observation, or -1 if there is none. */
+    long observedMs(String key) {
+        Long observed = durations.get(key);
+        return observed != null ? observed : -1;
+    }
+
+    /** Sum of the observed methods of a test class, or -1 if none of them has history. */
+    long classTotalMs(String testClass) {
+        String prefix = testClass + "#";
+        long total = -1;
+        for (Map.Entry<String, Long> e : durations.entrySet()) {
+            if (e.getKey().startsWith(prefix)) {
+                total = Math.max(total, 0) + e.getValue();
+            }
+        }
+        return total;
+    }
+
+    void save() {
+        if (!dirty) return;
+        try {
+            Path dir = file.getParentFile().toPath();
+            Files.createDirectories(dir);
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<String, Long> e : new TreeMap<>(durations).entrySet()) {
+                lines.add(e.getKey() + "\t" + e.getValue());
+            }
+            Path tmp = Files.createTempFile(dir, file.getName(), ".tmp");
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            ContentCache.publish(tmp, file.toPath());
+            dirty = false;
+        } catch (IOException e) {
+            // History only tightens deadlines; losing it is harmless.
+            System.out.println("[DurationHistory] could not write " + file.getPath() + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.ContentCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived coordinator serving jobs over loopback HTTP, so that pipeline steps run
+ * minutes apart reuse one warm JVM: the analyzers' probe indices, offline-instrumented SUT
+ * copies, class path listings and worker JVMs stay resident in a {@link TargetResources}
+ * between jobs, and are rebuilt before a job if their input files changed.
+ *
+ * A job is the positional arguments of one invocation, one per line in the request body:
+ *   class|filter &lt;classesDir&gt; &lt;workDir&gt; ...   a single run
+ *   manifest &lt;class|filter&gt; &lt;manifestFile&gt;      a batch (see {@link ManifestScheduler})
+ *   reduce &lt;originalTestJava&gt; &lt;testDeltasCsv&gt; &lt;N&gt; &lt;outDir&gt; [sort]
+ *                                                   {@link GenerateReducedAgtTestApp}
+ * Options are the daemon's (given at start-up) and apply to every job.
+ *
+ * Endpoints (http://127.0.0.1:&lt;port&gt;; daemon.port under {@link ContentCache#root()} holds
+ * the port on its first line and a token drawn at start-up on its second, readable by the
+ * owner only). Every request must carry the token in the {@link #TOKEN_HEADER} header and
+ * name the loopback address or localhost with that port as its Host:
+ *   POST /run          runs the job and streams its output, ending with the status line
+ *   POST /jobs         queues the job, answers its id
+ *   GET  /jobs/&lt;id&gt;     queued | running | succeeded | failed &lt;message&gt;
+ *   GET  /jobs/&lt;id&gt;/log streams the job's output until it ends, then the status line
+ *   POST /shutdown     stops once the queued jobs are done
+ * The status line starts with {@link #STATUS_PREFIX}. A finished job is forgotten once its
+ * log has been read to the end, and beyond the {@link #MAX_FINISHED_JOBS} most recent ones;
+ * a job keeps the last {@link #LOG_BYTES_PROP} bytes of its output. Jobs run one at a time in submission
+ * order; parallelism inside a job comes from the usual options. A job's output is what the
+ * coordinator prints while it runs; forked test JVMs still write to the daemon's console.
+ */
+final class FilterDaemon {
+
+    /** Loopback port to listen on (default 0: any free port). */
+    static final String PORT_PROP = "covfilter.daemon.port";
+
+    static final String STATUS_PREFIX = "@@covfilter-job@@ ";
+
+    /** Output kept per job; older output is dropped (default 8 MiB). */
+    static final String LOG_BYTES_PROP = "covfilter.daemon.log.bytes";
+
+    /** Finished jobs kept for status and log requests that have not come yet. */
+    static final int MAX_FINISHED_JOBS = 100;
+
+    /** Request header carrying the token from daemon.port. */
+    static final String TOKEN_HEADER = "X-Covfilter-Token";
+
+    private static final InheritableThreadLocal<Job> CURRENT = new InheritableThreadLocal<>();
+
+    private final File jarDir;
+    private final TargetResources shared = new TargetResources();
+    private final ExecutorService jobs = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "covfilter-job");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ConcurrentSkipListMap<Integer, Job> byId = new ConcurrentSkipListMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final byte[] token = newToken();
+    private volatile int port;
+
+    private FilterDaemon(File jarDir) {
+        this.jarDir = jarDir;
+    }
+
+    private enum State { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    /** Output from offset {@code from} of the job's whole output on. */
+    private record Chunk(long from, byte[] bytes) {
+    }
+
+    private static final class Job {
+        final int id;
+        final List<String> args;
+        private final int maxLog;
+        private byte[] log = new byte[8192];
+        // log[0, size) is the output from offset start on.
+        private long start;
+        private int size;
+        private State state = State.QUEUED;
+        private String failure;
+
+        Job(int id, List<String> args, int maxLog) {
+            this.id = id;
+            this.args = args;
+            this.maxLog = Math.max(maxLog, 1024);
+        }
+
+        synchronized void append(byte[] b, int off, int len) {
+            // Threads the job started may outlive it; their late output is not the job's.
+            if (state != State.RUNNING) return;
+            if (len > maxLog) {
+                start += size + len - maxLog;
+                size = 0;
+                off += len - maxLog;
+                len = maxLog;
+            } else if (size + len > maxLog) {
+                // Drops a quarter more than needed, so that not every append shifts the log.
+                int drop = Math.min(size, size + len - maxLog + maxLog / 4);
+                System.arraycopy(log, drop, log, 0, size - drop);
+                start += drop;
+                size -= drop;
+            }
+            if (size + len > log.length) {
+                log = Arrays.copyOf(log, Math.min(Math.max(log.length * 2, size + len), maxLog));
+            }
+            System.arraycopy(b, off, log, size, len);
+            size += len;
+            notifyAll();
+        }
+
+        synchronized void finish(State s, String message) {
+            state = s;
+            failure = message;
+            notifyAll();
+        }
+
+        synchronized String status() {
+            String s = state.name().toLowerCase(Locale.ROOT);
+            return failure != null ? s + " " + failure : s;
+        }
+
+        synchronized boolean done() {
+            return state == State.SUCCEEDED || state == State.FAILED;
+        }
+
+        /**
+         * Output from offset on (or from the oldest kept byte, if that was dropped), waiting for
+         * more while the job is not done; empty at the end.
+         */
+        synchronized Chunk readFrom(long offset) throws InterruptedException {
+            while (start + size <= offset && !done()) {
+                wait(1_000);
+            }
+            int from = (int) Math.min(Math.max(offset - start, 0), size);
+            return new Chunk(start + from, Arrays.copyOfRange(log, from, size));
+        }
+    }
+
+    static void run(File jarDir) throws Exception {
+        new FilterDaemon(jarDir).serve();
+    }
+
+    private void serve() throws Exception {
+        routeOutput();
+        int port = Integer.getInteger(PORT_PROP, 0);
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "covfilter-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/run", guarded(this::handleRun));
+        server.createContext("/jobs", guarded(this::handleJobs));
+        server.createContext("/shutdown", guarded(this::handleShutdown));
+        server.start();
+
+        int bound = server.getAddress().getPort();
+        this.port = bound;
+        File portFile = new File(ContentCache.root(), "daemon.port");
+        writePortFile(portFile.toPath(), bound + "\n" + new String(token, StandardCharsets.US_ASCII) + "\n");
+        System.out.println("[FilterDaemon] listening on http://127.0.0.1:" + bound + " (port in " + portFile.getPath() + ")");
+
+        try {
+            stopped.await();
+        } finally {
+            server.stop(0);
+            jobs.shutdown();
+            jobs.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            //noinspection ResultOfMethodCallIgnored
+            portFile.delete();
+            shared.close();
+            System.out.println("[FilterDaemon] stopped");
+        }
+    }
+
+    private static byte[] newToken() {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        return HexFormat.of().formatHex(random).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Written to a temp file created owner-only, then moved in place. */
+    private static void writePortFile(Path portFile, String content) throws IOException {
+        Path dir = Files.createDirectories(portFile.toAbsolutePath().getParent());
+        Path tmp = FileSystems.getDefault().supportedFileAttributeViews().contains("posix")
+                ? Files.createTempFile(dir, "daemon.port", ".tmp",
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                : Files.createTempFile(dir, "daemon.port", ".tmp");
+        try {
+            Files.writeString(tmp, content, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, portFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, portFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Rejects requests naming another Host (a web page rebinding its name to the loopback
+     * address) with 403, and requests without the daemon's token with 401.
+     */
+    private HttpHandler guarded(HttpHandler handler) {
+        return ex -> {
+            try (ex) {
+                if (!loopbackHost(ex.getRequestHeaders().getFirst("Host"))) {
+                    respond(ex, 403, "wrong host\n");
+                    return;
+                }
+                String given = ex.getRequestHeaders().getFirst(TOKEN_HEADER);
+                if (given == null || !MessageDigest.isEqual(token, given.strip().getBytes(StandardCharsets.US_ASCII))) {
+                    respond(ex, 401, "missing or wrong " + TOKEN_HEADER + "\n");
+                    return;
+                }
+                handler.handle(ex);
+            }
+        };
+    }
+
+    private boolean loopbackHost(String host) {
+        if (host == null) return false;
+        String h = host.strip().toLowerCase(Locale.ROOT);
+        for (String name : List.of("127.0.0.1", "localhost", "[::1]")) {
+            if (h.equals(name + ":" + port)) return true;
+        }
+        return false;
+    }
+
+    /** Copies what a job's threads print into the job's log, besides the daemon's console. */
+    private static void routeOutput() {
+        PrintStream console = System.out;
+        OutputStream routing = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                Job job = CURRENT.get();
+                if (job != null) {
+                    job.append(b, off, len);
+                }
+                console.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                console.flush();
+            }
+        };
+        PrintStream out = new PrintStream(routing, true, StandardCharsets.UTF_8);
+        System.setOut(out);
+        System.setErr(out);
+    }
+
+    private Job submit(List<String> args) {
+        Job job = new Job(nextId.getAndIncrement(), args, Integer.getInteger(LOG_BYTES_PROP, 8 << 20));
+        byId.put(job.id, job);
+        jobs.submit(() -> execute(job));
+        return job;
+    }
+
+    private void execute(Job job) {
+        synchronized (job) {
+            job.state = State.RUNNING;
+        }
+        CURRENT.set(job);
+        try {
+            System.out.println("[FilterDaemon] job " + job.id + ": " + String.join(" ", job.args));
+            shared.dropStale();
+            runJob(job.args);
+            job.finish(State.SUCCEEDED, null);
+        } catch (Throwable t) {
+            t.printStackTrace();
+            job.finish(State.FAILED, String.valueOf(t).replace('\n', ' '));
+        } finally {
+            CURRENT.remove();
+            forgetOldJobs();
+        }
+    }
+
+    /** Keeps the {@link #MAX_FINISHED_JOBS} most recent finished jobs. */
+    private void forgetOldJobs() {
+        List<Integer> finished = new ArrayList<>();
+        for (Job j : byId.values()) {
+            if (j.done()) finished.add(j.id);
+        }
+        for (int i = 0; i < finished.size() - MAX_FINISHED_JOBS; i++) {
+            byId.remove(finished.get(i));
+        }
+    }
+
+    private void runJob(List<String> args) throws Exception {
+        String kind = args.get(0);
+        if ("manifest".equalsIgnoreCase(kind) && args.size() == 3) {
+            ManifestScheduler.run(args.get(1), CoverageFilterApp.resolveMaybeAbsolute(jarDir, args.get(2)), jarDir, shared);
+        } else if ("reduce".equalsIgnoreCase(kind)) {
+            GenerateReducedAgtTestApp.main(args.subList(1, args.size()).toArray(new String[0]));
+        } else if (("class".equalsIgnoreCase(kind) || "filter".equalsIgnoreCase(kind)) && args.size() >= 9) {
+            CoverageFilterApp.runTarget(args.toArray(new String[0]), shared);
+        } else {
+            throw new IllegalArgumentException("Unknown job: " + String.join(" ", args));
+        }
+    }
+
+    private void handleRun(HttpExchange ex) throws IOException {
+        if (!"POST".equals(ex.getRequestMethod())) {
+            respond(ex, 405, "POST a job\n");
+            return;
+        }
+        List<String> args = readArgs(ex);
+        if (args.isEmpty()) {
+            respond(ex, 400, "empty job\n");
+            return;
+        }
+        streamLog(ex, submit(args));
+    }
+
+    private void handleJobs(HttpExchange ex) throws IOException {
+        String path = ex.getRequestURI().getPath();
+        String[] parts = path.replaceAll("^/jobs/?", "").split("/");
+        if (parts.length == 1 && parts[0].isEmpty()) {
+            if (!"POST".equals(ex.getRequestMethod())) {
+                respond(ex, 405, "POST a job\n");
+                return;
+            }
+            List<String> args = readArgs(ex);
+            if (args.isEmpty()) {
+                respond(ex, 400, "empty job\n");
+                return;
+            }
+            respond(ex, 202, submit(args).id + "\n");
+            return;
+        }
+        Job job;
+        try {
+            job = byId.get(Integer.parseInt(parts[0]));
+        } catch (NumberFormatException e) {
+            job = null;
+        }
+        if (job == null) {
+            respond(ex, 404, "no such job\n");
+        } else if (parts.length == 1) {
+            respond(ex, 200, job.status() + "\n");
+        } else if (parts.length == 2 && "log".equals(parts[1])) {
+            streamLog(ex, job);
+        } else {
+            respond(ex, 404, "unknown resource\n");
+        }
+    }
+
+    private void handleShutdown(HttpExchange ex) throws IOException {
+        if (!"POST".equals(ex.getRequestMethod())) {
+            respond(ex, 405, "POST to shut down\n");
+            return;
+        }
+        respond(ex, 200, "stopping\n");
+        stopped.countDown();
+    }
+
+    private static List<String> readArgs(HttpExchange ex) throws IOException {
+        List<String> args = new ArrayList<>();
+        try (InputStream in = ex.getRequestBody()) {
+            for (String line : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n")) {
+                String arg = line.strip();
+                if (!arg.isEmpty()) args.add(arg);
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Chunked response following the job's output; the status line comes last. The job is
+     * forgotten once it was sent completely.
+     */
+    private void streamLog(HttpExchange ex, Job job) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(200, 0);
+        try (OutputStream body = ex.getResponseBody()) {
+            long offset = 0;
+            while (true) {
+                Chunk chunk = job.readFrom(offset);
+                if (chunk.bytes().length == 0 && job.done()) break;
+                if (chunk.from() > offset) {
+                    body.write(("[FilterDaemon] ... " + (chunk.from() - offset) + " bytes of output dropped ...\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+                body.write(chunk.bytes());
+                body.flush();
+                offset = chunk.from() + chunk.bytes().length;
+            }
+            body.write(("\n" + STATUS_PREFIX + job.status() + "\n").getBytes(StandardCharsets.UTF_8));
+            body.flush();
+            byId.remove(job.id);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Client went away; the job keeps running.
+        }
+    }
+
+    private static void respond(HttpExchange ex, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
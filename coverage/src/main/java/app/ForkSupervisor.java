@@ -0,0 +1,152 @@
+package app;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall-clock deadlines for forked test JVMs. The in-JVM {@link runner.TestTimeouts} can only
+ * abandon a hung test thread; a test stuck in native I/O or a busy loop keeps the fork alive.
+ * On expiry the supervisor takes a thread dump of the fork (jcmd Thread.print) and then kills
+ * its whole process tree.
+ */
+final class ForkSupervisor {
+
+    private static final long DUMP_TIMEOUT_MS = 10_000;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "fork-supervisor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ForkSupervisor() {
+    }
+
+    /**
+     * Waits for p to exit, at most deadlineMs (0 = unbounded). A waiter that is interrupted
+     * (its result is no longer wanted) kills the process tree.
+     *
+     * @throws ForkTimeoutException after the process tree was killed
+     */
+    static int waitFor(Process p, long deadlineMs, List<String> selectors, File dumpDir)
+            throws InterruptedException {
+        try {
+            if (deadlineMs <= 0) {
+                return p.waitFor();
+            }
+            if (p.waitFor(deadlineMs, TimeUnit.MILLISECONDS)) {
+                return p.exitValue();
+            }
+        } catch (InterruptedException e) {
+            killTree(p);
+            throw e;
+        }
+        throw expire(p, deadlineMs, selectors, dumpDir);
+    }
+
+    /**
+     * Watches a process that is not waited for directly (e.g. read from until EOF). The caller
+     * cancels the watch when done and then checks {@link Watch#timeout()}.
+     */
+    static Watch watch(Process p, long deadlineMs, List<String> selectors, File dumpDir) {
+        Watch w = new Watch();
+        if (deadlineMs > 0) {
+            w.expiry = TIMER.schedule(() -> w.expire(p, deadlineMs, selectors, dumpDir),
+                    deadlineMs, TimeUnit.MILLISECONDS);
+        }
+        return w;
+    }
+
+    static final class Watch {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile ScheduledFuture<?> expiry;
+        private boolean cancelled;
+        private boolean expiring;
+        private ForkTimeoutException timeout;
+
+        private void expire(Process p, long deadlineMs, List<String> selectors, File dumpDir) {
+            synchronized (this) {
+                if (cancelled) return;
+                expiring = true;
+            }
+            ForkTimeoutException e = ForkSupervisor.expire(p, deadlineMs, selectors, dumpDir);
+            synchronized (this) {
+                timeout = e;
+            }
+            done.countDown();
+        }
+
+        /** Stops the watch; an expiry already in progress completes first. */
+        void cancel() throws InterruptedException {
+            synchronized (this) {
+                cancelled = true;
+                if (!expiring) {
+                    done.countDown();
+                }
+            }
+            ScheduledFuture<?> f = expiry;
+            if (f != null) {
+                f.cancel(false);
+            }
+            done.await();
+        }
+
+        /** The timeout if the process was killed, otherwise null. Valid after {@link #cancel()}. */
+        synchronized ForkTimeoutException timeout() {
+            return timeout;
+        }
+    }
+
+    private static ForkTimeoutException expire(Process p, long deadlineMs, List<String> selectors, File dumpDir) {
+        System.out.println("[ForkSupervisor] fork pid=" + p.pid() + " exceeded " + deadlineMs
+                + "ms, killing: " + selectors);
+        File dump = dumpThreads(p, dumpDir);
+        killTree(p);
+        return new ForkTimeoutException(selectors, deadlineMs, dump);
+    }
+
+    private static File dumpThreads(Process p, File dumpDir) {
+        File jcmd = new File(System.getProperty("java.home"), "bin/jcmd");
+        if (!jcmd.canExecute()) {
+            System.out.println("[ForkSupervisor] no jcmd in " + System.getProperty("java.home") + ", no thread dump");
+            return null;
+        }
+        File dir = dumpDir != null ? dumpDir : new File(System.getProperty("java.io.tmpdir"));
+        File out = new File(dir, "threads-" + p.pid() + ".txt");
+        try {
+            dir.mkdirs();
+            Process dump = new ProcessBuilder(jcmd.getPath(), Long.toString(p.pid()), "Thread.print")
+                    .redirectErrorStream(true)
+                    .redirectOutput(out)
+                    .start();
+            if (!dump.waitFor(DUMP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                dump.destroyForcibly();
+                System.out.println("[ForkSupervisor] jcmd did not answer within " + DUMP_TIMEOUT_MS + "ms");
+                return null;
+            }
+            return dump.exitValue() == 0 ? out : null;
+        } catch (java.io.IOException e) {
+            System.out.println("[ForkSupervisor] thread dump failed: " + e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /** Kills the fork and everything it started (children first, so none is re-parented). */
+    private static void killTree(Process p) {
+        p.descendants().forEach(ProcessHandle::destroyForcibly);
+        p.destroyForcibly();
+        try {
+            p.waitFor(DUMP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
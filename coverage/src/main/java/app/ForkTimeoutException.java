@@ -0,0 +1,46 @@
+package app;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A forked test JVM (or worker request) ran past its wall-clock deadline and was killed,
+ * together with its child processes.
+ */
+public final class ForkTimeoutException extends RuntimeException {
+
+    private final List<String> selectors;
+    private final long deadlineMs;
+    private final File threadDump;
+
+    ForkTimeoutException(List<String> selectors, long deadlineMs, File threadDump) {
+        super("Fork timed out after " + deadlineMs + "ms: selectors=" + selectors
+                + (threadDump != null ? " (threads: " + threadDump.getPath() + ")" : ""));
+        this.selectors = List.copyOf(selectors);
+        this.deadlineMs = deadlineMs;
+        this.threadDump = threadDump;
+    }
+
+    public List<String> getSelectors() {
+        return selectors;
+    }
+
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
+
+    /** Thread dump taken before the kill, null if none could be taken. */
+    public File getThreadDump() {
+        return threadDump;
+    }
+
+    /** The fork_timeouts.csv row of this timeout. */
+    public model.ForkTimeoutRow toRow(String stage) {
+        return new model.ForkTimeoutRow(
+                stage,
+                String.join(" ", selectors),
+                deadlineMs,
+                threadDump != null ? threadDump.getPath() : null
+        );
+    }
+}
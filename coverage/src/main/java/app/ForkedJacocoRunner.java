@@ -1,13 +1,45 @@
 package app;
 
+import runner.TestOutcome;
+
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
-public final class ForkedJacocoRunner {
+public final class ForkedJacocoRunner implements AutoCloseable {
+
+    /** Run selectors in a long-lived, JaCoCo-instrumented worker JVM instead of one fork per call. */
+    public static final String WORKER_PROP = "fork.worker";
+    /**
+     * Recycle the worker after this many requests (0 = never). Every request defines the SUT
+     * and test classes anew, and metaspace is only given back when the worker exits.
+     */
+    public static final String WORKER_MAX_REQUESTS_PROP = "fork.worker.max.requests";
+    public static final int DEFAULT_WORKER_MAX_REQUESTS = 50;
+    /**
+     * Run against a cached, offline-instrumented copy of the SUT classes with the agent jar on
+     * the class path instead of -javaagent. Only SUT classes are recorded; jacoco.includes
+     * does not apply.
+     */
+    public static final String OFFLINE_PROP = "fork.offline";
+    /**
+     * Hard wall-clock deadline of a fork: this factor times each test's historical duration
+     * (test.timeout.ms for tests without history), plus {@link #DEADLINE_OVERHEAD_PROP}.
+     * 0 disables the deadline.
+     */
+    public static final String DEADLINE_FACTOR_PROP = "fork.deadline.factor";
+    /** JVM start-up and class loading allowance added to every fork deadline, in ms. */
+    public static final String DEADLINE_OVERHEAD_PROP = "fork.deadline.overhead.ms";
+
+    private static final double DEFAULT_DEADLINE_FACTOR = 5.0;
+    private static final long DEFAULT_DEADLINE_OVERHEAD_MS = 60_000;
 
     private final String jacocoAgentJar;
     private final File libsDir;
@@ -16,6 +48,27 @@ public final class ForkedJacocoRunner {
     private final String toolJarPath;
     private final String runOneMainClass;
 
+    // Worker JVMs, one per concurrent runSelectors caller.
+    private final Deque<JacocoWorker> idleWorkers = new ArrayDeque<>();
+    private final List<JacocoWorker> workers = new ArrayList<>();
+    private List<String> workerCommand;
+
+    // Offline mode: instrumented SUT copy, resolved on first use (null = use -javaagent).
+    private boolean offlineResolved;
+    private String offlineSutPath;
+
+    // Loaded on first use, saved on close.
+    private DurationHistory durationHistory;
+
+    // Listed once; a runner may serve many targets in batch mode.
+    private String classpath;
+
+    // Test timeout of this runner's forks; null = test.timeout.ms / TEST_TIMEOUT_MS.
+    private String testTimeoutMs;
+
+    // See coverageFingerprint(); computed on first use.
+    private String coverageFingerprint;
+
     public ForkedJacocoRunner(String jacocoAgentJar,
                               File libsDir,
                               String sutClassesPath,
@@ -30,6 +83,26 @@ public final class ForkedJacocoRunner {
         this.runOneMainClass = Objects.requireNonNull(runOneMainClass);
     }
 
+    public String getTestClassesPath() {
+        return testClassesPath;
+    }
+
+    /** Test timeout of this runner's forks, instead of the JVM-wide test.timeout.ms. */
+    synchronized void setTestTimeoutMs(String testTimeoutMs) {
+        this.testTimeoutMs = testTimeoutMs == null || testTimeoutMs.isBlank() ? null : testTimeoutMs.trim();
+    }
+
+    private synchronized long resolveTestTimeoutMs() {
+        if (testTimeoutMs == null) {
+            return runner.TestTimeouts.resolveTimeoutMs();
+        }
+        try {
+            return Math.max(Long.parseLong(testTimeoutMs), 0);
+        } catch (NumberFormatException e) {
+            return runner.TestTimeouts.DEFAULT_TIMEOUT_MS;
+        }
+    }
+
     public void runTestClass(String testClassFqcn, File execFile, boolean append) throws Exception {
         Objects.requireNonNull(testClassFqcn);
         Objects.requireNonNull(execFile);
@@ -41,20 +114,9 @@ public final class ForkedJacocoRunner {
         List<String> cmd = new ArrayList<>();
         cmd.add("java");
 
-        addTimeoutProperty(cmd);
-        addMacHeadlessProperties(cmd);
-
-        cmd.add("--add-opens"); cmd.add("java.base/java.lang=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.base/java.lang.reflect=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.base/java.util=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.base/java.net=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.desktop/java.awt=ALL-UNNAMED");
-
-        if (hasJbossLogmanager()) {
-            cmd.add("-Djava.util.logging.manager=org.jboss.logmanager.LogManager");
-        }
+        addJvmOptions(cmd);
 
-        cmd.add(buildJacocoAgentArg(execFile, append));
+        addJacocoOptions(cmd, execFile, append);
 
         cmd.add("-cp");
         cmd.add(buildClasspath());
@@ -62,24 +124,64 @@ public final class ForkedJacocoRunner {
         cmd.add(runOneMainClass);
         cmd.add(testClassFqcn);
 
+        List<String> selectors = List.of(testClassFqcn);
         Process p = new ProcessBuilder(cmd).inheritIO().start();
-        int exit = p.waitFor();
+        int exit = ForkSupervisor.waitFor(p, deadlineMs(selectors), selectors, parent);
         if (exit != 0) throw new RuntimeException("Fork failed (exit=" + exit + "): " + testClassFqcn);
     }
 
-    private String buildClasspath() {
+    /**
+     * What decides the coverage a fork of this runner records, besides the test itself: the
+     * SUT's content, the JVM, agent and runner options, and the other class path entries (by
+     * path, size and modification time). Keys the {@link CoverageCache}.
+     */
+    synchronized String coverageFingerprint() throws java.io.IOException {
+        if (coverageFingerprint == null) {
+            List<String> salts = new ArrayList<>();
+            salts.add(System.getProperty("java.version", ""));
+            addJvmOptions(salts);
+            addJacocoOptions(salts, "output=none");
+            for (String jar : listJars(libsDir)) {
+                salts.add(fileStamp(jar));
+            }
+            salts.add(fileStamp(toolJarPath));
+            salts.add(fileStamp(jacocoAgentJar));
+            coverageFingerprint = io.ContentCache.sha256(new File(sutClassesPath), salts.toArray(new String[0]));
+        }
+        return coverageFingerprint;
+    }
+
+    private static String fileStamp(String path) {
+        File f = new File(path);
+        return path + "|" + f.length() + "|" + f.lastModified();
+    }
+
+    private synchronized String buildClasspath() {
+        if (classpath != null) {
+            return classpath;
+        }
         String sep = System.getProperty("os.name", "").toLowerCase().contains("win") ? ";" : ":";
 
         List<String> entries = new ArrayList<>();
         entries.addAll(listJars(libsDir));
-        entries.add(sutClassesPath);
+        entries.add(sutPath());
         entries.add(testClassesPath);
         entries.add(toolJarPath);
+        if (offlineSutPath() != null) {
+            // Offline-instrumented classes call into the agent runtime directly.
+            entries.add(jacocoAgentJar);
+        }
 
-        return String.join(sep, entries);
+        classpath = String.join(sep, entries);
+        return classpath;
     }
 
-    public void runSelectors(List<String> selectors, File execFile, boolean append) throws Exception {
+    /**
+     * Runs the selectors in one fork (or worker) recording into execFile, and returns the
+     * status of every test method that ran (see {@link RunMany#writeDurations}).
+     */
+    public Map<String, TestOutcome.Status> runSelectors(List<String> selectors, File execFile, boolean append)
+            throws Exception {
         Objects.requireNonNull(selectors, "selectors");
         if (selectors.isEmpty()) throw new IllegalArgumentException("selectors is empty");
         Objects.requireNonNull(execFile, "execFile");
@@ -91,35 +193,179 @@ public final class ForkedJacocoRunner {
         File parent = execFile.getParentFile();
         if (parent != null) parent.mkdirs();
 
+        File durations = RunWorker.durationsFile(execFile);
+        if (Boolean.getBoolean(WORKER_PROP)) {
+            JacocoWorker worker = acquireWorker();
+            try {
+                worker.run(selectors, execFile, append, deadlineMs(selectors));
+            } finally {
+                releaseWorker(worker);
+            }
+            return recordDurations(durations);
+        }
+
         List<String> cmd = new ArrayList<>();
         cmd.add("java");
 
-        addTimeoutProperty(cmd);
-        addMacHeadlessProperties(cmd);
+        addJvmOptions(cmd);
 
-        cmd.add("--add-opens"); cmd.add("java.base/java.lang=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.base/java.lang.reflect=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.base/java.util=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.base/java.net=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.desktop/java.awt=ALL-UNNAMED");
+        addJacocoOptions(cmd, execFile, append);
 
-        if (hasJbossLogmanager()) {
-            cmd.add("-Djava.util.logging.manager=org.jboss.logmanager.LogManager");
+        cmd.add("-cp");
+        cmd.add(buildClasspath());
+
+        // Use RunMany now
+        cmd.add("app.RunMany");
+        cmd.add("--durations=" + durations.getPath());
+        cmd.addAll(selectors);
+
+        Process p = new ProcessBuilder(cmd).inheritIO().start();
+        int exit = ForkSupervisor.waitFor(p, deadlineMs(selectors), selectors, parent);
+        if (exit != 0) {
+            throw new RuntimeException("Fork failed (exit=" + exit + "): selectors=" + selectors);
+        }
+        return recordDurations(durations);
+    }
+
+    /**
+     * Runs all selectors in a single fork and writes one exec session per test id
+     * (see {@link jacoco.SessionDumper}) instead of one exec file per fork.
+     */
+    public void runSelectorsPerTest(List<String> selectors, File execFile) throws Exception {
+        Objects.requireNonNull(selectors, "selectors");
+        if (selectors.isEmpty()) throw new IllegalArgumentException("selectors is empty");
+        Objects.requireNonNull(execFile, "execFile");
+
+        if (execFile.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            execFile.delete();
         }
 
-        cmd.add(buildJacocoAgentArg(execFile, append));
+        List<String> cmd = new ArrayList<>();
+        cmd.add("java");
+
+        addJvmOptions(cmd);
+
+        addJacocoOptions(cmd, "output=none");
 
         cmd.add("-cp");
         cmd.add(buildClasspath());
 
-        // Use RunMany now
+        File durations = RunWorker.durationsFile(execFile);
         cmd.add("app.RunMany");
+        cmd.add("--sessions=" + execFile.getPath());
+        cmd.add("--durations=" + durations.getPath());
         cmd.addAll(selectors);
 
         Process p = new ProcessBuilder(cmd).inheritIO().start();
-        int exit = p.waitFor();
+        int exit = ForkSupervisor.waitFor(p, deadlineMs(selectors), selectors, execFile.getAbsoluteFile().getParentFile());
         if (exit != 0) {
-            throw new RuntimeException("Fork failed (exit=" + exit + "): selectors=" + selectors);
+            throw new RuntimeException("Fork failed (exit=" + exit + "): per-test sessions for "
+                    + selectors.size() + " selector(s)");
+        }
+        recordDurations(durations);
+    }
+
+    /**
+     * Wall-clock deadline of a fork running the given selectors (0 = none): the budget of
+     * every test from {@link DurationHistory}, plus the start-up allowance. A class selector
+     * is budgeted as the sum of its test methods.
+     */
+    long deadlineMs(List<String> selectors) {
+        double factor = Double.parseDouble(System.getProperty(DEADLINE_FACTOR_PROP,
+                Double.toString(DEFAULT_DEADLINE_FACTOR)));
+        if (factor <= 0) {
+            return 0;
+        }
+        long fallbackMs = resolveTestTimeoutMs();
+        DurationHistory history = durationHistory();
+        long total = Long.getLong(DEADLINE_OVERHEAD_PROP, DEFAULT_DEADLINE_OVERHEAD_MS);
+        for (String selector : selectors) {
+            List<String> methods = selector.contains("#") ? null : classTestMethods(selector);
+            if (methods == null) {
+                methods = List.of(selector);
+            } else {
+                methods = methods.stream().map(m -> selector + "#" + m).toList();
+            }
+            for (String m : methods) {
+                long budget = history.budgetMs(m, factor, fallbackMs);
+                if (budget <= 0) {
+                    return 0; // no history and no test timeout: nothing to bound it by
+                }
+                total += budget;
+            }
+        }
+        return total;
+    }
+
+    private List<String> classTestMethods(String testClassFqcn) {
+        try {
+            List<String> methods = BytecodeTestDiscoverer.discover(new File(testClassesPath), testClassFqcn);
+            return methods == null || methods.isEmpty() ? null : methods;
+        } catch (java.io.IOException e) {
+            return null;
+        }
+    }
+
+    private synchronized DurationHistory durationHistory() {
+        if (durationHistory == null) {
+            durationHistory = DurationHistory.load(testClassesPath);
+        }
+        return durationHistory;
+    }
+
+    /** Feeds the fork's durations file to the history, deletes it and returns its outcomes. */
+    private Map<String, TestOutcome.Status> recordDurations(File durations) throws IOException {
+        try {
+            durationHistory().recordAll(durations);
+            return RunMany.readOutcomes(durations);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            durations.delete();
+        }
+    }
+
+    private synchronized JacocoWorker acquireWorker() {
+        JacocoWorker idle = idleWorkers.poll();
+        if (idle != null) {
+            return idle;
+        }
+        if (workerCommand == null) {
+            List<String> cmd = new ArrayList<>();
+            cmd.add("java");
+
+            addJvmOptions(cmd);
+
+            // Exec data is pulled through the agent API per request, never written on exit.
+            addJacocoOptions(cmd, "output=none");
+
+            cmd.add("-cp");
+            cmd.add(buildClasspath());
+
+            cmd.add("app.RunWorker");
+            // Loaded per request by a fresh loader so static state does not leak between requests.
+            cmd.add(sutPath());
+            cmd.add(testClassesPath);
+            workerCommand = cmd;
+        }
+        JacocoWorker created = new JacocoWorker(workerCommand, Integer.getInteger(WORKER_MAX_REQUESTS_PROP, DEFAULT_WORKER_MAX_REQUESTS));
+        workers.add(created);
+        return created;
+    }
+
+    private synchronized void releaseWorker(JacocoWorker worker) {
+        idleWorkers.push(worker);
+    }
+
+    @Override
+    public synchronized void close() {
+        for (JacocoWorker w : workers) {
+            w.close();
+        }
+        workers.clear();
+        idleWorkers.clear();
+        if (durationHistory != null) {
+            durationHistory.save();
         }
     }
 
@@ -141,17 +387,10 @@ public final class ForkedJacocoRunner {
         List<String> cmd = new ArrayList<>();
         cmd.add("java");
 
-        addTimeoutProperty(cmd);
-        addMacHeadlessProperties(cmd);
-
-        cmd.add("--add-opens"); cmd.add("java.base/java.lang=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.base/java.lang.reflect=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.base/java.util=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.base/java.net=ALL-UNNAMED");
-        cmd.add("--add-opens"); cmd.add("java.desktop/java.awt=ALL-UNNAMED");
-
-        if (hasJbossLogmanager()) {
-            cmd.add("-Djava.util.logging.manager=org.jboss.logmanager.LogManager");
+        addJvmOptions(cmd);
+        if (offlineSutPath() != null) {
+            // Loading instrumented SUT classes starts the runtime; nothing to record here.
+            cmd.add("-Djacoco-agent.output=none");
         }
 
         cmd.add("-cp");
@@ -164,6 +403,7 @@ public final class ForkedJacocoRunner {
         pb.redirectErrorStream(true);
         Process p = pb.start();
 
+        ForkSupervisor.Watch watch = ForkSupervisor.watch(p, deadlineMs(List.of()), List.of(mainClass), null);
         List<String> lines = new ArrayList<>();
         try (java.io.BufferedReader br = new java.io.BufferedReader(
                 new java.io.InputStreamReader(p.getInputStream()))) {
@@ -171,6 +411,11 @@ public final class ForkedJacocoRunner {
             while ((line = br.readLine()) != null) {
                 lines.add(line);
             }
+        } finally {
+            watch.cancel();
+        }
+        if (watch.timeout() != null) {
+            throw watch.timeout();
         }
 
         int exit = p.waitFor();
@@ -180,10 +425,49 @@ public final class ForkedJacocoRunner {
         return lines;
     }
 
-    private void addTimeoutProperty(List<String> cmd) {
-        String timeoutMs = System.getProperty(runner.TestTimeouts.TIMEOUT_PROP);
-        if (timeoutMs != null && !timeoutMs.isBlank()) {
-            cmd.add("-D" + runner.TestTimeouts.TIMEOUT_PROP + "=" + timeoutMs.trim());
+    private void addJvmOptions(List<String> cmd) {
+        addRunnerProperties(cmd);
+        addMacHeadlessProperties(cmd);
+
+        cmd.add("--add-opens"); cmd.add("java.base/java.lang=ALL-UNNAMED");
+        cmd.add("--add-opens"); cmd.add("java.base/java.lang.reflect=ALL-UNNAMED");
+        cmd.add("--add-opens"); cmd.add("java.base/java.util=ALL-UNNAMED");
+        cmd.add("--add-opens"); cmd.add("java.base/java.net=ALL-UNNAMED");
+        cmd.add("--add-opens"); cmd.add("java.desktop/java.awt=ALL-UNNAMED");
+
+        if (hasJbossLogmanager()) {
+            cmd.add("-Djava.util.logging.manager=org.jboss.logmanager.LogManager");
+        }
+    }
+
+    private void addRunnerProperties(List<String> cmd) {
+        String timeout;
+        synchronized (this) {
+            timeout = testTimeoutMs;
+        }
+        if (timeout != null) {
+            cmd.add("-D" + runner.TestTimeouts.TIMEOUT_PROP + "=" + timeout);
+        } else {
+            forwardProperty(cmd, runner.TestTimeouts.TIMEOUT_PROP);
+        }
+        forwardProperty(cmd, runner.StallMonitor.STALL_MS_PROP);
+        forwardProperty(cmd, runner.StallMonitor.IDLE_PROP);
+        forwardProperty(cmd, runner.StallMonitor.IDLE_MS_PROP);
+        forwardProperty(cmd, runner.ExitTrap.TRAP_EXIT_PROP);
+        forwardProperty(cmd, runner.NetworkGuard.NETWORK_GUARD_PROP);
+        if (Boolean.getBoolean(runner.ExitTrap.TRAP_EXIT_PROP)
+                || Boolean.getBoolean(runner.NetworkGuard.NETWORK_GUARD_PROP)) {
+            // Both install a SecurityManager at runtime, which JDK 18+ refuses without this.
+            cmd.add("-Djava.security.manager=allow");
+        }
+        forwardProperty(cmd, runner.JUnit4TestRunner.BATCH_PROP);
+        forwardProperty(cmd, runner.JUnit5TestRunner.BATCH_PROP);
+    }
+
+    private static void forwardProperty(List<String> cmd, String name) {
+        String value = System.getProperty(name);
+        if (value != null && !value.isBlank()) {
+            cmd.add("-D" + name + "=" + value.trim());
         }
     }
 
@@ -205,11 +489,46 @@ public final class ForkedJacocoRunner {
         return os.toLowerCase().contains("mac");
     }
 
-    private String buildJacocoAgentArg(File execFile, boolean append) {
+    private void addJacocoOptions(List<String> cmd, File execFile, boolean append) {
+        addJacocoOptions(cmd, "destfile=" + execFile.getPath() + ",append=" + append);
+    }
+
+    /** -javaagent with the given options, or the same options as offline runtime properties. */
+    private void addJacocoOptions(List<String> cmd, String outputOptions) {
+        if (offlineSutPath() == null) {
+            cmd.add(buildJacocoAgentArg(outputOptions));
+            return;
+        }
+        for (String option : outputOptions.split(",")) {
+            cmd.add("-Djacoco-agent." + option);
+        }
+    }
+
+    private String sutPath() {
+        String offline = offlineSutPath();
+        return offline != null ? offline : sutClassesPath;
+    }
+
+    private synchronized String offlineSutPath() {
+        if (!offlineResolved) {
+            offlineResolved = true;
+            if (Boolean.getBoolean(OFFLINE_PROP)) {
+                try {
+                    File copy = jacoco.OfflineInstrumenter.instrumentedCopy(
+                            new File(sutClassesPath), new File(jacocoAgentJar));
+                    offlineSutPath = copy == null ? null : copy.getPath();
+                } catch (java.io.IOException e) {
+                    System.out.println("[ForkedJacocoRunner] offline instrumentation failed, using -javaagent: " + e);
+                }
+            }
+        }
+        return offlineSutPath;
+    }
+
+    private String buildJacocoAgentArg(String outputOptions) {
         StringBuilder sb = new StringBuilder();
         sb.append("-javaagent:").append(jacocoAgentJar)
-                .append("=destfile=").append(execFile.getPath())
-                .append(",append=").append(append);
+                .append('=').append(outputOptions);
         String includes = System.getProperty("jacoco.includes");
         if (includes != null && !includes.isBlank()) {
             sb.append(",includes=").append(includes.trim());
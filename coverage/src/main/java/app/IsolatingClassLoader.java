@@ -0,0 +1,115 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loader over the SUT and test class paths, created per worker request so that SUT and
+ * test classes (and their static state / static initializers) are fresh for every request,
+ * exactly as in a one-shot fork. Everything else (JUnit, libraries, this tool) is shared
+ * with the parent.
+ *
+ * A class is defined here only if the parent's class path would resolve it from one of
+ * these paths: the worker's class path lists the libraries first, as the one-shot fork's
+ * does, so a class present in a library and in the SUT comes from the library in both
+ * modes.
+ */
+final class IsolatingClassLoader extends URLClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final List<Path> roots = new ArrayList<>();
+
+    IsolatingClassLoader(List<String> paths, ClassLoader parent) {
+        super(toUrls(paths), parent);
+        for (String p : paths) {
+            roots.add(normalize(Paths.get(p)));
+        }
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null && !name.startsWith("java.") && resolvesHere(name)) {
+                try {
+                    c = findClass(name);
+                } catch (ClassNotFoundException ignored) {
+                    // not part of SUT/tests: delegate
+                }
+            }
+            if (c == null) {
+                c = getParent().loadClass(name);
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    /** Whether the parent's first class path entry holding the class is one of these paths. */
+    private boolean resolvesHere(String name) {
+        URL first = getParent().getResource(name.replace('.', '/') + ".class");
+        if (first == null) {
+            return true;
+        }
+        Path origin = origin(first);
+        if (origin == null) {
+            return false;
+        }
+        for (Path root : roots) {
+            if (origin.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The directory file or jar a class resource was found in; null if not a local file. */
+    private static Path origin(URL resource) {
+        try {
+            if ("jar".equals(resource.getProtocol())) {
+                URL jar = ((JarURLConnection) resource.openConnection()).getJarFileURL();
+                return normalize(Paths.get(jar.toURI()));
+            }
+            if ("file".equals(resource.getProtocol())) {
+                return normalize(Paths.get(resource.toURI()));
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            // not a local file
+        }
+        return null;
+    }
+
+    private static Path normalize(Path p) {
+        try {
+            return p.toRealPath();
+        } catch (IOException e) {
+            return p.toAbsolutePath().normalize();
+        }
+    }
+
+    private static URL[] toUrls(List<String> paths) {
+        URL[] urls = new URL[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            try {
+                urls[i] = new File(paths.get(i)).toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Bad class path entry: " + paths.get(i), e);
+            }
+        }
+        return urls;
+    }
+}
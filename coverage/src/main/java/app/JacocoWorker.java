@@ -0,0 +1,152 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinator-side handle of one {@link RunWorker} JVM.
+ *
+ * The process is started lazily and restarted transparently when it dies, fails a
+ * request, reports itself as poisoned (runaway test thread) or has served maxRequests.
+ * A request whose worker crashed is retried once in a fresh JVM; one that ran past its
+ * deadline is not.
+ */
+final class JacocoWorker implements AutoCloseable {
+
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final List<String> command;
+    private final int maxRequests;
+
+    private Process process;
+    private BufferedWriter requests;
+    private BufferedReader replies;
+    private int served;
+
+    JacocoWorker(List<String> command, int maxRequests) {
+        this.command = List.copyOf(Objects.requireNonNull(command, "command"));
+        this.maxRequests = maxRequests;
+    }
+
+    /**
+     * Runs one request. If it is not answered within deadlineMs (0 = unbounded), the worker's
+     * process tree is killed and a {@link ForkTimeoutException} thrown; a hung request is not
+     * retried.
+     */
+    synchronized void run(List<String> selectors, File execFile, boolean append, long deadlineMs) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            ensureStarted();
+
+            StringBuilder req = new StringBuilder("run\t").append(append).append('\t').append(execFile.getPath());
+            for (String s : selectors) req.append('\t').append(s);
+
+            ForkSupervisor.Watch watch = ForkSupervisor.watch(process, deadlineMs, selectors,
+                    execFile.getAbsoluteFile().getParentFile());
+            String reply;
+            try {
+                requests.write(req.toString());
+                requests.newLine();
+                requests.flush();
+                reply = awaitReply();
+            } catch (IOException e) {
+                reply = null;
+            } finally {
+                watch.cancel();
+            }
+            if (watch.timeout() != null) {
+                stop();
+                throw watch.timeout();
+            }
+
+            if (reply == null) {
+                int exit = stop();
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw new RuntimeException("Fork failed (worker exit=" + exit + "): selectors=" + selectors);
+                }
+                System.out.println("[JacocoWorker] worker died (exit=" + exit + "), restarting");
+                continue;
+            }
+
+            served++;
+            boolean recycle = reply.startsWith(RunWorker.POISONED)
+                    || (maxRequests > 0 && served >= maxRequests);
+            if (reply.startsWith(RunWorker.FAILED)) {
+                // Same outcome as a failed one-shot fork: the JVM state is not trusted afterwards.
+                stop();
+                throw new RuntimeException("Fork failed (worker): selectors=" + selectors
+                        + " :: " + reply.substring(RunWorker.FAILED.length()).trim());
+            }
+            if (recycle) {
+                System.out.println("[JacocoWorker] recycling worker after " + served + " request(s): " + reply);
+                stop();
+            }
+            return;
+        }
+    }
+
+    private void ensureStarted() throws IOException {
+        if (process != null && process.isAlive()) return;
+        if (process != null) stop();
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        process = pb.start();
+        requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        replies = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        served = 0;
+
+        String ready = awaitReply();
+        if (!RunWorker.READY.equals(ready)) {
+            int exit = stop();
+            throw new RuntimeException("Worker failed to start (exit=" + exit + ")");
+        }
+    }
+
+    /** Echoes test output until the next protocol line; returns null when the worker died. */
+    private String awaitReply() throws IOException {
+        String line;
+        while ((line = replies.readLine()) != null) {
+            if (line.startsWith(RunWorker.REPLY_PREFIX)) {
+                return line.substring(RunWorker.REPLY_PREFIX.length());
+            }
+            if (!line.isEmpty()) System.out.println(line);
+        }
+        return null;
+    }
+
+    private int stop() {
+        if (process == null) return -1;
+        Process p = process;
+        process = null;
+        try {
+            requests.close();
+        } catch (IOException ignored) {
+            // worker already gone
+        }
+        try {
+            if (!p.waitFor(5, TimeUnit.SECONDS)) {
+                p.descendants().forEach(ProcessHandle::destroyForcibly);
+                p.destroyForcibly();
+                p.waitFor();
+            }
+            return p.exitValue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            p.destroyForcibly();
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        stop();
+    }
+}
@@ -0,0 +1,311 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the targets of a manifest, one filter run per target, on a pool of
+ * {@link #TARGET_PARALLELISM_PROP} workers, longest expected run first (LPT), so that the few
+ * huge targets do not start last and stretch the makespan.
+ *
+ * A target is expected to take what it took last time (kept in
+ * {@link DurationHistory#loadTargets()}), else the sum of the per-test history of its manual and
+ * AGT classes. Targets with neither are unknown and go first: they may be the huge ones, and
+ * running them is what produces their history.
+ *
+ * By default all targets run in this JVM and share runners and analyzers through
+ * {@link TargetResources}: the SUT's probe index, the class path listings, worker JVMs and
+ * duration histories are built once, not once per target. Their output is interleaved on
+ * stdout; the CSVs go to each target's work directory as in a single run. With
+ * {@link #ISOLATE_PROP} every target runs in its own coordinator JVM instead (the same class
+ * path, JVM options and options), with its output in covfilter.log in its work directory.
+ */
+final class ManifestScheduler {
+
+    /** Number of targets run concurrently in manifest mode (default 1). */
+    static final String TARGET_PARALLELISM_PROP = "covfilter.target.parallelism";
+    /** Run every target in its own coordinator JVM (default false: all in this one). */
+    static final String ISOLATE_PROP = "covfilter.target.isolate";
+
+    static final long UNKNOWN = Long.MAX_VALUE;
+
+    private ManifestScheduler() {
+    }
+
+    /** One manifest line: the positional arguments of a single run, without the mode. */
+    static final class Target {
+        final int line;
+        final List<String> args;
+        final File workDir;
+        final String key;
+        long expectedMs;
+
+        Target(int line, List<String> args, File workDir, String key) {
+            this.line = line;
+            this.args = args;
+            this.workDir = workDir;
+            this.key = key;
+        }
+
+        String agtTestClass() {
+            return args.get(3);
+        }
+    }
+
+    // Positional arguments of a run, by name: the columns of a manifest / members of a JSON target.
+    static final List<String> ARGUMENT_NAMES = List.of(
+            "classesDir", "workDir", "manualTestClass", "agtTestClass", "jacocoAgent",
+            "sutClasses", "libsDir", "testClassesDir", "testTimeoutMs");
+
+    /**
+     * Manifest: one target per line, the arguments of a single run after the mode
+     * (classesDir workDir manualTestClass agtTestClass jacocoAgent sutClasses libsDir
+     * testClassesDir [testTimeoutMs]), tab-separated, or comma-separated in a .csv file.
+     * Blank lines, lines starting with # and a header line starting with classesDir are
+     * skipped. A .json manifest is an array of targets (or an object with a "targets" array),
+     * each an array of those arguments or an object with them as members.
+     */
+    static List<Target> readManifest(File manifest, File jarDir) throws IOException {
+        String name = manifest.getName().toLowerCase(Locale.ROOT);
+        List<List<String>> rows = new ArrayList<>();
+        List<Integer> rowLines = new ArrayList<>();
+        if (name.endsWith(".json")) {
+            readJsonManifest(manifest, rows, rowLines);
+        } else {
+            String separator = name.endsWith(".csv") ? "," : "\t";
+            List<String> lines = Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i).strip();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                List<String> args = new ArrayList<>();
+                for (String field : line.split(separator, -1)) {
+                    args.add(unquote(field.strip()));
+                }
+                if (args.get(0).equalsIgnoreCase("classesDir")) continue;
+                rows.add(args);
+                rowLines.add(i + 1);
+            }
+        }
+
+        List<Target> targets = new ArrayList<>();
+        for (int r = 0; r < rows.size(); r++) {
+            List<String> args = rows.get(r);
+            while (args.size() > 8 && args.get(args.size() - 1).isEmpty()) {
+                args.remove(args.size() - 1);   // empty optional timeout column
+            }
+            if (args.size() < 8 || args.size() > 9) {
+                throw new IllegalArgumentException(manifest.getPath() + ":" + rowLines.get(r)
+                        + ": expected 8 or 9 arguments, got " + args.size());
+            }
+            File workDir = CoverageFilterApp.resolveMaybeAbsolute(jarDir, args.get(1));
+            String testClassesPath = CoverageFilterApp.resolveMaybeAbsolute(jarDir, args.get(7)).getCanonicalPath();
+            targets.add(new Target(rowLines.get(r), List.copyOf(args), workDir,
+                    targetKey(testClassesPath, args.get(3))));
+        }
+        return targets;
+    }
+
+    /** Targets of a JSON manifest; a target's "line" is its 1-based position in the array. */
+    private static void readJsonManifest(File manifest, List<List<String>> rows, List<Integer> rowLines)
+            throws IOException {
+        Object root;
+        try {
+            root = io.JsonReader.parse(Files.readString(manifest.toPath(), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(manifest.getPath() + ": " + e.getMessage(), e);
+        }
+        if (root instanceof java.util.Map<?, ?> map && map.get("targets") != null) {
+            root = map.get("targets");
+        }
+        if (!(root instanceof List<?> list)) {
+            throw new IllegalArgumentException(manifest.getPath() + ": expected an array of targets");
+        }
+        for (int i = 0; i < list.size(); i++) {
+            Object target = list.get(i);
+            List<String> args = new ArrayList<>();
+            if (target instanceof List<?> values) {
+                for (Object v : values) {
+                    args.add(jsonArgument(v));
+                }
+            } else if (target instanceof java.util.Map<?, ?> members) {
+                for (Object key : members.keySet()) {
+                    if (!ARGUMENT_NAMES.contains(key)) {
+                        throw new IllegalArgumentException(manifest.getPath() + ": target " + (i + 1)
+                                + ": unknown member \"" + key + "\"");
+                    }
+                }
+                for (String argName : ARGUMENT_NAMES) {
+                    Object v = members.get(argName);
+                    if (v == null && args.size() < 8) {
+                        throw new IllegalArgumentException(manifest.getPath() + ": target " + (i + 1)
+                                + ": missing \"" + argName + "\"");
+                    }
+                    args.add(jsonArgument(v));
+                }
+            } else {
+                throw new IllegalArgumentException(manifest.getPath() + ": target " + (i + 1)
+                        + ": expected an array or an object");
+            }
+            rows.add(args);
+            rowLines.add(i + 1);
+        }
+    }
+
+    private static String jsonArgument(Object v) {
+        if (v instanceof java.math.BigDecimal n) {
+            return n.toPlainString();
+        }
+        return v == null ? "" : v.toString();
+    }
+
+    private static String unquote(String field) {
+        return field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")
+                ? field.substring(1, field.length() - 1)
+                : field;
+    }
+
+    /** Identity of a target across runs: the AGT class within its test class path. */
+    static String targetKey(String testClassesPath, String agtTestClass) {
+        return agtTestClass + "@" + testClassesPath;
+    }
+
+    static void run(String mode, File manifest, File jarDir) throws Exception {
+        run(mode, manifest, jarDir, null);
+    }
+
+    /** With external resources (kept open afterwards), e.g. the {@link FilterDaemon}'s. */
+    static void run(String mode, File manifest, File jarDir, TargetResources external) throws Exception {
+        List<Target> targets = readManifest(manifest, jarDir);
+        DurationHistory targetHistory = DurationHistory.loadTargets();
+        List<Target> order = schedule(targets, targetHistory, jarDir);
+
+        int parallelism = Math.max(1, Integer.getInteger(TARGET_PARALLELISM_PROP, 1));
+        boolean isolate = Boolean.getBoolean(ISOLATE_PROP);
+        System.out.println("[ManifestScheduler] " + targets.size() + " targets, parallelism=" + parallelism
+                + (isolate ? ", one JVM per target" : "") + ", longest expected first");
+        TargetResources shared = isolate ? null : external != null ? external : new TargetResources();
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "covfilter-target");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger done = new AtomicInteger();
+        List<Future<Boolean>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (Target t : order) {
+                results.add(pool.submit(() -> {
+                    System.out.println("[ManifestScheduler] start " + t.agtTestClass() + " (expected "
+                            + (t.expectedMs == UNKNOWN ? "unknown" : t.expectedMs + "ms") + ")");
+                    long startNanos = System.nanoTime();
+                    boolean ok = shared != null ? runInProcess(mode, t, shared) : runIsolated(mode, t);
+                    if (ok) {
+                        // Failed runs say little about the cost of a successful one.
+                        targetHistory.record(t.key, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                    }
+                    System.out.println("[ManifestScheduler] " + done.incrementAndGet() + "/" + targets.size()
+                            + (ok ? " done: " : " FAILED: ") + t.agtTestClass()
+                            + (shared != null ? "" : " (log: " + new File(t.workDir, "covfilter.log").getPath() + ")"));
+                    return ok;
+                }));
+            }
+            int failed = 0;
+            for (Future<Boolean> f : results) {
+                if (!f.get()) failed++;
+            }
+            System.out.println("[ManifestScheduler] makespan "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms, failed targets: " + failed);
+            if (failed > 0) {
+                throw new RuntimeException(failed + " of " + targets.size() + " targets failed");
+            }
+        } finally {
+            pool.shutdownNow();
+            targetHistory.save();
+            if (shared != null && shared != external) {
+                shared.close();
+            }
+        }
+    }
+
+    /**
+     * The order targets are started in, each with its expectedMs set: longest first; unknown
+     * before everything; manifest order among equals.
+     */
+    static List<Target> schedule(List<Target> targets, DurationHistory targetHistory, File jarDir)
+            throws IOException {
+        for (Target t : targets) {
+            t.expectedMs = expectedMs(t, targetHistory, jarDir);
+        }
+        List<Target> order = new ArrayList<>(targets);
+        order.sort(Comparator.comparingLong((Target t) -> t.expectedMs).reversed()
+                .thenComparingInt(t -> t.line));
+        return order;
+    }
+
+    private static long expectedMs(Target t, DurationHistory targetHistory, File jarDir) throws IOException {
+        long observed = targetHistory.observedMs(t.key);
+        if (observed >= 0) {
+            return observed;
+        }
+        String testClassesPath = CoverageFilterApp.resolveMaybeAbsolute(jarDir, t.args.get(7)).getPath();
+        DurationHistory tests = DurationHistory.load(testClassesPath);
+        long manual = tests.classTotalMs(t.args.get(2));
+        long agt = tests.classTotalMs(t.args.get(3));
+        if (manual < 0 && agt < 0) {
+            return UNKNOWN;
+        }
+        return Math.max(manual, 0) + Math.max(agt, 0);
+    }
+
+    private static boolean runInProcess(String mode, Target t, TargetResources shared) {
+        List<String> args = new ArrayList<>();
+        args.add(mode);
+        args.addAll(t.args);
+        try {
+            CoverageFilterApp.runTarget(args.toArray(new String[0]), shared);
+            return true;
+        } catch (Exception e) {
+            System.out.println("[ManifestScheduler] " + t.agtTestClass() + " failed: " + e);
+            e.printStackTrace(System.out);
+            return false;
+        }
+    }
+
+    private static boolean runIsolated(String mode, Target t) throws Exception {
+        t.workDir.mkdirs();
+        File log = new File(t.workDir, "covfilter.log");
+
+        List<String> cmd = new ArrayList<>();
+        cmd.add("java");
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // JVM options and -D properties of this coordinator; no debugger or agent ports.
+            if (arg.startsWith("-agentlib") || arg.startsWith("-javaagent") || arg.startsWith("-Xrunjdwp")) continue;
+            cmd.add(arg);
+        }
+        CoverageFilterApp.addOptionProperties(cmd);
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(CoverageFilterApp.class.getName());
+        cmd.add(mode);
+        cmd.addAll(t.args);
+
+        Process p = new ProcessBuilder(cmd)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+        return p.waitFor() == 0;
+    }
+}
@@ -1,9 +1,22 @@
 package app;
 
+import jacoco.JacocoRuntime;
+import jacoco.SessionDumper;
 import model.TestId;
+import runner.ExitTrap;
+import runner.NetworkGuard;
+import runner.StallMonitor;
+import runner.TestListener;
+import runner.TestOutcome;
 import runner.TestTimeouts;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -12,27 +25,127 @@ public final class RunMany {
 
     public static void main(String[] args) throws Exception {
         int argIndex = 0;
-        if (args.length >= 1 && args[0].startsWith("--timeout-ms=")) {
-            String raw = args[0].substring("--timeout-ms=".length());
-            System.setProperty(TestTimeouts.TIMEOUT_PROP, raw);
-            argIndex = 1;
-        } else if (args.length >= 2 && "--timeout-ms".equals(args[0])) {
-            System.setProperty(TestTimeouts.TIMEOUT_PROP, args[1]);
-            argIndex = 2;
+        File sessionsExec = null;
+        File durationsOut = null;
+        while (argIndex < args.length && args[argIndex].startsWith("--")) {
+            String opt = args[argIndex];
+            if (opt.startsWith("--timeout-ms=")) {
+                System.setProperty(TestTimeouts.TIMEOUT_PROP, opt.substring("--timeout-ms=".length()));
+                argIndex += 1;
+            } else if ("--timeout-ms".equals(opt) && argIndex + 1 < args.length) {
+                System.setProperty(TestTimeouts.TIMEOUT_PROP, args[argIndex + 1]);
+                argIndex += 2;
+            } else if (opt.startsWith("--sessions=")) {
+                sessionsExec = new File(opt.substring("--sessions=".length()));
+                argIndex += 1;
+            } else if ("--sessions".equals(opt) && argIndex + 1 < args.length) {
+                sessionsExec = new File(args[argIndex + 1]);
+                argIndex += 2;
+            } else if (opt.startsWith("--durations=")) {
+                durationsOut = new File(opt.substring("--durations=".length()));
+                argIndex += 1;
+            } else {
+                break;
+            }
         }
 
         if (args.length - argIndex < 1) {
             throw new IllegalArgumentException(
-                    "Usage: RunMany [--timeout-ms <ms>] <testSelector1> <testSelector2> ... (selector = fqcn or fqcn#method)"
+                    "Usage: RunMany [--timeout-ms <ms>] [--sessions <execFile>] [--durations=<file>] <testSelector1> <testSelector2> ..."
+                            + " (selector = fqcn or fqcn#method)"
             );
         }
 
+        StallMonitor.install();
+        ExitTrap.install();
+        NetworkGuard.install();
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        List<String> selectors = Arrays.asList(args).subList(argIndex, args.length);
+
+        List<TestOutcome> outcomes;
+        if (sessionsExec == null) {
+            outcomes = runSelectors(selectors, cl);
+        } else {
+            // One exec session per test id; the agent itself is started with output=none.
+            try (SessionDumper sessions = new SessionDumper(JacocoRuntime.get(), sessionsExec)) {
+                outcomes = runSelectors(selectors, cl, List.of(sessions));
+            }
+        }
+        if (durationsOut != null) {
+            writeDurations(durationsOut, outcomes);
+        }
+    }
+
+    static List<TestOutcome> runSelectors(List<String> selectors, ClassLoader cl) throws ClassNotFoundException {
+        return runSelectors(selectors, cl, List.of());
+    }
+
+    /**
+     * Writes "fqcn#method TAB ms TAB status" per test method (repeated and parameterized
+     * invocations summed, skipped and unfinished ones not counted in ms), for the coordinator's
+     * {@link DurationHistory} and {@link CoverageCache}. The status is the worst of the
+     * invocations: a timeout over a failure over a success.
+     */
+    static void writeDurations(File out, List<TestOutcome> outcomes) throws IOException {
+        Map<String, Long> total = new LinkedHashMap<>();
+        Map<String, TestOutcome.Status> status = new LinkedHashMap<>();
+        for (TestOutcome o : outcomes) {
+            status.merge(o.getSelector(), o.getStatus(), (a, b) -> severity(b) > severity(a) ? b : a);
+            boolean completed = o.getStatus() != TestOutcome.Status.SKIPPED
+                    && o.getStatus() != TestOutcome.Status.TIMEOUT
+                    && o.getStatus() != TestOutcome.Status.STALLED;
+            total.merge(o.getSelector(), completed ? o.getDurationMs() : 0L, Long::sum);
+        }
+        List<String> lines = new ArrayList<>();
+        total.forEach((selector, ms) -> lines.add(selector + "\t" + ms + "\t" + status.get(selector)));
+        File parent = out.getParentFile();
+        if (parent != null) parent.mkdirs();
+        Files.write(out.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /** Status per selector of a file written by {@link #writeDurations}; empty if there is none. */
+    static Map<String, TestOutcome.Status> readOutcomes(File durations) throws IOException {
+        Map<String, TestOutcome.Status> outcomes = new LinkedHashMap<>();
+        if (!durations.isFile()) return outcomes;
+        for (String line : Files.readAllLines(durations.toPath(), StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            if (fields.length < 3 || fields[0].isEmpty()) continue;
+            try {
+                outcomes.put(fields[0], TestOutcome.Status.valueOf(fields[2]));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown test status in " + durations + ": " + line, e);
+            }
+        }
+        return outcomes;
+    }
+
+    private static int severity(TestOutcome.Status status) {
+        switch (status) {
+            case SKIPPED:
+                return 0;
+            case SUCCESSFUL:
+                return 1;
+            case ABORTED:
+                return 2;
+            case FAILED:
+                return 3;
+            case STALLED:
+                return 4;
+            default:
+                return 5;
+        }
+    }
 
+    /**
+     * Runs the given selectors (fqcn or fqcn#method) in this JVM, grouped by test class.
+     * Shared by the one-shot fork and the long-lived worker ({@link RunWorker}).
+     */
+    static List<TestOutcome> runSelectors(List<String> selectors,
+                                          ClassLoader cl,
+                                          List<TestListener> listeners) throws ClassNotFoundException {
         // Build TestId list
         List<TestId> tests = new ArrayList<>();
-        for (int i = argIndex; i < args.length; i++) {
-            String s = args[i];
+        for (String s : selectors) {
             TestId t = TestId.fromString(s); // supports fqcn or fqcn#method (your TestId already does)
             // fail fast if class not found
             Class.forName(t.getClassName(), true, cl);
@@ -42,14 +155,16 @@ public final class RunMany {
         Map<String, List<TestId>> byClass = tests.stream()
                 .collect(Collectors.groupingBy(TestId::getClassName));
 
+        List<TestOutcome> outcomes = new ArrayList<>();
         for (Map.Entry<String, List<TestId>> entry : byClass.entrySet()) {
             Class<?> c = Class.forName(entry.getKey(), true, cl);
             TestDetector.JUnitVersion version = TestDetector.detect(c);
             if (version == TestDetector.JUnitVersion.JUNIT_4) {
-                new runner.JUnit4TestRunner(cl).runTests(entry.getValue());
+                outcomes.addAll(new runner.JUnit4TestRunner(cl, listeners).runTests(entry.getValue()));
             } else {
-                new runner.JUnit5TestRunner(cl).runTests(entry.getValue());
+                outcomes.addAll(new runner.JUnit5TestRunner(cl, listeners).runTests(entry.getValue()));
             }
         }
+        return outcomes;
     }
 }
@@ -2,6 +2,9 @@ package app;
 
 import runner.JUnit5TestRunner;
 import model.TestId;
+import runner.ExitTrap;
+import runner.NetworkGuard;
+import runner.StallMonitor;
 import runner.TestTimeouts;
 
 import java.util.List;
@@ -22,6 +25,10 @@ public final class RunOne {
             throw new IllegalArgumentException("Usage: RunOne [--timeout-ms <ms>] <testClassFqcn>");
         }
 
+        StallMonitor.install();
+        ExitTrap.install();
+        NetworkGuard.install();
+
         // inside RunOne.main, before running
         Class<?> c = Class.forName(testClass, true, Thread.currentThread().getContextClassLoader());
         System.out.println("[RunOne] Loaded test class: " + testClass);
@@ -0,0 +1,127 @@
+package app;
+
+import jacoco.JacocoRuntime;
+import runner.ExitTrap;
+import runner.NetworkGuard;
+import runner.StallMonitor;
+import runner.TestTimeouts;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Long-lived test JVM started by {@link ForkedJacocoRunner} in worker mode.
+ *
+ * Protocol (one request per line on stdin, tab separated):
+ *   run &lt;append&gt; &lt;execFile&gt; &lt;selector1&gt; [&lt;selector2&gt; ...]
+ *   quit
+ * Every request is answered with one line on stdout starting with {@link #REPLY_PREFIX}:
+ *   ok | poisoned | failed &lt;message&gt;
+ * Any other stdout line is test output and is echoed by the coordinator.
+ *
+ * The JaCoCo runtime is reset before and dumped after each request, so every exec
+ * file contains the probes of its own selectors only. Test durations of a request are
+ * written next to its exec file ({@link #durationsFile}). The class path entries given as
+ * arguments (SUT and test classes) are loaded per request by a fresh
+ * {@link IsolatingClassLoader}, so static initializers run again for every request,
+ * as they would in a one-shot fork.
+ */
+public final class RunWorker {
+
+    static final String REPLY_PREFIX = "@@covfilter-worker@@ ";
+    static final String READY = "ready";
+    static final String OK = "ok";
+    static final String POISONED = "poisoned";
+    static final String FAILED = "failed";
+
+    private static final long RUNAWAY_GRACE_MS = 500;
+
+    public static void main(String[] args) throws Exception {
+        // Tests may replace System.out/System.in; the protocol keeps using the real descriptors.
+        PrintStream protocol = new PrintStream(
+                new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        BufferedReader requests = new BufferedReader(
+                new InputStreamReader(System.in, StandardCharsets.UTF_8));
+
+        JacocoRuntime jacoco = JacocoRuntime.get();
+        StallMonitor.install();
+        ExitTrap.install();
+        NetworkGuard.install();
+        ClassLoader shared = Thread.currentThread().getContextClassLoader();
+        List<String> isolated = Arrays.asList(args);
+
+        reply(protocol, READY);
+
+        String line;
+        while ((line = requests.readLine()) != null) {
+            if (line.isBlank()) continue;
+            List<String> parts = Arrays.asList(line.split("\t"));
+            if ("quit".equals(parts.get(0))) {
+                break;
+            }
+            if (!"run".equals(parts.get(0)) || parts.size() < 4) {
+                reply(protocol, FAILED + " malformed request: " + line);
+                continue;
+            }
+
+            boolean append = Boolean.parseBoolean(parts.get(1));
+            File execFile = new File(parts.get(2));
+            List<String> selectors = parts.subList(3, parts.size());
+
+            jacoco.reset();
+            Throwable failure = null;
+            try (IsolatingClassLoader cl = new IsolatingClassLoader(isolated, shared)) {
+                Thread.currentThread().setContextClassLoader(cl);
+                RunMany.writeDurations(durationsFile(execFile), RunMany.runSelectors(selectors, cl));
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                Thread.currentThread().setContextClassLoader(shared);
+            }
+
+            writeExec(execFile, jacoco.getExecutionData(true), append);
+
+            if (failure != null) {
+                failure.printStackTrace();
+                reply(protocol, FAILED + " " + oneLine(failure));
+            } else {
+                reply(protocol, TestTimeouts.hasRunawayThreads(RUNAWAY_GRACE_MS) ? POISONED : OK);
+            }
+        }
+        protocol.flush();
+        // Runaway test threads may be non-daemon; do not wait for them.
+        ExitTrap.exit(0);
+    }
+
+    /** Where the test durations of a request go, next to its exec file. */
+    static File durationsFile(File execFile) {
+        return new File(execFile.getPath() + ".durations");
+    }
+
+    private static void writeExec(File execFile, byte[] data, boolean append) throws Exception {
+        File parent = execFile.getParentFile();
+        if (parent != null) parent.mkdirs();
+        try (OutputStream out = new FileOutputStream(execFile, append)) {
+            out.write(data);
+        }
+    }
+
+    private static void reply(PrintStream protocol, String msg) {
+        System.out.flush();
+        // Leading newline terminates any partial line a test left on stdout.
+        protocol.println();
+        protocol.println(REPLY_PREFIX + msg);
+    }
+
+    private static String oneLine(Throwable t) {
+        return String.valueOf(t).replace('\n', ' ').replace('\r', ' ');
+    }
+}
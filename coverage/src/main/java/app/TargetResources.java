@@ -0,0 +1,130 @@
+package app;
+
+import io.ContentCache;
+import jacoco.AnalysisScope;
+import jacoco.CoverageAnalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runners and analyzers of the targets of one coordinator JVM. Targets over the same SUT
+ * share one {@link CoverageAnalyzer} (its probe index with the per-class probe models, and unit
+ * dictionary); targets with the same class paths and test timeout share one
+ * {@link ForkedJacocoRunner} (its class path listing, worker JVMs, offline-instrumented SUT
+ * and duration history). A single run uses it for its one target.
+ *
+ * Each entry remembers a {@link ContentCache#stamp} of the files it was built from; a
+ * long-lived owner such as the {@link FilterDaemon} calls {@link #dropStale()} before each
+ * job, so a rebuilt SUT, test classes or libs directory gets fresh runners and analyzers.
+ */
+final class TargetResources implements AutoCloseable {
+
+    private final Map<String, Stamped<ForkedJacocoRunner>> runners = new LinkedHashMap<>();
+    private final Map<String, Stamped<CoverageAnalyzer>> analyzers = new LinkedHashMap<>();
+
+    /** A resource and the stamp of its input files when it was built. */
+    private static final class Stamped<T> {
+        final T value;
+        final File[] inputs;
+        final String stamp;
+
+        Stamped(T value, File... inputs) {
+            this.value = value;
+            this.inputs = inputs;
+            this.stamp = stampOf(inputs);
+        }
+
+        boolean stale() {
+            return stamp == null || !stamp.equals(stampOf(inputs));
+        }
+    }
+
+    synchronized ForkedJacocoRunner runner(String jacocoAgentJar,
+                                           File libsDir,
+                                           String sutClassesPath,
+                                           String testClassesPath,
+                                           String toolJarPath,
+                                           String testTimeoutMs) {
+        String key = String.join("\n", jacocoAgentJar, libsDir.getAbsolutePath(), sutClassesPath,
+                testClassesPath, toolJarPath, String.valueOf(testTimeoutMs));
+        return runners.computeIfAbsent(key, k -> {
+            ForkedJacocoRunner r = new ForkedJacocoRunner(
+                    jacocoAgentJar, libsDir, sutClassesPath, testClassesPath, toolJarPath, "app.RunMany");
+            r.setTestTimeoutMs(testTimeoutMs);
+            return new Stamped<>(r, new File(jacocoAgentJar), libsDir, new File(sutClassesPath),
+                    new File(testClassesPath), new File(toolJarPath));
+        }).value;
+    }
+
+    synchronized CoverageAnalyzer analyzer(File classesDir, AnalysisScope scope) {
+        String key = classesDir.getPath() + "\n" + scope;
+        return analyzers.computeIfAbsent(key, k -> new Stamped<>(new CoverageAnalyzer(classesDir, scope), classesDir))
+                .value;
+    }
+
+    /**
+     * Closes and forgets the runners and analyzers whose input files changed since they were
+     * built. Must not be called while a target is using them.
+     */
+    synchronized void dropStale() throws IOException {
+        List<IOException> failures = new ArrayList<>();
+        for (Iterator<Stamped<ForkedJacocoRunner>> it = runners.values().iterator(); it.hasNext(); ) {
+            Stamped<ForkedJacocoRunner> r = it.next();
+            if (r.stale()) {
+                System.out.println("[TargetResources] inputs changed, dropping the runner of " + r.inputs[2].getPath());
+                r.value.close();
+                it.remove();
+            }
+        }
+        for (Iterator<Stamped<CoverageAnalyzer>> it = analyzers.values().iterator(); it.hasNext(); ) {
+            Stamped<CoverageAnalyzer> a = it.next();
+            if (a.stale()) {
+                System.out.println("[TargetResources] classes changed, dropping analyzer of " + a.inputs[0].getPath());
+                it.remove();
+                try {
+                    a.value.close();
+                } catch (IOException e) {
+                    failures.add(e);
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+    }
+
+    private static String stampOf(File... inputs) {
+        try {
+            return ContentCache.stamp(inputs);
+        } catch (IOException e) {
+            // Unreadable inputs: the entry counts as stale and is rebuilt next time.
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        List<IOException> failures = new ArrayList<>();
+        for (Stamped<ForkedJacocoRunner> r : runners.values()) {
+            r.value.close();
+        }
+        for (Stamped<CoverageAnalyzer> a : analyzers.values()) {
+            try {
+                a.value.close();
+            } catch (IOException e) {
+                failures.add(e);
+            }
+        }
+        runners.clear();
+        analyzers.clear();
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+    }
+}
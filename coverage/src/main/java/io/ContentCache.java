@@ -0,0 +1,137 @@
+package io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Location and keys of the on-disk caches shared by all runs on this machine
+ * (jar class indexes, offline-instrumented SUT copies, ...). Entries are content
+ * addressed, so a stale entry is never picked up for changed inputs.
+ */
+public final class ContentCache {
+
+    /** Cache root; default ${java.io.tmpdir}/covfilter-cache. */
+    public static final String CACHE_DIR_PROP = "covfilter.cache.dir";
+
+    private ContentCache() {
+    }
+
+    public static File root() {
+        String dir = System.getProperty(CACHE_DIR_PROP);
+        if (dir == null || dir.isBlank()) {
+            return new File(System.getProperty("java.io.tmpdir"), "covfilter-cache");
+        }
+        return new File(dir.trim());
+    }
+
+    /**
+     * SHA-256 (hex) of the salts followed by the content of a file, or of every file under
+     * a directory (relative path and bytes, in sorted path order).
+     */
+    public static String sha256(File fileOrDir, String... salts) throws IOException {
+        MessageDigest md = newDigest();
+        for (String salt : salts) {
+            md.update(salt.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+        Path root = fileOrDir.toPath();
+        if (Files.isDirectory(root)) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(Files::isRegularFile).sorted().toList();
+            }
+            for (Path p : files) {
+                md.update(root.relativize(p).toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+                digest(md, p);
+            }
+        } else {
+            digest(md, root);
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /**
+     * SHA-256 (hex) of the path, size and modification time of the given files and of every
+     * file under the given directories: a cheap check whether any of them changed.
+     */
+    public static String stamp(File... filesOrDirs) throws IOException {
+        MessageDigest md = newDigest();
+        for (File f : filesOrDirs) {
+            Path root = f.toPath();
+            List<Path> files;
+            if (Files.isDirectory(root)) {
+                try (Stream<Path> walk = Files.walk(root)) {
+                    files = walk.filter(Files::isRegularFile).sorted().toList();
+                }
+            } else {
+                files = List.of(root);
+            }
+            for (Path p : files) {
+                File file = p.toFile();
+                md.update((file.getPath() + "|" + file.length() + "|" + file.lastModified())
+                        .getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /** SHA-256 (hex) of a byte array. */
+    public static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(newDigest().digest(bytes));
+    }
+
+    /**
+     * Moves a fully written temp file/directory to its final cache location. Concurrent
+     * runs may race to publish the same entry; the loser's copy is discarded.
+     */
+    public static void publish(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target);
+        } catch (IOException e) {
+            if (!Files.exists(target)) throw e;
+            deleteRecursively(tmp);
+        }
+    }
+
+    public static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) walk.sorted((a, b) -> b.compareTo(a))::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static void digest(MessageDigest md, Path file) throws IOException {
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
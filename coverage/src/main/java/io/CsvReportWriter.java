@@ -1,7 +1,9 @@
 package io;
 
 import jacoco.ClassDelta;
+import jacoco.GreedySelection;
 import jacoco.TestDelta;
+import model.ForkTimeoutRow;
 import model.LineDeltaRow;
 
 import java.io.BufferedWriter;
@@ -70,6 +72,35 @@ public final class CsvReportWriter {
         }
     }
 
+    public void writeForkTimeouts(File out, List<ForkTimeoutRow> rows) throws IOException {
+        ensureParent(out);
+        try (BufferedWriter w = Files.newBufferedWriter(out.toPath(), StandardCharsets.UTF_8)) {
+            w.write("stage,test_selectors,deadline_ms,thread_dump\n");
+            for (ForkTimeoutRow r : rows) {
+                w.write(csv(r.getStage())); w.write(",");
+                w.write(csv(r.getTestSelectors())); w.write(",");
+                w.write(Long.toString(r.getDeadlineMs())); w.write(",");
+                w.write(csv(r.getThreadDump()));
+                w.write("\n");
+            }
+        }
+    }
+
+    public void writeSelectionSteps(File out, List<GreedySelection.Step> steps) throws IOException {
+        ensureParent(out);
+        try (BufferedWriter w = Files.newBufferedWriter(out.toPath(), StandardCharsets.UTF_8)) {
+            w.write("rank,test_selector,marginal_gain,cumulative_gain\n");
+            for (int i = 0; i < steps.size(); i++) {
+                GreedySelection.Step st = steps.get(i);
+                w.write(Integer.toString(i + 1)); w.write(",");
+                w.write(csv(st.getTestSelector())); w.write(",");
+                w.write(Integer.toString(st.getGain())); w.write(",");
+                w.write(Long.toString(st.getTotal()));
+                w.write("\n");
+            }
+        }
+    }
+
     public String toRanges(List<Integer> lines) {
         if (lines == null || lines.isEmpty()) return "";
         List<Integer> sorted = new ArrayList<>(lines);
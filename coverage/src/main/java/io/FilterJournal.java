@@ -0,0 +1,284 @@
+package io;
+
+import jacoco.TestDelta;
+import model.ForkTimeoutRow;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Append-only record of an incremental filtering run, in its work directory: one line per
+ * candidate as its keep/drop decision is made, so that a run that dies part-way can resume
+ * after the last decided candidate instead of starting over.
+ *
+ * Lines are tab-separated:
+ *   H  version  manualTestClass  agtTestClass  baselineHash  methodsHash
+ *   C  index  selector  keep|drop|fast_drop  lines  methods  branches  instr  probes
+ *   T  stage  selectors  deadlineMs  threadDump
+ * probes is the candidate's exec data (base64) restricted to the classes in which it hits
+ * probes beyond the baseline ({@link jacoco.ProbeSnapshot#beyond}) and that are analyzed:
+ * enough to rebuild the running coverage, the kept candidates' line deltas and the input of
+ * a greedy selection. A
+ * journal is only resumed by a run with the same header, i.e. the same test classes,
+ * analyzed baseline probes and candidate list.
+ *
+ * Every line is flushed as it is written; the file is forced to disk every
+ * {@link #SYNC_EVERY_PROP} candidates and on close. A torn last line is ignored on resume.
+ */
+public final class FilterJournal implements Closeable {
+
+    /** Candidates between two fsyncs of the journal (default 16). */
+    public static final String SYNC_EVERY_PROP = "covfilter.journal.sync.every";
+    public static final String FILE_NAME = "filter_journal.tsv";
+
+    private static final String VERSION = "2";
+
+    public enum Decision { KEEP, DROP, FAST_DROP }
+
+    /** A candidate decided by an earlier run. */
+    public static final class Entry {
+        private final int index;
+        private final TestDelta testDelta;
+        private final Decision decision;
+        private final ExecutionDataStore probes;
+
+        Entry(int index, TestDelta testDelta, Decision decision, ExecutionDataStore probes) {
+            this.index = index;
+            this.testDelta = testDelta;
+            this.decision = decision;
+            this.probes = probes;
+        }
+
+        public int getIndex() { return index; }
+        public TestDelta getTestDelta() { return testDelta; }
+        public Decision getDecision() { return decision; }
+        /** The candidate's analyzed probes beyond the baseline. */
+        public ExecutionDataStore getProbes() { return probes; }
+    }
+
+    /** What a journal holds for a run: its decided candidates in order and their fork timeouts. */
+    public static final class Restored {
+        public static final Restored NONE = new Restored(List.of(), List.of(), List.of());
+
+        private final List<Entry> entries;
+        private final List<ForkTimeoutRow> timeouts;
+        private final List<String> lines;
+
+        private Restored(List<Entry> entries, List<ForkTimeoutRow> timeouts, List<String> lines) {
+            this.entries = entries;
+            this.timeouts = timeouts;
+            this.lines = lines;
+        }
+
+        public List<Entry> getEntries() { return entries; }
+        public List<ForkTimeoutRow> getTimeouts() { return timeouts; }
+    }
+
+    private final FileOutputStream out;
+    private final BufferedWriter writer;
+    private final int syncEvery;
+    private int unsynced;
+
+    private FilterJournal(File file) throws IOException {
+        this.out = new FileOutputStream(file, true);
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        this.syncEvery = Math.max(1, Integer.getInteger(SYNC_EVERY_PROP, 16));
+    }
+
+    /**
+     * Identity of a run: the journal of another run is never resumed. baseline holds the
+     * analyzed classes only; other classes' probes vary from run to run.
+     */
+    public static String header(String manualTestClass,
+                                String agtTestClass,
+                                ExecutionDataStore baseline,
+                                List<String> methods) {
+        List<ExecutionData> classes = new ArrayList<>(baseline.getContents());
+        classes.sort(Comparator.comparingLong(ExecutionData::getId));
+        ByteArrayOutputStream probes = new ByteArrayOutputStream();
+        for (ExecutionData d : classes) {
+            probes.writeBytes(ByteBuffer.allocate(Long.BYTES).putLong(d.getId()).array());
+            for (boolean hit : d.getProbes()) {
+                probes.write(hit ? 1 : 0);
+            }
+            probes.write(2);
+        }
+        return String.join("\t", "H", VERSION, manualTestClass, agtTestClass,
+                ContentCache.sha256(probes.toByteArray()),
+                ContentCache.sha256(String.join("\n", methods).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The candidates of a journal with the given header, up to the first incomplete or
+     * unreadable line; {@link Restored#NONE} if there is no such journal.
+     */
+    public static Restored read(File file, String header) throws IOException {
+        if (!file.isFile()) {
+            return Restored.NONE;
+        }
+        String text = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        int end = text.lastIndexOf('\n');
+        if (end < 0) {
+            return Restored.NONE;
+        }
+        String[] lines = text.substring(0, end).split("\n", -1);
+        if (!lines[0].equals(header)) {
+            return Restored.NONE;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        List<String> entryLines = new ArrayList<>();
+        List<String[]> timeoutFields = new ArrayList<>();
+        for (int i = 1; i < lines.length; i++) {
+            String[] f = lines[i].split("\t", -1);
+            try {
+                if (f[0].equals("C") && f.length == 9 && Integer.parseInt(f[1]) == entries.size()) {
+                    entries.add(new Entry(
+                            Integer.parseInt(f[1]),
+                            new TestDelta(f[2], Integer.parseInt(f[4]), Integer.parseInt(f[5]),
+                                    Integer.parseInt(f[6]), Integer.parseInt(f[7])),
+                            Decision.valueOf(f[3].toUpperCase(Locale.ROOT)),
+                            decodeProbes(f[8])));
+                    entryLines.add(lines[i]);
+                    continue;
+                }
+                if (f[0].equals("T") && f.length == 5) {
+                    Long.parseLong(f[3]);
+                    timeoutFields.add(f);
+                    continue;
+                }
+            } catch (IllegalArgumentException | IOException e) {
+                // Unreadable from here on.
+            }
+            break;
+        }
+
+        // Only timeouts of restored candidates: the others run again.
+        Set<String> decided = new HashSet<>();
+        for (Entry e : entries) {
+            decided.add(e.getTestDelta().getTestSelector());
+        }
+        List<ForkTimeoutRow> timeouts = new ArrayList<>();
+        List<String> restoredLines = new ArrayList<>(entryLines);
+        for (String[] f : timeoutFields) {
+            if (f[1].equals("candidate") && decided.contains(f[2])) {
+                timeouts.add(new ForkTimeoutRow(f[1], f[2], Long.parseLong(f[3]), f[4].isEmpty() ? null : f[4]));
+                restoredLines.add(String.join("\t", f));
+            }
+        }
+        return new Restored(entries, timeouts, restoredLines);
+    }
+
+    /**
+     * Starts the journal of a run afresh with its header and what was restored from the old
+     * one (rewritten, so that nothing follows a torn line), then appends.
+     */
+    public static FilterJournal create(File file, String header, Restored restored) throws IOException {
+        Path target = file.toPath();
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), ".tmp");
+        List<String> lines = new ArrayList<>();
+        lines.add(header);
+        lines.addAll(restored.lines);
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            fos.write((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new FilterJournal(file);
+    }
+
+    /** Records the decision on candidate index with its probes beyond the baseline (may be null). */
+    public synchronized void candidate(int index,
+                                       TestDelta delta,
+                                       Decision decision,
+                                       ExecutionDataStore probes) throws IOException {
+        writeLine(String.join("\t", "C",
+                Integer.toString(index),
+                field(delta.getTestSelector()),
+                decision.name().toLowerCase(Locale.ROOT),
+                Integer.toString(delta.getAddedLines()),
+                Integer.toString(delta.getAddedMethods()),
+                Integer.toString(delta.getAddedBranches()),
+                Integer.toString(delta.getAddedInstructions()),
+                probes == null ? "" : encodeProbes(probes)));
+        if (++unsynced >= syncEvery) {
+            sync();
+        }
+    }
+
+    public synchronized void timeout(ForkTimeoutRow row) throws IOException {
+        writeLine(String.join("\t", "T",
+                field(row.getStage()),
+                field(row.getTestSelectors()),
+                Long.toString(row.getDeadlineMs()),
+                field(row.getThreadDump())));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    private void sync() throws IOException {
+        writer.flush();
+        out.getFD().sync();
+        unsynced = 0;
+    }
+
+    private static String field(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String encodeProbes(ExecutionDataStore probes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExecutionDataWriter w = new ExecutionDataWriter(bytes);
+        for (ExecutionData d : probes.getContents()) {
+            w.visitClassExecution(d);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    private static ExecutionDataStore decodeProbes(String field) throws IOException {
+        ExecutionDataStore store = new ExecutionDataStore();
+        if (field.isEmpty()) {
+            return store;
+        }
+        ExecutionDataReader reader = new ExecutionDataReader(new ByteArrayInputStream(Base64.getDecoder().decode(field)));
+        reader.setExecutionDataVisitor(store::put);
+        reader.read();
+        return store;
+    }
+}
@@ -0,0 +1,117 @@
+package jacoco;
+
+import org.jacoco.core.runtime.WildcardMatcher;
+
+import java.util.Locale;
+
+/**
+ * Which classes under classesDir {@link CoverageAnalyzer} looks at.
+ *
+ * Includes/excludes use the JaCoCo agent syntax (':'-separated, '*' and '?' wildcards,
+ * dotted class names), so the same value as jacoco.includes can be used. The mode
+ * narrows further:
+ *   all  - every class (default, as before)
+ *   exec - only classes that have execution data in the analyzed store
+ *   cut  - only classes in the package of the class under test
+ * Classes without execution data cannot contribute covered units or deltas, so "exec"
+ * changes none of the reported numbers, only the size of AnalysisResult.perClass.
+ */
+public final class AnalysisScope {
+
+    public static final String MODE_PROP = "analysis.scope";
+    public static final String INCLUDES_PROP = "analysis.includes";
+    public static final String EXCLUDES_PROP = "analysis.excludes";
+
+    public enum Mode { ALL, EXEC, CUT }
+
+    private static final AnalysisScope ALL = new AnalysisScope(Mode.ALL, null, null, null);
+
+    private final Mode mode;
+    private final WildcardMatcher includes;   // null = everything
+    private final WildcardMatcher excludes;   // null = nothing
+    private final String cutPackage;          // internal name prefix "pkg/sub/", CUT mode only
+    private final String description;
+
+    private AnalysisScope(Mode mode, String includes, String excludes, String cutPackage) {
+        this.mode = mode;
+        this.includes = includes == null ? null : new WildcardMatcher(includes);
+        this.excludes = excludes == null ? null : new WildcardMatcher(excludes);
+        this.cutPackage = cutPackage;
+        this.description = "mode=" + mode.name().toLowerCase(Locale.ROOT)
+                + (cutPackage != null ? " package=" + (cutPackage.isEmpty() ? "<default>" : cutPackage) : "")
+                + (includes != null ? " includes=" + includes : "")
+                + (excludes != null ? " excludes=" + excludes : "");
+    }
+
+    public static AnalysisScope all() {
+        return ALL;
+    }
+
+    /**
+     * Reads analysis.scope / analysis.includes / analysis.excludes. cutClass (fqcn of the
+     * class under test, or of a test in its package) is required for the cut mode only.
+     */
+    public static AnalysisScope fromSystemProperties(String cutClass) {
+        String modeValue = System.getProperty(MODE_PROP, "all").trim();
+        Mode mode;
+        try {
+            mode = Mode.valueOf(modeValue.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + MODE_PROP + ": " + modeValue
+                    + " (expected all, exec or cut)");
+        }
+
+        String cutPackage = null;
+        if (mode == Mode.CUT) {
+            if (cutClass == null || cutClass.isBlank()) {
+                throw new IllegalArgumentException(MODE_PROP + "=cut needs the class under test");
+            }
+            int dot = cutClass.lastIndexOf('.');
+            cutPackage = dot < 0 ? "" : cutClass.substring(0, dot + 1).replace('.', '/');
+        }
+
+        AnalysisScope scope = new AnalysisScope(mode,
+                patterns(System.getProperty(INCLUDES_PROP)),
+                patterns(System.getProperty(EXCLUDES_PROP)),
+                cutPackage);
+        if (scope.isAll()) {
+            return ALL;
+        }
+        System.out.println("[AnalysisScope] " + scope);
+        return scope;
+    }
+
+    private static String patterns(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /** True if no class is filtered out, i.e. a plain analyzeAll(classesDir) is exact. */
+    public boolean isAll() {
+        return mode == Mode.ALL && includes == null && excludes == null;
+    }
+
+    /** True if only classes with execution data are analyzed. */
+    public boolean execOnly() {
+        return mode == Mode.EXEC;
+    }
+
+    /** Name-based filter; className is the internal VM name (pkg/Foo$Bar). */
+    public boolean accepts(String className) {
+        if (cutPackage != null) {
+            if (!className.startsWith(cutPackage) || className.indexOf('/', cutPackage.length()) >= 0) {
+                return false;
+            }
+        }
+        if (includes == null && excludes == null) {
+            return true;
+        }
+        String dotted = className.replace('/', '.');
+        return (includes == null || includes.matches(dotted))
+                && (excludes == null || !excludes.matches(dotted));
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,741 @@
+package jacoco;
+
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.internal.analysis.ClassCoverageImpl;
+import org.jacoco.core.internal.analysis.CounterImpl;
+import org.jacoco.core.internal.analysis.MethodCoverageImpl;
+import org.jacoco.core.internal.analysis.filter.Filters;
+import org.jacoco.core.internal.analysis.filter.IFilter;
+import org.jacoco.core.internal.analysis.filter.IFilterContext;
+import org.jacoco.core.internal.analysis.filter.IFilterOutput;
+import org.jacoco.core.internal.analysis.filter.Replacements;
+import org.jacoco.core.internal.flow.ClassProbesAdapter;
+import org.jacoco.core.internal.flow.ClassProbesVisitor;
+import org.jacoco.core.internal.flow.IFrame;
+import org.jacoco.core.internal.flow.LabelInfo;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import model.UnitDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which probes cover which instruction and branch of a class, derived once from its
+ * bytecode. Summaries for any probe vector are then computed without ASM.
+ *
+ * The model follows JaCoCo's own analysis step by step (instruction graph, probe
+ * propagation along predecessors, then the filters' ignore/merge/replace output), with the
+ * boolean "covered" of each instruction branch replaced by the set of probes that cover it
+ * on their own. JaCoCo's coverage is monotone in the probes, so an instruction branch is
+ * covered by a probe vector exactly when one of its probes was hit.
+ */
+final class ClassProbeModel {
+
+    private static final String STATIC_INIT = "<clinit>()V";
+
+    final String name;
+    final int probeCount;
+    private final long classId;
+    private final MethodModel[] methods;
+    // Probes of <clinit>, and of <clinit> plus the methods of this class it calls (transitively).
+    private final BitSet clinitProbes;
+    private final BitSet staticInitProbes;
+
+    private ClassProbeModel(String name, int probeCount, long classId, MethodModel[] methods,
+                            BitSet clinitProbes, BitSet staticInitProbes) {
+        this.name = name;
+        this.probeCount = probeCount;
+        this.classId = classId;
+        this.methods = methods;
+        this.clinitProbes = clinitProbes;
+        this.staticInitProbes = staticInitProbes;
+    }
+
+    /** The model of a class; null for classes JaCoCo does not analyze (synthetic, module-info). */
+    static ClassProbeModel build(long classId, byte[] classBytes) {
+        ClassReader reader = InstrSupport.classReaderFor(classBytes);
+        if ((reader.getAccess() & (Opcodes.ACC_MODULE | Opcodes.ACC_SYNTHETIC)) != 0) {
+            return null;
+        }
+        ClassVisitor visitor = new ClassVisitor();
+        reader.accept(new ClassProbesAdapter(visitor, false), 0);
+        return new ClassProbeModel(reader.getClassName(), visitor.probeCount, classId,
+                visitor.methods.toArray(new MethodModel[0]),
+                visitor.probesOf(STATIC_INIT), visitor.reachableProbes(STATIC_INIT));
+    }
+
+    /**
+     * The probes of the static initializer, and of the methods of this class it calls, among
+     * the given ones; null if the initializer did not run. The initializer runs once per
+     * class loader, so these are the probes a test touching the class first records on top
+     * of its own. A method the test calls itself as well is attributed to the initializer.
+     */
+    boolean[] staticInitHits(boolean[] probes) {
+        if (probes == null || !anyHit(clinitProbes, probes)) return null;
+        boolean[] hits = new boolean[probes.length];
+        for (int p = staticInitProbes.nextSetBit(0); p >= 0 && p < probes.length; p = staticInitProbes.nextSetBit(p + 1)) {
+            hits[p] = probes[p];
+        }
+        return hits;
+    }
+
+    private static boolean anyHit(BitSet ids, boolean[] probes) {
+        for (int p = ids.nextSetBit(0); p >= 0 && p < probes.length; p = ids.nextSetBit(p + 1)) {
+            if (probes[p]) return true;
+        }
+        return false;
+    }
+
+    /** Summary when exactly the given probes were hit (null = class not executed). */
+    ClassSummary summary(boolean[] probes, UnitDictionary dictionary) {
+        ClassCoverageImpl coverage = new ClassCoverageImpl(name, classId, false);
+        for (MethodModel m : methods) {
+            MethodCoverageImpl mc = new MethodCoverageImpl(m.name, m.desc, m.signature);
+            for (int i = 0; i < m.lines.length; i++) {
+                int coveredBranches = coveredBranches(m.branchProbes[i], probes);
+                ICounter instructions = coveredBranches > 0 ? CounterImpl.COUNTER_0_1 : CounterImpl.COUNTER_1_0;
+                ICounter branches = m.branches[i] < 2
+                        ? CounterImpl.COUNTER_0_0
+                        : CounterImpl.getInstance(m.branches[i] - coveredBranches, coveredBranches);
+                mc.increment(instructions, branches, m.lines[i]);
+            }
+            mc.incrementMethodCounter();
+            if (mc.containsCode()) {
+                coverage.addMethod(mc);
+            }
+        }
+        return ClassSummary.of(coverage, dictionary);
+    }
+
+    /**
+     * Covered lines, branches or instructions when exactly the given probes were hit; the
+     * matching counter of {@link #summary} without building it.
+     */
+    int covered(GreedySelection.Metric metric, boolean[] probes) {
+        BitSet lines = metric == GreedySelection.Metric.LINES ? new BitSet() : null;
+        int covered = 0;
+        for (MethodModel m : methods) {
+            for (int i = 0; i < m.lines.length; i++) {
+                int coveredBranches = coveredBranches(m.branchProbes[i], probes);
+                if (coveredBranches == 0) continue;
+                switch (metric) {
+                    case BRANCHES:
+                        if (m.branches[i] >= 2) covered += coveredBranches;
+                        break;
+                    case INSTRUCTIONS:
+                        covered++;
+                        break;
+                    default:
+                        if (m.lines[i] >= 0) lines.set(m.lines[i]);
+                }
+            }
+        }
+        return lines != null ? lines.cardinality() : covered;
+    }
+
+    private static int coveredBranches(int[][] branchProbes, boolean[] probes) {
+        if (probes == null) return 0;
+        int covered = 0;
+        for (int[] branch : branchProbes) {
+            for (int p : branch) {
+                if (p < probes.length && probes[p]) {
+                    covered++;
+                    break;
+                }
+            }
+        }
+        return covered;
+    }
+
+    /** Final (filtered) instructions of a method: line, branch count and probes per branch. */
+    private static final class MethodModel {
+        final String name;
+        final String desc;
+        final String signature;
+        final int[] lines;
+        final int[] branches;
+        final int[][][] branchProbes;   // instruction -> covered-branch bit -> probe ids
+
+        MethodModel(String name, String desc, String signature, int[] lines, int[] branches, int[][][] branchProbes) {
+            this.name = name;
+            this.desc = desc;
+            this.signature = signature;
+            this.lines = lines;
+            this.branches = branches;
+            this.branchProbes = branchProbes;
+        }
+    }
+
+    /* ===== building: mirrors ClassAnalyzer, MethodAnalyzer and InstructionsBuilder ===== */
+
+    private static final class ClassVisitor extends ClassProbesVisitor implements IFilterContext {
+        private final IFilter filter = Filters.all();
+        private final Set<String> classAnnotations = new HashSet<>();
+        private final Set<String> classAttributes = new HashSet<>();
+        private final List<MethodModel> methods = new ArrayList<>();
+        private final Map<String, BitSet> methodProbes = new HashMap<>();
+        private final Map<String, Set<String>> methodCalls = new HashMap<>();
+        private String className;
+        private String superName;
+        private String sourceFileName;
+        private String sourceDebugExtension;
+        private int probeCount;
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.className = name;
+            this.superName = superName;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            classAnnotations.add(desc);
+            return super.visitAnnotation(desc, visible);
+        }
+
+        @Override
+        public void visitAttribute(Attribute attribute) {
+            classAttributes.add(attribute.type);
+        }
+
+        @Override
+        public void visitSource(String source, String debug) {
+            this.sourceFileName = source;
+            this.sourceDebugExtension = debug;
+        }
+
+        @Override
+        public MethodProbesVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            InstrSupport.assertNotInstrumented(name, className);
+            return new MethodBuilder(this, name, desc, signature);
+        }
+
+        @Override
+        public void visitTotalProbeCount(int count) {
+            probeCount = count;
+        }
+
+        BitSet probesOf(String method) {
+            BitSet probes = methodProbes.get(method);
+            return probes == null ? new BitSet() : probes;
+        }
+
+        /** Probes of the method and of the methods of this class it calls, directly or not. */
+        BitSet reachableProbes(String method) {
+            BitSet probes = new BitSet();
+            Set<String> seen = new HashSet<>();
+            List<String> todo = new ArrayList<>(List.of(method));
+            while (!todo.isEmpty()) {
+                String m = todo.remove(todo.size() - 1);
+                if (!seen.add(m)) continue;
+                probes.or(probesOf(m));
+                todo.addAll(methodCalls.getOrDefault(m, Set.of()));
+            }
+            return probes;
+        }
+
+        @Override
+        public String getClassName() {
+            return className;
+        }
+
+        @Override
+        public String getSuperClassName() {
+            return superName;
+        }
+
+        @Override
+        public Set<String> getClassAnnotations() {
+            return classAnnotations;
+        }
+
+        @Override
+        public Set<String> getClassAttributes() {
+            return classAttributes;
+        }
+
+        @Override
+        public String getSourceFileName() {
+            return sourceFileName;
+        }
+
+        @Override
+        public String getSourceDebugExtension() {
+            return sourceDebugExtension;
+        }
+    }
+
+    /** An instruction of the graph, before filtering. */
+    private static final class Node {
+        final int index;
+        final int line;
+        int branches;
+
+        Node(int index, int line) {
+            this.index = index;
+            this.line = line;
+        }
+    }
+
+    private record Jump(Node source, Label target, int branch) {
+    }
+
+    /**
+     * Records the instruction graph as JaCoCo builds it: instructions, edges (sequential and,
+     * once the method is complete, jumps) and probes, in order. Propagation depends on that
+     * order, so it is replayed per probe rather than read off the final graph.
+     */
+    private static final class MethodBuilder extends MethodProbesVisitor {
+        private static final int EDGE = 0;
+        private static final int PROBE = 1;
+
+        private final ClassVisitor owner;
+        private final String name;
+        private final String desc;
+        private final String signature;
+
+        private final List<Node> nodes = new ArrayList<>();
+        private final Map<AbstractInsnNode, Node> instructions = new HashMap<>();
+        private final Map<Label, Node> labelTargets = new IdentityHashMap<>();
+        private final List<Label> currentLabel = new ArrayList<>(2);
+        private final List<Jump> jumps = new ArrayList<>();
+        private final BitSet probes = new BitSet();
+        private final Set<String> calls = new HashSet<>();
+        private int[] events = new int[64];     // (kind, a, b, branch) quadruples
+        private int eventCount;
+        private int currentLine = -1;
+        private Node currentInsn;
+        private AbstractInsnNode currentNode;
+
+        MethodBuilder(ClassVisitor owner, String name, String desc, String signature) {
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+            this.signature = signature;
+        }
+
+        @Override
+        public void accept(MethodNode methodNode, MethodVisitor methodVisitor) {
+            methodVisitor.visitCode();
+            for (TryCatchBlockNode n : methodNode.tryCatchBlocks) {
+                n.accept(methodVisitor);
+            }
+            for (AbstractInsnNode i : methodNode.instructions) {
+                currentNode = i;
+                i.accept(methodVisitor);
+            }
+            methodVisitor.visitEnd();
+            finish(methodNode);
+        }
+
+        private void event(int kind, int a, int b, int branch) {
+            if (eventCount + 4 > events.length) {
+                events = Arrays.copyOf(events, events.length * 2);
+            }
+            events[eventCount++] = kind;
+            events[eventCount++] = a;
+            events[eventCount++] = b;
+            events[eventCount++] = branch;
+        }
+
+        private void addInstruction() {
+            Node insn = new Node(nodes.size(), currentLine);
+            nodes.add(insn);
+            for (int i = currentLabel.size() - 1; i >= 0; i--) {
+                labelTargets.put(currentLabel.get(i), insn);
+            }
+            currentLabel.clear();
+            if (currentInsn != null) {
+                currentInsn.branches++;
+                event(EDGE, currentInsn.index, insn.index, 0);
+            }
+            currentInsn = insn;
+            instructions.put(currentNode, insn);
+        }
+
+        private void addJump(Label target, int branch) {
+            jumps.add(new Jump(currentInsn, target, branch));
+        }
+
+        private void addProbe(int probeId, int branch) {
+            probes.set(probeId);
+            currentInsn.branches++;
+            event(PROBE, currentInsn.index, probeId, branch);
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            currentLabel.add(label);
+            if (!LabelInfo.isSuccessor(label)) {
+                currentInsn = null;
+            }
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            currentLine = line;
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            addInstruction();
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            addInstruction();
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            addInstruction();
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            addInstruction();
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            addInstruction();
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+            addInstruction();
+            if (owner.equals(this.owner.className)) {
+                calls.add(name + desc);
+            }
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+            addInstruction();
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            addInstruction();
+            addJump(label, 1);
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst) {
+            addInstruction();
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            addInstruction();
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            visitSwitchInsn(dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            visitSwitchInsn(dflt, labels);
+        }
+
+        private void visitSwitchInsn(Label dflt, Label[] labels) {
+            addInstruction();
+            LabelInfo.resetDone(labels);
+            int branch = 0;
+            addJump(dflt, branch);
+            LabelInfo.setDone(dflt);
+            for (Label l : labels) {
+                if (!LabelInfo.isDone(l)) {
+                    branch++;
+                    addJump(l, branch);
+                    LabelInfo.setDone(l);
+                }
+            }
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+            addInstruction();
+        }
+
+        @Override
+        public void visitProbe(int probeId) {
+            addProbe(probeId, 0);
+            currentInsn = null;
+        }
+
+        @Override
+        public void visitJumpInsnWithProbe(int opcode, Label label, int probeId, IFrame frame) {
+            addInstruction();
+            addProbe(probeId, 1);
+        }
+
+        @Override
+        public void visitInsnWithProbe(int opcode, int probeId) {
+            addInstruction();
+            addProbe(probeId, 0);
+        }
+
+        @Override
+        public void visitTableSwitchInsnWithProbes(int min, int max, Label dflt, Label[] labels, IFrame frame) {
+            visitSwitchInsnWithProbes(dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsnWithProbes(Label dflt, int[] keys, Label[] labels, IFrame frame) {
+            visitSwitchInsnWithProbes(dflt, labels);
+        }
+
+        private void visitSwitchInsnWithProbes(Label dflt, Label[] labels) {
+            addInstruction();
+            LabelInfo.resetDone(dflt);
+            LabelInfo.resetDone(labels);
+            int branch = 0;
+            visitSwitchTarget(dflt, branch);
+            for (Label l : labels) {
+                branch++;
+                visitSwitchTarget(l, branch);
+            }
+        }
+
+        private void visitSwitchTarget(Label label, int branch) {
+            int id = LabelInfo.getProbeId(label);
+            if (!LabelInfo.isDone(label)) {
+                if (id == LabelInfo.NO_PROBE) {
+                    addJump(label, branch);
+                } else {
+                    addProbe(id, branch);
+                }
+                LabelInfo.setDone(label);
+            }
+        }
+
+        /** Wires the jumps, replays the probes and applies the filters; mirrors addMethodCoverage. */
+        private void finish(MethodNode methodNode) {
+            for (Jump jump : jumps) {
+                jump.source.branches++;
+                event(EDGE, jump.source.index, labelTargets.get(jump.target).index, jump.branch);
+            }
+
+            Map<AbstractInsnNode, Insn> insns = new HashMap<>();
+            BitSet[][] covering = probesPerBranch();
+            for (Map.Entry<AbstractInsnNode, Node> e : instructions.entrySet()) {
+                Node n = e.getValue();
+                insns.put(e.getKey(), new Insn(n.line, n.branches, covering[n.index]));
+            }
+
+            owner.methodProbes.put(name + desc, probes);
+            owner.methodCalls.put(name + desc, calls);
+
+            Calculator calculator = new Calculator(insns);
+            owner.filter.filter(methodNode, owner, calculator);
+            MethodModel model = calculator.model(name, desc, signature);
+            if (model != null) {
+                owner.methods.add(model);
+            }
+        }
+
+        /**
+         * For every node and branch the probes that cover it when hit alone, by replaying
+         * InstructionsBuilder/Instruction.propagateExecutedBranch once per probe.
+         */
+        private BitSet[][] probesPerBranch() {
+            int n = nodes.size();
+            BitSet[][] result = new BitSet[n][];
+            Set<Integer> probeIds = new HashSet<>();
+            for (int e = 0; e < eventCount; e += 4) {
+                if (events[e] == PROBE) probeIds.add(events[e + 2]);
+            }
+
+            int[] predecessor = new int[n];
+            int[] predecessorBranch = new int[n];
+            BitSet[] covered = new BitSet[n];
+            for (int probe : probeIds) {
+                Arrays.fill(predecessor, -1);
+                Arrays.fill(covered, null);
+                for (int e = 0; e < eventCount; e += 4) {
+                    int a = events[e + 1];
+                    int b = events[e + 2];
+                    int branch = events[e + 3];
+                    if (events[e] == EDGE) {
+                        predecessor[b] = a;
+                        predecessorBranch[b] = branch;
+                        if (covered[b] != null) propagate(a, branch, predecessor, predecessorBranch, covered);
+                    } else if (b == probe) {
+                        propagate(a, branch, predecessor, predecessorBranch, covered);
+                    }
+                }
+                for (int i = 0; i < n; i++) {
+                    if (covered[i] == null) continue;
+                    for (int bit = covered[i].nextSetBit(0); bit >= 0; bit = covered[i].nextSetBit(bit + 1)) {
+                        if (result[i] == null) result[i] = new BitSet[bit + 1];
+                        if (result[i].length <= bit) result[i] = Arrays.copyOf(result[i], bit + 1);
+                        if (result[i][bit] == null) result[i][bit] = new BitSet();
+                        result[i][bit].set(probe);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private static void propagate(int insn, int branch, int[] predecessor, int[] predecessorBranch, BitSet[] covered) {
+            while (insn != -1) {
+                if (covered[insn] != null) {
+                    covered[insn].set(branch);
+                    return;
+                }
+                covered[insn] = new BitSet();
+                covered[insn].set(branch);
+                branch = predecessorBranch[insn];
+                insn = predecessor[insn];
+            }
+        }
+    }
+
+    /** Instruction state for the filters: like JaCoCo's Instruction, with probe sets as coverage. */
+    private static final class Insn {
+        final int line;
+        final int branches;
+        final BitSet[] covering;    // covered-branch bit -> probes; null entries = never covered
+
+        Insn(int line, int branches, BitSet[] covering) {
+            this.line = line;
+            this.branches = branches;
+            this.covering = covering == null ? new BitSet[0] : covering;
+        }
+
+        BitSet covering(int bit) {
+            return bit < covering.length ? covering[bit] : null;
+        }
+
+        Insn merge(Insn other) {
+            BitSet[] merged = new BitSet[Math.max(covering.length, other.covering.length)];
+            for (int bit = 0; bit < merged.length; bit++) {
+                merged[bit] = union(covering(bit), other.covering(bit));
+            }
+            return new Insn(line, branches, merged);
+        }
+
+        Insn replaceBranches(Replacements replacements, Map<AbstractInsnNode, Insn> mapper) {
+            List<BitSet> replaced = new ArrayList<>();
+            for (Collection<Replacements.InstructionBranch> group : replacements.values()) {
+                BitSet probes = null;
+                for (Replacements.InstructionBranch ib : group) {
+                    probes = union(probes, mapper.get(ib.instruction).covering(ib.branch));
+                }
+                replaced.add(probes);
+            }
+            return new Insn(line, replaced.size(), replaced.toArray(new BitSet[0]));
+        }
+
+        private static BitSet union(BitSet a, BitSet b) {
+            if (a == null) return b == null ? null : (BitSet) b.clone();
+            BitSet u = (BitSet) a.clone();
+            if (b != null) u.or(b);
+            return u;
+        }
+    }
+
+    /** The filter output, applied as MethodCoverageCalculator applies it. */
+    private static final class Calculator implements IFilterOutput {
+        private final Map<AbstractInsnNode, Insn> instructions;
+        private final Set<AbstractInsnNode> ignored = new HashSet<>();
+        private final Map<AbstractInsnNode, AbstractInsnNode> merged = new HashMap<>();
+        private final Map<AbstractInsnNode, Replacements> replacements = new HashMap<>();
+
+        Calculator(Map<AbstractInsnNode, Insn> instructions) {
+            this.instructions = instructions;
+        }
+
+        @Override
+        public void ignore(AbstractInsnNode fromInclusive, AbstractInsnNode toInclusive) {
+            for (AbstractInsnNode i = fromInclusive; i != toInclusive; i = i.getNext()) {
+                ignored.add(i);
+            }
+            ignored.add(toInclusive);
+        }
+
+        @Override
+        public void merge(AbstractInsnNode i1, AbstractInsnNode i2) {
+            i1 = findRepresentative(i1);
+            i2 = findRepresentative(i2);
+            if (i1 != i2) {
+                merged.put(i2, i1);
+            }
+        }
+
+        @Override
+        public void replaceBranches(AbstractInsnNode source, Replacements newBranches) {
+            replacements.put(source, newBranches);
+        }
+
+        private AbstractInsnNode findRepresentative(AbstractInsnNode i) {
+            AbstractInsnNode r;
+            while ((r = merged.get(i)) != null) {
+                i = r;
+            }
+            return i;
+        }
+
+        /** The method's instructions after merges and replacements; null if nothing is left. */
+        MethodModel model(String name, String desc, String signature) {
+            for (Map.Entry<AbstractInsnNode, AbstractInsnNode> e : merged.entrySet()) {
+                AbstractInsnNode node = e.getKey();
+                Insn insn = instructions.get(node);
+                AbstractInsnNode representative = findRepresentative(node);
+                ignored.add(node);
+                instructions.put(representative, instructions.get(representative).merge(insn));
+                e.setValue(representative);
+            }
+            for (Map.Entry<AbstractInsnNode, AbstractInsnNode> e : merged.entrySet()) {
+                instructions.put(e.getKey(), instructions.get(e.getValue()));
+            }
+            for (Map.Entry<AbstractInsnNode, Replacements> e : replacements.entrySet()) {
+                instructions.put(e.getKey(), instructions.get(e.getKey()).replaceBranches(e.getValue(), instructions));
+            }
+
+            List<Insn> kept = new ArrayList<>();
+            for (Map.Entry<AbstractInsnNode, Insn> e : instructions.entrySet()) {
+                if (!ignored.contains(e.getKey())) kept.add(e.getValue());
+            }
+            if (kept.isEmpty()) {
+                return null;
+            }
+            int[] lines = new int[kept.size()];
+            int[] branches = new int[kept.size()];
+            int[][][] branchProbes = new int[kept.size()][][];
+            for (int i = 0; i < kept.size(); i++) {
+                Insn insn = kept.get(i);
+                lines[i] = insn.line;
+                branches[i] = insn.branches;
+                List<int[]> bits = new ArrayList<>();
+                for (BitSet probes : insn.covering) {
+                    if (probes != null && !probes.isEmpty()) bits.add(probes.stream().toArray());
+                }
+                branchProbes[i] = bits.toArray(new int[0][]);
+            }
+            return new MethodModel(name, desc, signature, lines, branches, branchProbes);
+        }
+    }
+}
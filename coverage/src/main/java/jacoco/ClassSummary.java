@@ -0,0 +1,94 @@
+package jacoco;
+
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.IMethodCoverage;
+import model.UnitDictionary;
+
+import java.util.Arrays;
+
+/**
+ * Compact, immutable copy of the parts of an {@link IClassCoverage} the filter needs:
+ * per-line status, covered counters and the covered method units (as sorted ids of the
+ * target's {@link UnitDictionary}). Deltas between two
+ * summaries of the same class are plain array work.
+ */
+final class ClassSummary {
+
+    private static final byte[] NO_LINES = new byte[0];
+
+    final String name;          // internal name: pkg/Foo
+    final int firstLine;        // -1 if the class has no debug info
+    final byte[] lineStatus;    // ICounter status per line, index = line - firstLine
+    final int coveredLines;
+    final int coveredInstructions;
+    final int coveredBranches;
+    final int coveredMethods;
+    final int[] unitIds;        // pkg/Foo::bar|LINE, pkg/Foo::bar|BRANCH; sorted
+
+    private ClassSummary(String name, int firstLine, byte[] lineStatus,
+                         int coveredLines, int coveredInstructions, int coveredBranches, int coveredMethods,
+                         int[] unitIds) {
+        this.name = name;
+        this.firstLine = firstLine;
+        this.lineStatus = lineStatus;
+        this.coveredLines = coveredLines;
+        this.coveredInstructions = coveredInstructions;
+        this.coveredBranches = coveredBranches;
+        this.coveredMethods = coveredMethods;
+        this.unitIds = unitIds;
+    }
+
+    static ClassSummary of(IClassCoverage cc, UnitDictionary dictionary) {
+        int first = cc.getFirstLine();
+        int last = cc.getLastLine();
+        byte[] status = NO_LINES;
+        if (first != -1 && last != -1) {
+            status = new byte[last - first + 1];
+            for (int line = first; line <= last; line++) {
+                status[line - first] = (byte) cc.getLine(line).getStatus();
+            }
+        }
+
+        int[] units = new int[2 * cc.getMethods().size()];
+        int n = 0;
+        for (IMethodCoverage mc : cc.getMethods()) {
+            if (mc.getLineCounter().getCoveredCount() > 0) {
+                units[n++] = dictionary.intern(cc.getName() + "::" + mc.getName() + "|LINE");
+            }
+            if (mc.getBranchCounter().getCoveredCount() > 0) {
+                units[n++] = dictionary.intern(cc.getName() + "::" + mc.getName() + "|BRANCH");
+            }
+        }
+        units = Arrays.copyOf(units, n);
+        Arrays.sort(units);
+
+        return new ClassSummary(
+                cc.getName(),
+                status.length == 0 ? -1 : first,
+                status,
+                cc.getLineCounter().getCoveredCount(),
+                cc.getInstructionCounter().getCoveredCount(),
+                cc.getBranchCounter().getCoveredCount(),
+                cc.getMethodCounter().getCoveredCount(),
+                units
+        );
+    }
+
+    boolean coversUnit(int unitId) {
+        return Arrays.binarySearch(unitIds, unitId) >= 0;
+    }
+
+    String fqcn() {
+        return name.replace('/', '.');
+    }
+
+    int lastLine() {
+        return firstLine == -1 ? -1 : firstLine + lineStatus.length - 1;
+    }
+
+    int lineStatus(int line) {
+        int i = line - firstLine;
+        return (firstLine == -1 || i < 0 || i >= lineStatus.length) ? ICounter.EMPTY : lineStatus[i];
+    }
+}
@@ -1,11 +1,18 @@
 package jacoco;
 
 import model.CoverageSet;
+import model.UnitDictionary;
 import org.jacoco.core.analysis.*;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.tools.ExecFileLoader;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 /**
@@ -13,12 +20,22 @@ import java.util.*;
  *   pkg/Foo::bar|LINE
  *   pkg/Foo::bar|BRANCH
  */
-public final class CoverageAnalyzer {
+public final class CoverageAnalyzer implements AutoCloseable {
 
     private final File classesDir;
+    private final AnalysisScope scope;
+    // All CoverageSets produced by this analyzer share it, so they combine as bit sets.
+    private final UnitDictionary units = new UnitDictionary();
+    private volatile ProbeIndex index;
 
+    /** classesDir: a class directory, or a (fat) jar that is read without extracting it. */
     public CoverageAnalyzer(File classesDir) {
+        this(classesDir, AnalysisScope.all());
+    }
+
+    public CoverageAnalyzer(File classesDir, AnalysisScope scope) {
         this.classesDir = Objects.requireNonNull(classesDir, "classesDir");
+        this.scope = Objects.requireNonNull(scope, "scope");
     }
 
     public static final class AnalysisResult {
@@ -170,6 +187,219 @@ public final class CoverageAnalyzer {
         return cand.getCoveredCount() - b;
     }
 
+    public ExecutionDataStore loadExec(File execFile) throws IOException {
+        Objects.requireNonNull(execFile, "execFile");
+        ExecFileLoader loader = new ExecFileLoader();
+        loader.load(execFile);
+        return loader.getExecutionDataStore();
+    }
+
+    /** Loads an exec file once into an immutable snapshot, e.g. the baseline shared by all candidates. */
+    public ProbeSnapshot loadSnapshot(File execFile) throws IOException {
+        return ProbeSnapshot.of(loadExec(execFile));
+    }
+
+    /**
+     * base OR candidate as a scratch store, without touching base. Classes the candidate
+     * does not change share base's ExecutionData and probe arrays, so the result must not be
+     * written to: no put(), subtract() or reset(), and no writes to its probe arrays. Only
+     * analysis inside this package reads it.
+     */
+    ExecutionDataStore merge(ProbeSnapshot base, ExecutionDataStore candidate) {
+        Objects.requireNonNull(base, "base");
+        Objects.requireNonNull(candidate, "candidate");
+        Map<Long, ExecutionData> changed = new HashMap<>();
+        for (ExecutionData cand : candidate.getContents()) {
+            boolean[] probes = orIfChanged(base.probes(cand.getId()), cand.getProbes(), cand.getName());
+            if (probes != null) {
+                changed.put(cand.getId(), new ExecutionData(cand.getId(), cand.getName(), probes));
+            }
+        }
+        return base.shallowStore(changed);
+    }
+
+    /** Full analysis of base OR candidate, without any file I/O for the base. */
+    public AnalysisResult analyzeMerged(ProbeSnapshot base, ExecutionDataStore candidate) throws IOException {
+        return analyzeStore(merge(base, candidate));
+    }
+
+    public AnalysisResult analyzeSnapshot(ProbeSnapshot snapshot) throws IOException {
+        return analyzeStore(snapshot.shallowStore(Collections.emptyMap()));
+    }
+
+    /**
+     * Coverage that candidate adds on top of baseline, i.e. (baseline OR candidate) vs. baseline.
+     *
+     * Only classes whose probes change when the candidate is merged in can differ, so
+     * everything is computed from {@link ProbeIndex} summaries of those classes; the
+     * result matches testDeltaTotals / newlyCoveredLines / CoverageSet.subtract over a
+     * full analysis of the merged data.
+     */
+    public CoverageDelta delta(ExecutionDataStore baseline,
+                               ExecutionDataStore candidate,
+                               String testSelector) throws IOException {
+        return delta(ProbeSnapshot.of(Objects.requireNonNull(baseline, "baseline")), candidate, testSelector);
+    }
+
+    /** As {@link #delta(ExecutionDataStore, ExecutionDataStore, String)}, against a shared baseline snapshot. */
+    public CoverageDelta delta(ProbeSnapshot baseline,
+                               ExecutionDataStore candidate,
+                               String testSelector) throws IOException {
+        return delta(baseline, candidate, testSelector, true);
+    }
+
+    /** Counter totals of {@link #delta} only; skips the unit and line work. */
+    public TestDelta testDelta(ProbeSnapshot baseline,
+                               ExecutionDataStore candidate,
+                               String testSelector) throws IOException {
+        return delta(baseline, candidate, testSelector, false).getTestDelta();
+    }
+
+    /** Probe accumulator over the analyzed classes, starting from the given probes. */
+    public ProbeAccumulator newAccumulator(ProbeSnapshot initial) throws IOException {
+        return new ProbeAccumulator(index(), scope, Objects.requireNonNull(initial, "initial"));
+    }
+
+    /**
+     * Greedy maximum-coverage pick among the candidates (selector -> probes, in candidate
+     * order) on top of the baseline, see {@link LazyGreedySelector}.
+     */
+    public GreedySelection selectGreedy(ProbeSnapshot baseline,
+                                        Map<String, ExecutionDataStore> candidates,
+                                        GreedySelection.Metric metric) throws IOException {
+        Objects.requireNonNull(baseline, "baseline");
+        Objects.requireNonNull(candidates, "candidates");
+        return new LazyGreedySelector(index(), scope, Objects.requireNonNull(metric, "metric"))
+                .select(baseline, candidates);
+    }
+
+    private CoverageDelta delta(ProbeSnapshot baseline,
+                                ExecutionDataStore candidate,
+                                String testSelector,
+                                boolean full) throws IOException {
+        Objects.requireNonNull(baseline, "baseline");
+        Objects.requireNonNull(candidate, "candidate");
+        ProbeIndex idx = index();
+
+        BitSet addedUnits = new BitSet();
+        List<ClassDelta> classDeltas = new ArrayList<>();
+        Map<String, LineDelta> lineDeltas = new TreeMap<>();
+        int lines = 0, methods = 0, branches = 0, instr = 0;
+
+        for (ExecutionData cand : candidate.getContents()) {
+            long id = cand.getId();
+            if (!idx.contains(id) || !scope.accepts(cand.getName())) continue;
+
+            boolean[] baseProbes = baseline.probes(id);
+            boolean[] merged = orIfChanged(baseProbes, cand.getProbes(), cand.getName());
+            if (merged == null) continue;
+
+            ClassSummary b = idx.summary(id, baseProbes);
+            ClassSummary m = idx.summary(id, merged);
+            if (b == null || m == null) continue;
+
+            int addedLines = m.coveredLines - b.coveredLines;
+            int addedInstr = m.coveredInstructions - b.coveredInstructions;
+            int addedBranches = m.coveredBranches - b.coveredBranches;
+            int addedMethods = m.coveredMethods - b.coveredMethods;
+            if (addedLines != 0 || addedInstr != 0 || addedBranches != 0 || addedMethods != 0) {
+                classDeltas.add(new ClassDelta(m.fqcn(), addedLines, addedInstr, addedBranches, addedMethods));
+            }
+            lines += addedLines;
+            methods += addedMethods;
+            branches += addedBranches;
+            instr += addedInstr;
+            if (!full) continue;
+
+            for (int u : m.unitIds) {
+                if (!b.coversUnit(u)) addedUnits.set(u);
+            }
+
+            if (m.firstLine != -1) {
+                LineDelta delta = new LineDelta();
+                for (int line = m.firstLine; line <= m.lastLine(); line++) {
+                    int candStatus = m.lineStatus(line);
+                    int baseStatus = b.lineStatus(line);
+                    if (isCovered(candStatus) && !isCovered(baseStatus)) {
+                        delta.newlyCovered.add(line);
+                    }
+                    if (baseStatus == ICounter.PARTLY_COVERED && candStatus == ICounter.FULLY_COVERED) {
+                        delta.upgradedToFull.add(line);
+                    }
+                }
+                if (!delta.isEmpty()) {
+                    lineDeltas.put(m.fqcn(), delta);
+                }
+            }
+        }
+
+        classDeltas.sort(Comparator.comparingInt(ClassDelta::getAddedLines).reversed());
+        return new CoverageDelta(
+                CoverageSet.of(units, addedUnits),
+                new TestDelta(testSelector, lines, methods, branches, instr),
+                classDeltas,
+                lineDeltas
+        );
+    }
+
+    /** base OR cand, or null if cand hits no probe that base does not already hit. */
+    private static boolean[] orIfChanged(boolean[] base, boolean[] cand, String className) {
+        if (base != null && base.length != cand.length) {
+            throw new IllegalStateException("Incompatible execution data for class " + className);
+        }
+        boolean[] merged = null;
+        for (int p = 0; p < cand.length; p++) {
+            if (cand[p] && (base == null || !base[p])) {
+                if (merged == null) {
+                    merged = base == null ? new boolean[cand.length] : base.clone();
+                }
+                merged[p] = true;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * The classes of store that analysis sees (in the probe index and the scope); probes of
+     * other classes (test framework, libraries) change no result of this analyzer.
+     */
+    public ExecutionDataStore analyzedOnly(ExecutionDataStore store) throws IOException {
+        ProbeIndex idx = index();
+        ExecutionDataStore analyzed = new ExecutionDataStore();
+        for (ExecutionData d : store.getContents()) {
+            if (idx.contains(d.getId()) && scope.accepts(d.getName())) {
+                analyzed.put(d);
+            }
+        }
+        return analyzed;
+    }
+
+    /** Internal names (pkg/Foo) of the classes analysis sees. */
+    public Set<String> analyzedClassNames() throws IOException {
+        ProbeIndex idx = index();
+        Set<String> names = new HashSet<>();
+        for (long id : idx.classIds()) {
+            String name = idx.className(id);
+            if (name != null && scope.accepts(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private ProbeIndex index() throws IOException {
+        ProbeIndex idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                if (index == null) {
+                    index = ProbeIndex.build(classesDir, units);
+                }
+                idx = index;
+            }
+        }
+        return idx;
+    }
+
     public AnalysisResult analyzeExec(File execFile) throws IOException {
         Objects.requireNonNull(execFile, "execFile");
         ExecFileLoader loader = new ExecFileLoader();
@@ -190,13 +420,97 @@ public final class CoverageAnalyzer {
         return analyzeFromLoader(loader);
     }
 
+    /**
+     * Reads an exec file written by {@link SessionDumper} into one probe store per test id
+     * (fqcn#method). Class-level sessions (fqcn) hold probes hit outside any test and are
+     * merged into every test of that class. Tests keep the order of their first session.
+     *
+     * A static initializer runs once per JVM, inside whichever session touched its class
+     * first; its probes (and those of the methods of its class it calls) are given to every
+     * test that hits the class, as a per-method fork would record them. Other classes
+     * initialized only as a side effect of that initializer are not propagated.
+     */
+    public Map<String, ExecutionDataStore> readTestSessions(File execFile) throws IOException {
+        Objects.requireNonNull(execFile, "execFile");
+
+        Map<String, ExecutionDataStore> sessions = new LinkedHashMap<>();
+        ExecutionDataStore[] current = { new ExecutionDataStore() };
+        try (InputStream in = new BufferedInputStream(new FileInputStream(execFile))) {
+            ExecutionDataReader reader = new ExecutionDataReader(in);
+            reader.setSessionInfoVisitor(info ->
+                    current[0] = sessions.computeIfAbsent(info.getId(), id -> new ExecutionDataStore()));
+            reader.setExecutionDataVisitor(data -> current[0].put(copyOf(data)));
+            reader.read();
+        }
+
+        Map<String, ExecutionDataStore> perTest = new LinkedHashMap<>();
+        for (Map.Entry<String, ExecutionDataStore> e : sessions.entrySet()) {
+            int hash = e.getKey().lastIndexOf('#');
+            if (hash < 0) continue;
+            ExecutionDataStore store = new ExecutionDataStore();
+            mergeInto(store, e.getValue());
+            ExecutionDataStore classLevel = sessions.get(e.getKey().substring(0, hash));
+            if (classLevel != null) {
+                mergeInto(store, classLevel);
+            }
+            perTest.put(e.getKey(), store);
+        }
+
+        Map<Long, boolean[]> staticInits = staticInitHits(sessions.values());
+        for (ExecutionDataStore store : perTest.values()) {
+            for (ExecutionData data : new ArrayList<>(store.getContents())) {
+                boolean[] init = staticInits.get(data.getId());
+                if (init != null && data.hasHits()) {
+                    store.put(new ExecutionData(data.getId(), data.getName(), init.clone()));
+                }
+            }
+        }
+        return perTest;
+    }
+
+    /** Per class id, the probes its static initializer hit, in whichever session it ran. */
+    private Map<Long, boolean[]> staticInitHits(Collection<ExecutionDataStore> sessions) throws IOException {
+        ProbeIndex idx = index();
+        Map<Long, boolean[]> hits = new HashMap<>();
+        for (ExecutionDataStore session : sessions) {
+            for (ExecutionData data : session.getContents()) {
+                boolean[] init = idx.staticInitHits(data.getId(), data.getProbes());
+                if (init == null) continue;
+                boolean[] acc = hits.computeIfAbsent(data.getId(), k -> new boolean[init.length]);
+                for (int p = 0; p < init.length && p < acc.length; p++) {
+                    acc[p] |= init[p];
+                }
+            }
+        }
+        return hits;
+    }
+
+    private static void mergeInto(ExecutionDataStore target, ExecutionDataStore source) {
+        // put() keeps the instance it is given and merges later puts into it, so always copy.
+        for (ExecutionData data : source.getContents()) {
+            target.put(copyOf(data));
+        }
+    }
+
+    private static ExecutionData copyOf(ExecutionData data) {
+        return new ExecutionData(data.getId(), data.getName(), data.getProbes().clone());
+    }
+
     private AnalysisResult analyzeFromLoader(ExecFileLoader loader) throws IOException {
+        return analyzeStore(loader.getExecutionDataStore());
+    }
+
+    private AnalysisResult analyzeStore(ExecutionDataStore store) throws IOException {
         CoverageBuilder builder = new CoverageBuilder();
-        Analyzer analyzer = new Analyzer(loader.getExecutionDataStore(), builder);
-        analyzer.analyzeAll(classesDir);
+        Analyzer analyzer = new Analyzer(store, builder);
+        if (scope.isAll() && classesDir.isDirectory()) {
+            analyzer.analyzeAll(classesDir);
+        } else {
+            analyzeScoped(analyzer, store);
+        }
 
         Map<String, IClassCoverage> out = new HashMap<>();
-        Set<String> units = new HashSet<>();
+        BitSet covered = new BitSet();
         for (IClassCoverage cc : builder.getClasses()) {
             out.put(cc.getName().replace('/', '.'), cc);
 
@@ -205,17 +519,47 @@ public final class CoverageAnalyzer {
                 String methodName = mc.getName();
 
                 if (mc.getLineCounter().getCoveredCount() > 0) {
-                    units.add(className + "::" + methodName + "|LINE");
+                    covered.set(units.intern(className + "::" + methodName + "|LINE"));
                 }
                 if (mc.getBranchCounter().getCoveredCount() > 0) {
-                    units.add(className + "::" + methodName + "|BRANCH");
+                    covered.set(units.intern(className + "::" + methodName + "|BRANCH"));
                 }
             }
         }
-        return new AnalysisResult(out, new CoverageSet(units));
+        return new AnalysisResult(out, CoverageSet.of(units, covered));
+    }
+
+    /**
+     * Analyzes the indexed classes the scope accepts, without walking classesDir again;
+     * also the path for jars, whose classes are read in place.
+     */
+    private void analyzeScoped(Analyzer analyzer, ExecutionDataStore store) throws IOException {
+        ProbeIndex idx = index();
+        Collection<Long> ids;
+        if (scope.execOnly()) {
+            ids = new ArrayList<>();
+            for (ExecutionData data : store.getContents()) {
+                ids.add(data.getId());
+            }
+        } else {
+            ids = idx.classIds();
+        }
+        for (long id : ids) {
+            String name = idx.className(id);
+            if (name == null || !scope.accepts(name)) continue;
+            analyzer.analyzeClass(idx.classBytes(id), idx.location(id));
+        }
     }
 
     public CoverageSet analyze(File execFile) throws IOException {
         return analyzeExec(execFile).getCoverageSet();
     }
+
+    @Override
+    public void close() throws IOException {
+        ProbeIndex idx = index;
+        if (idx != null) {
+            idx.close();
+        }
+    }
 }
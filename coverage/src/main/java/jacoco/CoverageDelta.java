@@ -0,0 +1,34 @@
+package jacoco;
+
+import model.CoverageSet;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coverage a candidate adds on top of a baseline, computed by
+ * {@link CoverageAnalyzer#delta} from index summaries of the changed classes only.
+ */
+public final class CoverageDelta {
+    private final CoverageSet addedUnits;
+    private final TestDelta testDelta;
+    private final List<ClassDelta> classDeltas;
+    private final Map<String, CoverageAnalyzer.LineDelta> lineDeltas;
+
+    CoverageDelta(CoverageSet addedUnits,
+                  TestDelta testDelta,
+                  List<ClassDelta> classDeltas,
+                  Map<String, CoverageAnalyzer.LineDelta> lineDeltas) {
+        this.addedUnits = addedUnits;
+        this.testDelta = testDelta;
+        this.classDeltas = classDeltas;
+        this.lineDeltas = lineDeltas;
+    }
+
+    /** Units covered with the candidate but not by the baseline alone. */
+    public CoverageSet getAddedUnits() { return addedUnits; }
+    public TestDelta getTestDelta() { return testDelta; }
+    public List<ClassDelta> getClassDeltas() { return classDeltas; }
+    /** Newly covered / upgraded lines per class (fqcn), sorted by class name. */
+    public Map<String, CoverageAnalyzer.LineDelta> getLineDeltas() { return lineDeltas; }
+}
@@ -0,0 +1,57 @@
+package jacoco;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Result of {@link CoverageAnalyzer#selectGreedy}: the picked tests in pick order with their
+ * marginal gains (the gain curve), each gain relative to the baseline plus the earlier picks.
+ */
+public final class GreedySelection {
+
+    public enum Metric {
+        LINES, BRANCHES, INSTRUCTIONS;
+
+        /** lines | branches | instructions, case-insensitive. */
+        public static Metric parse(String s) {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public static final class Step {
+        private final String testSelector;
+        private final int gain;
+        private final long total;
+
+        Step(String testSelector, int gain, long total) {
+            this.testSelector = testSelector;
+            this.gain = gain;
+            this.total = total;
+        }
+
+        public String getTestSelector() { return testSelector; }
+        /** Counters of the metric this test covers beyond the baseline and the earlier picks. */
+        public int getGain() { return gain; }
+        /** Sum of the gains up to and including this pick. */
+        public long getTotal() { return total; }
+    }
+
+    private final Metric metric;
+    private final List<Step> steps;
+    private final int evaluations;
+
+    GreedySelection(Metric metric, List<Step> steps, int evaluations) {
+        this.metric = metric;
+        this.steps = List.copyOf(steps);
+        this.evaluations = evaluations;
+    }
+
+    public Metric getMetric() { return metric; }
+    public List<Step> getSteps() { return steps; }
+    /** Marginal gains computed, first round included. */
+    public int getEvaluations() { return evaluations; }
+
+    public List<String> getSelectors() {
+        return steps.stream().map(Step::getTestSelector).toList();
+    }
+}
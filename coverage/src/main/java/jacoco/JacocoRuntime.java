@@ -0,0 +1,90 @@
+package jacoco;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Access to the JaCoCo agent running inside the current (forked) JVM.
+ *
+ * The agent jar is not a compile-time dependency of this tool: it is only on the
+ * class path of test JVMs started with -javaagent (or with offline-instrumented SUT
+ * classes, see {@link OfflineInstrumenter}), so org.jacoco.agent.rt.RT is resolved
+ * reflectively.
+ */
+public final class JacocoRuntime {
+
+    private static final String RT_CLASS = "org.jacoco.agent.rt.RT";
+
+    private final Object agent;
+    private final Method reset;
+    private final Method getExecutionData;
+    private final Method setSessionId;
+
+    private JacocoRuntime(Object agent) throws ReflectiveOperationException {
+        this.agent = agent;
+        Class<?> api = Class.forName("org.jacoco.agent.rt.IAgent", false, agent.getClass().getClassLoader());
+        this.reset = api.getMethod("reset");
+        this.getExecutionData = api.getMethod("getExecutionData", boolean.class);
+        this.setSessionId = api.getMethod("setSessionId", String.class);
+    }
+
+    /**
+     * @throws IllegalStateException if no JaCoCo agent is active in this JVM
+     */
+    public static JacocoRuntime get() {
+        try {
+            ClassLoader loader = ClassLoader.getSystemClassLoader();
+            Class<?> rt = Class.forName(RT_CLASS, true, loader);
+            Object agent;
+            try {
+                agent = rt.getMethod("getAgent").invoke(null);
+            } catch (InvocationTargetException notStarted) {
+                startOffline(loader);
+                agent = rt.getMethod("getAgent").invoke(null);
+            }
+            return new JacocoRuntime(agent);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("JaCoCo agent runtime not on class path (" + RT_CLASS + ")", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("JaCoCo agent not started", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Incompatible JaCoCo agent runtime", e);
+        }
+    }
+
+    /**
+     * Offline mode starts the runtime lazily, when the first instrumented class asks for its
+     * probes (Offline.getRuntimeData); start it the same way without registering a class.
+     */
+    private static void startOffline(ClassLoader loader) throws ReflectiveOperationException {
+        Class<?> offline = Class.forName(org.jacoco.core.JaCoCo.RUNTIMEPACKAGE + ".Offline", true, loader);
+        Method start = offline.getDeclaredMethod("getRuntimeData");
+        start.setAccessible(true);
+        start.invoke(null);
+    }
+
+    /** Clears all probes collected so far. */
+    public void reset() {
+        invoke(reset);
+    }
+
+    /** Returns the current execution data in exec file format, optionally resetting the probes. */
+    public byte[] getExecutionData(boolean reset) {
+        return (byte[]) invoke(getExecutionData, reset);
+    }
+
+    /** Sets the id of the session written with the next getExecutionData call. */
+    public void setSessionId(String id) {
+        invoke(setSessionId, id);
+    }
+
+    private Object invoke(Method m, Object... args) {
+        try {
+            return m.invoke(agent, args);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("JaCoCo agent call failed: " + m.getName(), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("JaCoCo agent call not accessible: " + m.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package jacoco;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Greedy maximum-coverage selection over per-test probe data: repeatedly picks the test that
+ * adds the most covered lines (branches, instructions) on top of the baseline and the tests
+ * picked so far, until no test adds anything. Created by {@link CoverageAnalyzer#selectGreedy}.
+ *
+ * Every counter is covered iff one of a fixed set of probes was hit (see
+ * {@link ProbeAccumulator}), so coverage is a union over tests and a test's marginal gain
+ * only shrinks as others are picked. Gains are therefore evaluated lazily (CELF): a test is
+ * re-evaluated only when its last, possibly stale, gain is the best in the queue, and picked
+ * when that gain is current. Most tests are evaluated once. A gain is the difference of two
+ * counts per class the test changes, read off the class's probe model in the
+ * {@link ProbeIndex}; no class is re-analyzed.
+ *
+ * Ties go to the earlier test, so the result equals plain greedy in candidate order.
+ */
+final class LazyGreedySelector {
+
+    private final ProbeIndex index;
+    private final AnalysisScope scope;
+    private final GreedySelection.Metric metric;
+    // Baseline plus the picked tests; arrays are copied before the first change.
+    private final Map<Long, boolean[]> accumulated = new HashMap<>();
+    private final Map<Long, String> names = new HashMap<>();
+
+    LazyGreedySelector(ProbeIndex index, AnalysisScope scope, GreedySelection.Metric metric) {
+        this.index = index;
+        this.scope = scope;
+        this.metric = metric;
+    }
+
+    private static final class Candidate {
+        final int order;
+        final String selector;
+        final List<ExecutionData> classes;
+        int gain;
+        int round;   // number of picks when gain was computed
+
+        Candidate(int order, String selector, List<ExecutionData> classes) {
+            this.order = order;
+            this.selector = selector;
+            this.classes = classes;
+        }
+    }
+
+    GreedySelection select(ProbeSnapshot baseline, Map<String, ExecutionDataStore> candidates) throws IOException {
+        for (ExecutionData d : baseline.shallowStore(Map.of()).getContents()) {
+            if (tracked(d)) {
+                accumulated.put(d.getId(), d.getProbes());
+                names.put(d.getId(), d.getName());
+            }
+        }
+
+        PriorityQueue<Candidate> queue = new PriorityQueue<>((a, b) ->
+                a.gain != b.gain ? Integer.compare(b.gain, a.gain) : Integer.compare(a.order, b.order));
+        int order = 0;
+        for (Map.Entry<String, ExecutionDataStore> e : candidates.entrySet()) {
+            List<ExecutionData> classes = new ArrayList<>();
+            for (ExecutionData d : e.getValue().getContents()) {
+                if (tracked(d)) classes.add(d);
+            }
+            Candidate c = new Candidate(order++, e.getKey(), classes);
+            c.gain = gain(c);
+            if (c.gain > 0) queue.add(c);
+        }
+
+        List<GreedySelection.Step> steps = new ArrayList<>();
+        int evaluations = candidates.size();
+        long total = 0;
+        while (!queue.isEmpty()) {
+            Candidate top = queue.poll();
+            if (top.round != steps.size()) {
+                top.gain = gain(top);
+                top.round = steps.size();
+                evaluations++;
+                if (top.gain > 0) queue.add(top);
+                continue;
+            }
+            pick(top);
+            total += top.gain;
+            steps.add(new GreedySelection.Step(top.selector, top.gain, total));
+        }
+        return new GreedySelection(metric, steps, evaluations);
+    }
+
+    private boolean tracked(ExecutionData d) {
+        return index.contains(d.getId()) && scope.accepts(d.getName());
+    }
+
+    private int gain(Candidate c) throws IOException {
+        int gain = 0;
+        for (ExecutionData d : c.classes) {
+            boolean[] acc = accumulated.get(d.getId());
+            boolean[] merged = or(acc, d.getProbes(), d.getName());
+            if (merged == null) continue;
+            gain += index.covered(d.getId(), metric, merged) - index.covered(d.getId(), metric, acc);
+        }
+        return gain;
+    }
+
+    private void pick(Candidate c) {
+        for (ExecutionData d : c.classes) {
+            boolean[] merged = or(accumulated.get(d.getId()), d.getProbes(), d.getName());
+            if (merged != null) {
+                accumulated.put(d.getId(), merged);
+            }
+        }
+    }
+
+    /** acc OR hit as a new array, or null if hit adds no probe. */
+    private static boolean[] or(boolean[] acc, boolean[] hit, String className) {
+        if (acc != null && acc.length != hit.length) {
+            throw new IllegalStateException("Incompatible execution data for class " + className);
+        }
+        boolean[] merged = null;
+        for (int p = 0; p < hit.length; p++) {
+            if (hit[p] && (acc == null || !acc[p])) {
+                if (merged == null) {
+                    merged = acc == null ? new boolean[hit.length] : acc.clone();
+                }
+                merged[p] = true;
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,118 @@
+package jacoco;
+
+import io.ContentCache;
+import org.jacoco.core.JaCoCo;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.OfflineInstrumentationAccessGenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+/**
+ * Pre-instruments the SUT classes once with JaCoCo's offline {@link Instrumenter}, into a
+ * content-addressed copy under {@link ContentCache#root()}. Test JVMs then load the
+ * instrumented classes with the agent jar on the plain class path (no -javaagent), so no
+ * class is instrumented at load time.
+ *
+ * Offline instrumentation keeps the class ids of the original bytes, so exec files stay
+ * compatible with {@link CoverageAnalyzer}. Only classes under the SUT path are recorded.
+ */
+public final class OfflineInstrumenter {
+
+    private OfflineInstrumenter() {
+    }
+
+    /**
+     * Instrumented copy (directory or jar, like the input) of sutClasses, built on first use.
+     * Returns null if the agent jar does not contain the runtime this JaCoCo version
+     * instruments for (a different agent version), in which case callers fall back to
+     * -javaagent.
+     */
+    public static File instrumentedCopy(File sutClasses, File agentJar) throws IOException {
+        if (!hasMatchingRuntime(agentJar)) {
+            System.out.println("[OfflineInstrumenter] " + agentJar.getName() + " does not contain runtime "
+                    + JaCoCo.RUNTIMEPACKAGE + " (JaCoCo " + JaCoCo.VERSION + "); using -javaagent");
+            return null;
+        }
+
+        String key = ContentCache.sha256(sutClasses, JaCoCo.VERSION, JaCoCo.RUNTIMEPACKAGE);
+        boolean jar = sutClasses.isFile();
+        File target = new File(ContentCache.root(), "offline-" + key + (jar ? ".jar" : ""));
+        if (target.exists()) {
+            System.out.println("[OfflineInstrumenter] reusing " + target.getPath());
+            return target;
+        }
+
+        File root = ContentCache.root();
+        Files.createDirectories(root.toPath());
+        Instrumenter instrumenter = new Instrumenter(new OfflineInstrumentationAccessGenerator());
+        long start = System.nanoTime();
+        Path tmp;
+        int classes;
+        if (jar) {
+            tmp = Files.createTempFile(root.toPath(), target.getName(), ".tmp");
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(sutClasses.toPath()));
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                classes = instrumenter.instrumentAll(in, out, sutClasses.getPath());
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+        } else {
+            tmp = Files.createTempDirectory(root.toPath(), target.getName() + ".tmp");
+            try {
+                classes = instrumentDir(instrumenter, sutClasses.toPath(), tmp);
+            } catch (IOException | RuntimeException e) {
+                ContentCache.deleteRecursively(tmp);
+                throw e;
+            }
+        }
+        ContentCache.publish(tmp, target.toPath());
+        System.out.println("[OfflineInstrumenter] instrumented " + classes + " classes of " + sutClasses.getPath()
+                + " in " + (System.nanoTime() - start) / 1_000_000 + " ms -> " + target.getPath());
+        return target;
+    }
+
+    private static int instrumentDir(Instrumenter instrumenter, Path src, Path dst) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(src)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        int classes = 0;
+        for (Path p : files) {
+            Path out = dst.resolve(src.relativize(p).toString());
+            Files.createDirectories(out.getParent());
+            if (p.toString().endsWith(".class")) {
+                byte[] original = Files.readAllBytes(p);
+                byte[] instrumented;
+                try {
+                    instrumented = instrumenter.instrument(original, p.toString());
+                    classes++;
+                } catch (IOException e) {
+                    // e.g. already instrumented or unsupported class version: keep it uninstrumented.
+                    System.out.println("[OfflineInstrumenter] WARN: " + e.getMessage());
+                    instrumented = original;
+                }
+                Files.write(out, instrumented);
+            } else {
+                Files.copy(p, out);
+            }
+        }
+        return classes;
+    }
+
+    private static boolean hasMatchingRuntime(File agentJar) throws IOException {
+        try (ZipFile zip = new ZipFile(agentJar)) {
+            return zip.getEntry(JaCoCo.RUNTIMEPACKAGE.replace('.', '/') + "/Offline.class") != null;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package jacoco;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running OR of the probes of the baseline and every kept candidate, restricted to the
+ * analyzed classes. Created by {@link CoverageAnalyzer#newAccumulator}.
+ *
+ * Every coverage unit (and every line/branch/instruction counter) is covered iff at least
+ * one of a fixed set of probes was hit, so a candidate whose probes are all already hit
+ * here cannot cover any unit the accumulated runs do not, and can be dropped without
+ * analysis.
+ */
+public final class ProbeAccumulator {
+
+    private final ProbeIndex index;
+    private final AnalysisScope scope;
+    private final Map<Long, boolean[]> probes = new HashMap<>();
+
+    ProbeAccumulator(ProbeIndex index, AnalysisScope scope, ProbeSnapshot initial) {
+        this.index = index;
+        this.scope = scope;
+        add(initial.shallowStore(Collections.emptyMap()));
+    }
+
+    /** True if the candidate hits at least one analyzed probe not hit so far; copies nothing. */
+    public boolean hitsNewProbes(ExecutionDataStore candidate) {
+        for (ExecutionData cand : candidate.getContents()) {
+            if (!tracked(cand)) continue;
+            boolean[] acc = probes.get(cand.getId());
+            boolean[] hit = cand.getProbes();
+            if (acc != null && acc.length != hit.length) {
+                throw new IllegalStateException("Incompatible execution data for class " + cand.getName());
+            }
+            for (int p = 0; p < hit.length; p++) {
+                if (hit[p] && (acc == null || !acc[p])) return true;
+            }
+        }
+        return false;
+    }
+
+    /** ORs the candidate's analyzed probes into the accumulator. */
+    public void add(ExecutionDataStore candidate) {
+        for (ExecutionData cand : candidate.getContents()) {
+            if (!tracked(cand)) continue;
+            boolean[] hit = cand.getProbes();
+            boolean[] acc = probes.computeIfAbsent(cand.getId(), id -> new boolean[hit.length]);
+            if (acc.length != hit.length) {
+                throw new IllegalStateException("Incompatible execution data for class " + cand.getName());
+            }
+            for (int p = 0; p < hit.length; p++) {
+                acc[p] |= hit[p];
+            }
+        }
+    }
+
+    private boolean tracked(ExecutionData data) {
+        return index.contains(data.getId()) && scope.accepts(data.getName());
+    }
+}
@@ -0,0 +1,345 @@
+package jacoco;
+
+import org.jacoco.core.internal.data.CRC64;
+import org.objectweb.asm.ClassReader;
+import io.ContentCache;
+import model.UnitDictionary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Per-target index of the analyzed classes, built once: JaCoCo class id -> internal class
+ * name and location (a class file, or an entry of a jar that is read in place).
+ *
+ * For jars the id/name/entry table is also cached on disk under {@link ContentCache#root()},
+ * keyed by the SHA-256 of the jar, so later runs over the same jar neither extract nor
+ * re-hash its classes. Jars nested in the jar (e.g. BOOT-INF/lib/*.jar) are indexed too, as
+ * analyzing the extracted jar would; their entries are located as outer!/inner.class and
+ * read through the outer jar.
+ *
+ * Each class is parsed once, the first time a summary of it is asked for, into a
+ * {@link ClassProbeModel}; every later summary of that class, for any probe vector, is
+ * array work on the model. Models are keyed by class id (a hash of the class bytes), so
+ * one per class of the target is kept and a rebuilt class simply gets a new one.
+ */
+final class ProbeIndex implements Closeable {
+
+    private static final int CACHE_MAGIC = 0x43465849; // "CFXI"
+    private static final int CACHE_VERSION = 2;
+    private static final String NESTED = "!/";
+    private static final int NESTED_JARS_KEPT = 4;
+
+    private final Map<Long, String> locations;   // file path, or jar entry name
+    private final Map<Long, String> classNames;
+    private final ZipFile jar;                   // null for class directories
+    private final UnitDictionary dictionary;
+    private final Map<Long, Optional<ClassProbeModel>> models = new ConcurrentHashMap<>();
+    // Entries of the nested jars read last (path in the jar -> entry name -> bytes).
+    private final Map<String, Map<String, byte[]>> nestedJars =
+            new LinkedHashMap<>(8, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, byte[]>> eldest) {
+                    return size() > NESTED_JARS_KEPT;
+                }
+            };
+
+    private ProbeIndex(Map<Long, String> locations, Map<Long, String> classNames, ZipFile jar,
+                       UnitDictionary dictionary) {
+        this.locations = locations;
+        this.classNames = classNames;
+        this.jar = jar;
+        this.dictionary = dictionary;
+    }
+
+    /** Indexes a class directory, or a (fat) jar if classes is a file. */
+    static ProbeIndex build(File classes, UnitDictionary dictionary) throws IOException {
+        return classes.isFile() ? buildFromJar(classes, dictionary) : buildFromDir(classes, dictionary);
+    }
+
+    private static ProbeIndex buildFromDir(File classesDir, UnitDictionary dictionary) throws IOException {
+        Map<Long, String> locations = new LinkedHashMap<>();
+        Map<Long, String> classNames = new HashMap<>();
+        try (Stream<Path> files = Files.walk(classesDir.toPath())) {
+            for (Path p : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".class"))::iterator) {
+                if (!Files.isRegularFile(p)) continue;
+                index(Files.readAllBytes(p), p.toString(), locations, classNames);
+            }
+        }
+        System.out.println("[ProbeIndex] indexed " + locations.size() + " classes under " + classesDir.getPath());
+        return new ProbeIndex(locations, classNames, null, dictionary);
+    }
+
+    private static ProbeIndex buildFromJar(File jarFile, UnitDictionary dictionary) throws IOException {
+        Map<Long, String> locations = new LinkedHashMap<>();
+        Map<Long, String> classNames = new HashMap<>();
+        ZipFile jar = new ZipFile(jarFile);
+        try {
+            File cacheFile = new File(ContentCache.root(), "classes-" + ContentCache.sha256(jarFile) + ".idx");
+            if (readCache(cacheFile, locations, classNames)) {
+                System.out.println("[ProbeIndex] " + locations.size() + " classes of " + jarFile.getName()
+                        + " from cached index " + cacheFile.getPath());
+                return new ProbeIndex(locations, classNames, jar, dictionary);
+            }
+
+            int nested = 0;
+            Enumeration<? extends ZipEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || skipped(name)) continue;
+                if (name.endsWith(".jar")) {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        nested += indexNested(in, name + NESTED, locations, classNames);
+                    }
+                    continue;
+                }
+                if (!name.endsWith(".class")) continue;
+
+                byte[] bytes;
+                try (InputStream in = jar.getInputStream(entry)) {
+                    bytes = in.readAllBytes();
+                }
+                index(bytes, name, locations, classNames);
+            }
+            System.out.println("[ProbeIndex] indexed " + locations.size() + " classes in " + jarFile.getPath()
+                    + (nested > 0 ? " (" + nested + " nested jars)" : ""));
+            writeCache(cacheFile, locations, classNames);
+            return new ProbeIndex(locations, classNames, jar, dictionary);
+        } catch (IOException | RuntimeException e) {
+            jar.close();
+            throw e;
+        }
+    }
+
+    private static void index(byte[] bytes, String location, Map<Long, String> locations, Map<Long, String> classNames) {
+        long id = CRC64.classId(bytes);
+        if (locations.putIfAbsent(id, location) == null) {
+            classNames.put(id, new ClassReader(bytes).getClassName());
+        }
+    }
+
+    /** Indexes the classes of a nested jar and of the jars nested in it; returns the number of jars. */
+    private static int indexNested(InputStream jarBytes, String prefix,
+                                   Map<Long, String> locations, Map<Long, String> classNames) throws IOException {
+        int jars = 1;
+        ZipInputStream zip = new ZipInputStream(jarBytes);
+        for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+            String name = entry.getName();
+            if (entry.isDirectory() || skipped(name)) continue;
+            if (name.endsWith(".jar")) {
+                jars += indexNested(new ByteArrayInputStream(zip.readAllBytes()), prefix + name + NESTED,
+                        locations, classNames);
+            } else if (name.endsWith(".class")) {
+                index(zip.readAllBytes(), prefix + name, locations, classNames);
+            }
+        }
+        return jars;
+    }
+
+    /** Multi-release variants and IDE launcher resources would duplicate class names. */
+    private static boolean skipped(String entryName) {
+        return entryName.startsWith("META-INF/versions/")
+                || entryName.startsWith("META-INF/ide-deps/")
+                || entryName.endsWith(".class.ide-launcher-res");
+    }
+
+    boolean contains(long classId) {
+        return locations.containsKey(classId);
+    }
+
+    /** All indexed class ids, in class path walk order. */
+    Set<Long> classIds() {
+        return locations.keySet();
+    }
+
+    /** Internal name (pkg/Foo) of an indexed class, null if unknown. */
+    String className(long classId) {
+        return classNames.get(classId);
+    }
+
+    /** Where the class was found, for messages: a file path or jar!/entry. */
+    String location(long classId) {
+        String loc = locations.get(classId);
+        return jar == null || loc == null ? loc : jar.getName() + "!/" + loc;
+    }
+
+    byte[] classBytes(long classId) throws IOException {
+        String loc = locations.get(classId);
+        if (loc == null) {
+            throw new IllegalArgumentException("Class id not indexed: " + Long.toHexString(classId));
+        }
+        if (jar == null) {
+            return Files.readAllBytes(Path.of(loc));
+        }
+        int nested = loc.lastIndexOf(NESTED);
+        if (nested >= 0) {
+            byte[] bytes = nestedJar(loc.substring(0, nested)).get(loc.substring(nested + NESTED.length()));
+            if (bytes == null) {
+                throw new IOException("Entry vanished from " + jar.getName() + ": " + loc);
+            }
+            return bytes;
+        }
+        ZipEntry entry = jar.getEntry(loc);
+        if (entry == null) {
+            throw new IOException("Entry vanished from " + jar.getName() + ": " + loc);
+        }
+        try (InputStream in = jar.getInputStream(entry)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** The class and jar entries of a jar nested in the jar (path: a.jar, or a.jar!/b.jar). */
+    private Map<String, byte[]> nestedJar(String path) throws IOException {
+        synchronized (nestedJars) {
+            Map<String, byte[]> entries = nestedJars.get(path);
+            if (entries != null) {
+                return entries;
+            }
+        }
+        int outer = path.lastIndexOf(NESTED);
+        byte[] jarBytes;
+        if (outer < 0) {
+            ZipEntry entry = jar.getEntry(path);
+            if (entry == null) {
+                throw new IOException("Entry vanished from " + jar.getName() + ": " + path);
+            }
+            try (InputStream in = jar.getInputStream(entry)) {
+                jarBytes = in.readAllBytes();
+            }
+        } else {
+            jarBytes = nestedJar(path.substring(0, outer)).get(path.substring(outer + NESTED.length()));
+            if (jarBytes == null) {
+                throw new IOException("Entry vanished from " + jar.getName() + ": " + path);
+            }
+        }
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(jarBytes))) {
+            for (ZipEntry e; (e = zip.getNextEntry()) != null; ) {
+                if (!e.isDirectory() && (e.getName().endsWith(".class") || e.getName().endsWith(".jar"))) {
+                    entries.put(e.getName(), zip.readAllBytes());
+                }
+            }
+        }
+        synchronized (nestedJars) {
+            nestedJars.put(path, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Summary of the class with the given id when exactly the given probes were hit
+     * (null probes = class not executed). Returns null for classes outside the index.
+     */
+    ClassSummary summary(long classId, boolean[] probes) throws IOException {
+        ClassProbeModel model = model(classId);
+        return model == null ? null : model.summary(probes, dictionary);
+    }
+
+    /**
+     * Covered lines, branches or instructions of the class with the given id when exactly the
+     * given probes were hit; 0 for classes outside the index.
+     */
+    int covered(long classId, GreedySelection.Metric metric, boolean[] probes) throws IOException {
+        ClassProbeModel model = model(classId);
+        return model == null ? 0 : model.covered(metric, probes);
+    }
+
+    /**
+     * What the static initializer of the class with the given id hit among the given probes;
+     * null if it did not run or the class is outside the index (see
+     * {@link ClassProbeModel#staticInitHits}).
+     */
+    boolean[] staticInitHits(long classId, boolean[] probes) throws IOException {
+        ClassProbeModel model = model(classId);
+        return model == null ? null : model.staticInitHits(probes);
+    }
+
+    /** The probe model of an indexed class, built on first use; null if JaCoCo skips the class. */
+    private ClassProbeModel model(long classId) throws IOException {
+        if (!contains(classId)) return null;
+
+        Optional<ClassProbeModel> cached = models.get(classId);
+        if (cached != null) return cached.orElse(null);
+
+        ClassProbeModel model;
+        try {
+            model = ClassProbeModel.build(classId, classBytes(classId));
+        } catch (RuntimeException e) {
+            throw new IOException("Error while analyzing " + location(classId) + ".", e);
+        }
+        models.putIfAbsent(classId, Optional.ofNullable(model));
+        return model;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (jar != null) {
+            jar.close();
+        }
+    }
+
+    /* ===== on-disk jar index cache ===== */
+
+    private static boolean readCache(File cacheFile, Map<Long, String> locations, Map<Long, String> classNames) {
+        if (!cacheFile.isFile()) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile.toPath())))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) return false;
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                long id = in.readLong();
+                classNames.put(id, in.readUTF());
+                locations.put(id, in.readUTF());
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("[ProbeIndex] ignoring unreadable index cache " + cacheFile.getPath() + ": " + e);
+            locations.clear();
+            classNames.clear();
+            return false;
+        }
+    }
+
+    private static void writeCache(File cacheFile, Map<Long, String> locations, Map<Long, String> classNames) {
+        try {
+            File dir = cacheFile.getParentFile();
+            Files.createDirectories(dir.toPath());
+            // Write-then-rename so concurrent runs never read a partial index.
+            Path tmp = Files.createTempFile(dir.toPath(), cacheFile.getName(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(CACHE_MAGIC);
+                out.writeInt(CACHE_VERSION);
+                out.writeInt(locations.size());
+                for (Map.Entry<Long, String> e : locations.entrySet()) {
+                    out.writeLong(e.getKey());
+                    out.writeUTF(classNames.get(e.getKey()));
+                    out.writeUTF(e.getValue());
+                }
+            }
+            ContentCache.publish(tmp, cacheFile.toPath());
+        } catch (IOException e) {
+            // The cache is an optimization only.
+            System.out.println("[ProbeIndex] could not write index cache " + cacheFile.getPath() + ": " + e);
+        }
+    }
+}
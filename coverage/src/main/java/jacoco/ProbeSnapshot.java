@@ -0,0 +1,110 @@
+package jacoco;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable copy of a probe store (e.g. the manual baseline), loaded once and shared by
+ * every candidate evaluation. Candidates are OR-merged against it by
+ * {@link CoverageAnalyzer#delta} / {@link CoverageAnalyzer#merge}; only the probe arrays
+ * of classes a candidate actually changes are copied.
+ */
+public final class ProbeSnapshot {
+
+    private static final ProbeSnapshot EMPTY = new ProbeSnapshot(Collections.emptyMap());
+
+    private final Map<Long, ExecutionData> data;
+
+    private ProbeSnapshot(Map<Long, ExecutionData> data) {
+        this.data = data;
+    }
+
+    public static ProbeSnapshot empty() {
+        return EMPTY;
+    }
+
+    /** Deep copy; later changes to the store are not visible in the snapshot. */
+    public static ProbeSnapshot of(ExecutionDataStore store) {
+        Map<Long, ExecutionData> copy = new HashMap<>();
+        for (ExecutionData d : store.getContents()) {
+            copy.put(d.getId(), new ExecutionData(d.getId(), d.getName(), d.getProbes().clone()));
+        }
+        return new ProbeSnapshot(Collections.unmodifiableMap(copy));
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    /** Probes of a class, or null if it was not executed. Shared array: never modify. */
+    boolean[] probes(long classId) {
+        ExecutionData d = data.get(classId);
+        return d == null ? null : d.getProbes();
+    }
+
+    /**
+     * Store holding the snapshot's own (shared) instances, with the given classes replaced
+     * or added; read-only use such as analysis. (put() on an id already present would merge
+     * into the shared instance, hence replacements are applied while filling the store.)
+     */
+    ExecutionDataStore shallowStore(Map<Long, ExecutionData> replacements) {
+        ExecutionDataStore store = new ExecutionDataStore();
+        for (ExecutionData d : data.values()) {
+            store.put(replacements.getOrDefault(d.getId(), d));
+        }
+        for (ExecutionData d : replacements.values()) {
+            if (!data.containsKey(d.getId())) {
+                store.put(d);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * The classes of candidate that hit a probe the snapshot does not, with all their probes.
+     * OR-ing the other classes into the snapshot changes nothing, so this is all of the
+     * candidate that {@link CoverageAnalyzer#delta} and a {@link ProbeAccumulator} see.
+     */
+    public ExecutionDataStore beyond(ExecutionDataStore candidate) {
+        ExecutionDataStore store = new ExecutionDataStore();
+        for (ExecutionData cand : candidate.getContents()) {
+            boolean[] base = probes(cand.getId());
+            boolean[] hit = cand.getProbes();
+            for (int p = 0; p < hit.length; p++) {
+                if (hit[p] && (base == null || p >= base.length || !base[p])) {
+                    store.put(new ExecutionData(cand.getId(), cand.getName(), hit.clone()));
+                    break;
+                }
+            }
+        }
+        return store;
+    }
+
+    /** Number of probes candidate hits that the snapshot does not. */
+    public int countBeyond(ExecutionDataStore candidate) {
+        int count = 0;
+        for (ExecutionData cand : candidate.getContents()) {
+            boolean[] base = probes(cand.getId());
+            boolean[] hit = cand.getProbes();
+            for (int p = 0; p < hit.length; p++) {
+                if (hit[p] && (base == null || p >= base.length || !base[p])) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Fresh store with a copy of every class, for callers that need a mutable store. */
+    public ExecutionDataStore toStore() {
+        ExecutionDataStore store = new ExecutionDataStore();
+        for (ExecutionData d : data.values()) {
+            store.put(new ExecutionData(d.getId(), d.getName(), d.getProbes().clone()));
+        }
+        return store;
+    }
+}
@@ -0,0 +1,66 @@
+package jacoco;
+
+import model.TestId;
+import runner.TestListener;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+/**
+ * Dumps and resets the JaCoCo runtime around every test, producing one exec file
+ * with one session per test id (fqcn#method).
+ *
+ * Probes hit outside of a test (static initializers, @BeforeClass, ...) are stored
+ * in a session named after the test class (fqcn); {@link CoverageAnalyzer#readTestSessions}
+ * merges it into every test of that class, mirroring what a per-method fork sees.
+ *
+ * Static initializers of SUT classes run once per JVM, inside whichever test touches the
+ * class first; {@link CoverageAnalyzer#readTestSessions} gives their probes to every test
+ * that hits the class.
+ */
+public final class SessionDumper implements TestListener, AutoCloseable {
+
+    private final JacocoRuntime runtime;
+    private final OutputStream out;
+    private String lastClass;
+
+    public SessionDumper(JacocoRuntime runtime, File execFile) throws IOException {
+        this.runtime = Objects.requireNonNull(runtime, "runtime");
+        File parent = execFile.getParentFile();
+        if (parent != null) parent.mkdirs();
+        this.out = new BufferedOutputStream(new FileOutputStream(execFile, false));
+    }
+
+    @Override
+    public synchronized void testStarted(TestId test) {
+        lastClass = test.getClassName();
+        dump(lastClass);
+    }
+
+    @Override
+    public synchronized void testFinished(TestId test) {
+        dump(test.toString());
+    }
+
+    private void dump(String sessionId) {
+        runtime.setSessionId(sessionId);
+        try {
+            out.write(runtime.getExecutionData(true));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write coverage session " + sessionId, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (lastClass != null) {
+            dump(lastClass);
+        }
+        out.close();
+    }
+}
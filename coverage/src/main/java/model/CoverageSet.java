@@ -1,38 +1,114 @@
 package model;
 
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 
+/**
+ * Set of covered units, stored as a bit set over a {@link UnitDictionary}.
+ *
+ * Sets are immutable, except copies made with {@link #mutableCopy()} that are grown in
+ * place with {@link #addAll}. Operations between sets of the same dictionary are pure bit
+ * work; sets from different dictionaries are combined through their unit strings.
+ */
 public final class CoverageSet {
-    private final Set<String> coveredUnits;
+    private final UnitDictionary dictionary;
+    private final BitSet bits;
+    private final boolean mutable;
+    private volatile Set<String> coveredUnits;   // string export, built on demand
 
     public CoverageSet(Set<String> coveredUnits) {
-        Objects.requireNonNull(coveredUnits, "coveredUnits");
-        this.coveredUnits = Collections.unmodifiableSet(new HashSet<>(coveredUnits));
+        this(new UnitDictionary(), coveredUnits);
+    }
+
+    public CoverageSet(UnitDictionary dictionary, Collection<String> coveredUnits) {
+        this(dictionary, toBits(dictionary, coveredUnits), false);
+    }
+
+    private CoverageSet(UnitDictionary dictionary, BitSet bits, boolean mutable) {
+        this.dictionary = Objects.requireNonNull(dictionary, "dictionary");
+        this.bits = bits;
+        this.mutable = mutable;
+    }
+
+    /** Takes ownership of bits; the caller must not modify them afterwards. */
+    public static CoverageSet of(UnitDictionary dictionary, BitSet bits) {
+        return new CoverageSet(dictionary, Objects.requireNonNull(bits, "bits"), false);
+    }
+
+    private static BitSet toBits(UnitDictionary dictionary, Collection<String> units) {
+        Objects.requireNonNull(units, "coveredUnits");
+        BitSet bits = new BitSet();
+        for (String u : units) {
+            bits.set(dictionary.intern(u));
+        }
+        return bits;
     }
 
     public Set<String> getCoveredUnits() {
-        return coveredUnits;
+        Set<String> units = coveredUnits;
+        if (units == null) {
+            Set<String> export = new HashSet<>();
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                export.add(dictionary.unit(i));
+            }
+            units = Collections.unmodifiableSet(export);
+            if (!mutable) {
+                coveredUnits = units;
+            }
+        }
+        return units;
+    }
+
+    public int size() {
+        return bits.cardinality();
     }
 
     public boolean addsAnythingBeyond(CoverageSet baseline) {
-        for (String u : coveredUnits) {
-            if (!baseline.coveredUnits.contains(u)) return true;
+        BitSet other = baseline.bitsIn(dictionary);
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            if (!other.get(i)) return true;
         }
         return false;
     }
 
     public CoverageSet union(CoverageSet other) {
-        Set<String> u = new HashSet<>(this.coveredUnits);
-        u.addAll(other.coveredUnits);
-        return new CoverageSet(u);
+        BitSet u = (BitSet) bits.clone();
+        u.or(other.bitsIn(dictionary));
+        return new CoverageSet(dictionary, u, false);
     }
 
     public CoverageSet subtract(CoverageSet other) {
-        Set<String> d = new HashSet<>(this.coveredUnits);
-        d.removeAll(other.coveredUnits);
-        return new CoverageSet(d);
+        BitSet d = (BitSet) bits.clone();
+        d.andNot(other.bitsIn(dictionary));
+        return new CoverageSet(dictionary, d, false);
+    }
+
+    /** Mutable copy for accumulating coverage with {@link #addAll}. */
+    public CoverageSet mutableCopy() {
+        return new CoverageSet(dictionary, (BitSet) bits.clone(), true);
+    }
+
+    /** In-place union; only allowed on sets obtained from {@link #mutableCopy()}. */
+    public void addAll(CoverageSet other) {
+        if (!mutable) {
+            throw new IllegalStateException("CoverageSet is immutable; use mutableCopy()");
+        }
+        bits.or(other.bitsIn(dictionary));
+    }
+
+    /** This set's bits in the given dictionary (no copy if it is already ours). */
+    private BitSet bitsIn(UnitDictionary target) {
+        if (target == dictionary) {
+            return bits;
+        }
+        BitSet translated = new BitSet();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            translated.set(target.intern(dictionary.unit(i)));
+        }
+        return translated;
     }
-}
\ No newline at end of file
+}
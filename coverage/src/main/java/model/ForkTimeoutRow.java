@@ -0,0 +1,25 @@
+package model;
+
+import java.util.Objects;
+
+public final class ForkTimeoutRow {
+    private final String stage;
+    private final String testSelectors;
+    private final long deadlineMs;
+    private final String threadDump;
+
+    public ForkTimeoutRow(String stage,
+                          String testSelectors,
+                          long deadlineMs,
+                          String threadDump) {
+        this.stage = Objects.requireNonNull(stage, "stage");
+        this.testSelectors = Objects.requireNonNull(testSelectors, "testSelectors");
+        this.deadlineMs = deadlineMs;
+        this.threadDump = threadDump == null ? "" : threadDump;
+    }
+
+    public String getStage() { return stage; }
+    public String getTestSelectors() { return testSelectors; }
+    public long getDeadlineMs() { return deadlineMs; }
+    public String getThreadDump() { return threadDump; }
+}
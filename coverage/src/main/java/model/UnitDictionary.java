@@ -0,0 +1,36 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns coverage unit strings (pkg/Foo::bar|LINE) to dense int ids, one dictionary per
+ * analyzed target. {@link CoverageSet}s sharing a dictionary compare and combine as bit sets.
+ * Ids are never reused or removed. Thread-safe.
+ */
+public final class UnitDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> units = new ArrayList<>();
+
+    /** Id of the unit, assigning the next free id on first use. */
+    public synchronized int intern(String unit) {
+        Integer id = ids.get(unit);
+        if (id == null) {
+            id = units.size();
+            ids.put(unit, id);
+            units.add(unit);
+        }
+        return id;
+    }
+
+    public synchronized String unit(int id) {
+        return units.get(id);
+    }
+
+    public synchronized int size() {
+        return units.size();
+    }
+}
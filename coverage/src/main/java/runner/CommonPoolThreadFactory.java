@@ -0,0 +1,24 @@
+package runner;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Thread factory of the common ForkJoinPool in test JVMs that run under the
+ * {@link GuardSecurityManager}. The JDK's default factory creates InnocuousForkJoinWorkerThreads
+ * as soon as a manager is installed; those erase ThreadLocals after every task. This one
+ * creates plain workers, with the system class loader as context class loader like the
+ * default ones. Set through java.util.concurrent.ForkJoinPool.common.threadFactory, which the
+ * pool reads once, when it is created.
+ */
+public final class CommonPoolThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+    static final String FACTORY_PROP = "java.util.concurrent.ForkJoinPool.common.threadFactory";
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) { };
+        t.setContextClassLoader(ClassLoader.getSystemClassLoader());
+        return t;
+    }
+}
@@ -0,0 +1,72 @@
+package runner;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps tests from ending the test JVM: System.exit and Runtime.halt called by a test (or
+ * the SUT on its behalf) throw {@link TrappedExitException} instead, so the remaining
+ * selectors of the fork still run and the JaCoCo data of all of them is dumped. The runners'
+ * outcome listeners report the test as FAILED, even if it caught the exception.
+ *
+ * Opt-in. Vetoed by the {@link GuardSecurityManager}; on JVMs that refuse one the trap stays
+ * off and says so. Installed once per test JVM by the runner mains; tool code exits through
+ * {@link #exit(int)}.
+ */
+public final class ExitTrap {
+
+    /**
+     * Set to true to keep tests from exiting the test JVM (default false, like
+     * {@link NetworkGuard#NETWORK_GUARD_PROP}; --trap-exit true on the command line). While
+     * on, the test JVM runs under a {@link GuardSecurityManager}, which tests and the SUT can
+     * observe:
+     *   - System.getSecurityManager() is non-null, so code that branches on it (doPrivileged
+     *     paths, permission checks, libraries that refuse to run under a manager) can take
+     *     other paths and cover other code than in a plain JVM;
+     *   - JDK 17+ prints a deprecation warning for System.setSecurityManager to stderr;
+     *   - every permission check goes through the manager, a small overhead.
+     * The common ForkJoinPool gets plain workers ({@link CommonPoolThreadFactory}) rather than
+     * the Innocuous ones the JDK uses under a manager, which erase ThreadLocals after each
+     * task. Its workers use the system class loader as context class loader, as they do
+     * without a manager, not a worker JVM's per-request loader.
+     */
+    public static final String TRAP_EXIT_PROP = "test.trap.exit";
+
+    private static volatile boolean released;
+    private static final AtomicReference<TrappedExitException> LAST_ATTEMPT = new AtomicReference<>();
+
+    private ExitTrap() {
+    }
+
+    /** Starts trapping exits if enabled by {@link #TRAP_EXIT_PROP}; idempotent. */
+    public static void install() {
+        if (!Boolean.getBoolean(TRAP_EXIT_PROP)) return;
+        try {
+            GuardSecurityManager.install().trapExit = true;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            System.out.println("[ExitTrap] cannot trap System.exit on this JVM, tests may end the fork: " + e);
+        }
+    }
+
+    /** Exits the JVM on behalf of the tool itself, bypassing the trap. */
+    public static void exit(int status) {
+        released = true;
+        System.exit(status);
+    }
+
+    /**
+     * The exit attempt trapped since the last call, if any, and forgets it. Listeners call it
+     * when a test starts (discarding attempts of earlier tests' leftover threads) and when it
+     * finishes.
+     */
+    static TrappedExitException takeAttempt() {
+        return LAST_ATTEMPT.getAndSet(null);
+    }
+
+    static void check(int status) {
+        if (released) return;
+        TrappedExitException e = new TrappedExitException(status);
+        LAST_ATTEMPT.set(e);
+        System.out.println("[ExitTrap] blocked exit(" + status + ") in " + Thread.currentThread().getName());
+        throw e;
+    }
+}
@@ -0,0 +1,89 @@
+package runner;
+
+import java.security.Permission;
+
+/**
+ * The one SecurityManager of a test JVM, shared by {@link ExitTrap} and {@link NetworkGuard}.
+ * It permits everything they do not veto (and whatever a previously installed manager
+ * permits), so tests see no other difference.
+ *
+ * Needs a JDK that still lets {@link System#setSecurityManager} be called (17, or 18-23
+ * started with -Djava.security.manager=allow).
+ */
+@SuppressWarnings("removal")
+final class GuardSecurityManager extends SecurityManager {
+
+    private static GuardSecurityManager instance;
+
+    private final SecurityManager previous;   // e.g. a build tool's; null in plain forks
+    volatile boolean trapExit;
+    volatile boolean guardNetwork;
+
+    private GuardSecurityManager(SecurityManager previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * The installed manager, installing it on first use.
+     *
+     * @throws UnsupportedOperationException if this JVM does not allow a SecurityManager
+     */
+    static synchronized GuardSecurityManager install() {
+        if (instance == null) {
+            // Keep the common pool on plain workers (see CommonPoolThreadFactory); has no
+            // effect if something created the pool already.
+            if (System.getProperty(CommonPoolThreadFactory.FACTORY_PROP) == null) {
+                System.setProperty(CommonPoolThreadFactory.FACTORY_PROP, CommonPoolThreadFactory.class.getName());
+            }
+            java.util.concurrent.ForkJoinPool.commonPool();
+            GuardSecurityManager m = new GuardSecurityManager(System.getSecurityManager());
+            System.setSecurityManager(m);
+            instance = m;
+        }
+        return instance;
+    }
+
+    @Override
+    public void checkExit(int status) {
+        if (previous != null) {
+            previous.checkExit(status);
+        }
+        if (trapExit) {
+            ExitTrap.check(status);
+        }
+    }
+
+    @Override
+    public void checkConnect(String host, int port) {
+        if (previous != null) {
+            previous.checkConnect(host, port);
+        }
+        if (guardNetwork) {
+            NetworkGuard.check(host, port);
+        }
+    }
+
+    @Override
+    public void checkConnect(String host, int port, Object context) {
+        if (previous != null) {
+            previous.checkConnect(host, port, context);
+        }
+        if (guardNetwork) {
+            NetworkGuard.check(host, port);
+        }
+    }
+
+    @Override
+    public void checkPermission(Permission perm) {
+        if (previous != null) {
+            previous.checkPermission(perm);
+        }
+    }
+
+    @Override
+    public void checkPermission(Permission perm, Object context) {
+        if (previous != null) {
+            previous.checkPermission(perm, context);
+        }
+    }
+}
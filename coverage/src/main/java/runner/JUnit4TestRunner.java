@@ -1,47 +1,116 @@
 package runner;
 
 import model.TestId;
+import org.junit.runner.Description;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.Request;
 import org.junit.runner.Result;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
 import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 
 public final class JUnit4TestRunner {
 
+    /** Run the selected tests of a class through one runner instead of one request per test. */
+    public static final String BATCH_PROP = "junit4.batch";
+
+    private static final String LOG_PREFIX = "[JUnit4TestRunner]";
+
     private final ClassLoader classLoader;
+    private final List<TestListener> listeners;
 
     public JUnit4TestRunner(ClassLoader classLoader) {
+        this(classLoader, List.of());
+    }
+
+    public JUnit4TestRunner(ClassLoader classLoader, List<TestListener> listeners) {
         this.classLoader = classLoader;
+        this.listeners = List.copyOf(listeners);
     }
 
-    public void runTests(List<TestId> tests) {
+    /**
+     * Runs the tests, one request per test or, with {@link #BATCH_PROP}, one filtered and
+     * sorted request per test class. Returns the outcomes of the tests that ran.
+     */
+    public List<TestOutcome> runTests(List<TestId> tests) {
         Map<String, List<TestId>> byClass = tests.stream()
                 .collect(Collectors.groupingBy(TestId::getClassName));
 
         JUnitCore core = new JUnitCore();
+        if (!listeners.isEmpty()) {
+            core.addListener(new ListenerAdapter(listeners));
+        }
         int totalRun = 0;
         int totalFail = 0;
         int totalTimeout = 0;
+        int totalStalled = 0;
         long timeoutMs = TestTimeouts.resolveTimeoutMs();
+        boolean batched = Boolean.getBoolean(BATCH_PROP);
         ExecutorService executor = TestTimeouts.newExecutor("junit4-runner");
+        ScheduledExecutorService watchdog = batched && timeoutMs > 0
+                ? TestTimeouts.newWatchdog("junit4-watchdog") : null;
+        OutcomeListener outcomes = new OutcomeListener(timeoutMs, watchdog);
+        core.addListener(outcomes);
 
         try {
             for (Map.Entry<String, List<TestId>> e : byClass.entrySet()) {
                 Class<?> testClass = loadClass(e.getKey());
 
+                List<TestId> pending = batched ? e.getValue() : List.of();
+                while (!pending.isEmpty()) {
+                    // Builds the class runner (EvoRunner, scaffolding) once for all selected methods.
+                    Runner runner = batchRequest(testClass, pending).getRunner();
+                    long budgetMs = timeoutMs <= 0 ? 0 : timeoutMs * Math.max(runner.testCount(), 1);
+                    String selector = testClass.getName() + " (" + pending.size() + " selectors)";
+                    int before = outcomes.size();
+                    Result r = TestTimeouts.runWithTimeout(executor, budgetMs, selector, LOG_PREFIX,
+                            () -> core.run(runner));
+                    if (r != null) {
+                        totalRun += r.getRunCount();
+                        totalFail += r.getFailureCount();
+                        if (r.getFailureCount() > 0) {
+                            printFailures(selector, r.getFailures());
+                        }
+                        break;
+                    }
+                    int abandoned = outcomes.abandonRunning();
+                    executor = replace(executor);
+                    for (TestOutcome o : outcomes.outcomes().subList(before, outcomes.size())) {
+                        if (o.getStatus() == TestOutcome.Status.SKIPPED) continue;
+                        totalRun += 1;
+                        if (o.getStatus() != TestOutcome.Status.SUCCESSFUL) totalFail += 1;
+                    }
+                    if (abandoned == 0) {
+                        // Stuck outside any test (e.g. @BeforeClass): the rest cannot run either.
+                        totalFail += 1;
+                        totalTimeout += 1;
+                        break;
+                    }
+                    // The stuck test is recorded; run the tests behind it in a fresh batch.
+                    pending = notYetRun(runner.getDescription(), outcomes);
+                }
+                if (batched) {
+                    continue;
+                }
+
                 for (TestId t : e.getValue()) {
                     String selector = t.isClassOnly()
                             ? t.getClassName()
                             : t.getClassName() + "#" + t.getMethodName();
-                    Result r = runWithTimeout(executor, timeoutMs, selector, () -> {
+                    Result r = TestTimeouts.runWithTimeout(executor, timeoutMs, selector, LOG_PREFIX, () -> {
                         if (t.isClassOnly()) {
                             return core.run(testClass);
                         }
@@ -54,43 +123,77 @@ public final class JUnit4TestRunner {
                             printFailures(selector, r.getFailures());
                         }
                     } else {
-                        totalFail += 1;
-                        totalTimeout += 1;
+                        int abandoned = outcomes.abandonRunning();
+                        totalRun += abandoned;
+                        totalFail += Math.max(abandoned, 1);
+                        if (abandoned == 0) totalTimeout += 1;
+                        executor = replace(executor);
                     }
                 }
             }
         } finally {
             executor.shutdownNow();
+            if (watchdog != null) {
+                watchdog.shutdownNow();
+            }
+        }
+
+        List<TestOutcome> ran = outcomes.outcomes();
+        for (TestOutcome o : ran) {
+            // Already counted as failures: the interrupted test fails, an abandoned one above.
+            if (o.getStatus() == TestOutcome.Status.TIMEOUT) {
+                totalTimeout += 1;
+                System.out.println(LOG_PREFIX + " TIMEOUT after " + o.getDurationMs() + "ms: " + o.getSelector());
+            } else if (o.getStatus() == TestOutcome.Status.STALLED) {
+                totalStalled += 1;
+                System.out.println(LOG_PREFIX + " STALLED after " + o.getDurationMs() + "ms: " + o.getSelector());
+            }
         }
+        System.out.println(LOG_PREFIX + " run=" + totalRun + " failed=" + totalFail
+                + " timeout=" + totalTimeout + " stalled=" + totalStalled);
+        return ran;
+    }
 
-        System.out.println("[JUnit4TestRunner] run=" + totalRun + " failed=" + totalFail
-                + " timeout=" + totalTimeout);
+    private static List<TestId> notYetRun(Description batch, OutcomeListener outcomes) {
+        Set<String> done = new HashSet<>();
+        for (TestOutcome o : outcomes.outcomes()) done.add(o.getSelector());
+        List<TestId> pending = new ArrayList<>();
+        collectNotYetRun(batch, done, pending);
+        return pending;
     }
 
-    private Result runWithTimeout(ExecutorService executor,
-                                  long timeoutMs,
-                                  String selector,
-                                  java.util.concurrent.Callable<Result> task) {
-        if (timeoutMs <= 0) {
-            try {
-                return task.call();
-            } catch (Exception e) {
-                throw new RuntimeException("Test failed: " + selector, e);
+    private static void collectNotYetRun(Description d, Set<String> done, List<TestId> pending) {
+        if (d.isTest()) {
+            if (d.getMethodName() != null && !done.contains(d.getClassName() + "#" + d.getMethodName())) {
+                pending.add(new TestId(d.getClassName(), d.getMethodName()));
             }
+            return;
         }
-        Future<Result> f = executor.submit(task);
-        try {
-            return f.get(timeoutMs, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException e) {
-            f.cancel(true);
-            System.out.println("[JUnit4TestRunner] TIMEOUT after " + timeoutMs + "ms: " + selector);
-            return null;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Test interrupted: " + selector, e);
-        } catch (Exception e) {
-            throw new RuntimeException("Test failed: " + selector, e);
+        for (Description child : d.getChildren()) {
+            collectNotYetRun(child, done, pending);
+        }
+    }
+
+    /** The abandoned test still occupies the executor's thread; later tests need a fresh one. */
+    private static ExecutorService replace(ExecutorService executor) {
+        executor.shutdownNow();
+        return TestTimeouts.newExecutor("junit4-runner");
+    }
+
+    /**
+     * The whole class, or only the selected methods in selector order. Filtering and sorting
+     * apply to the single runner built for the class; a class with @FixMethodOrder keeps its
+     * own order.
+     */
+    static Request batchRequest(Class<?> testClass, List<TestId> tests) {
+        Request request = Request.aClass(testClass);
+        if (tests.stream().anyMatch(TestId::isClassOnly)) {
+            return request;
         }
+        List<String> order = tests.stream().map(TestId::getMethodName).distinct().toList();
+        return request
+                .filterWith(new MethodFilter(order))
+                .sortWith(Comparator.comparingInt(d -> order.indexOf(d.getMethodName())));
     }
 
     private Class<?> loadClass(String fqcn) {
@@ -110,4 +213,161 @@ public final class JUnit4TestRunner {
                     + " -> " + testHeader + " :: " + reason);
         }
     }
+
+    private static final class MethodFilter extends Filter {
+        private final List<String> methods;
+
+        MethodFilter(List<String> methods) {
+            this.methods = methods;
+        }
+
+        @Override
+        public boolean shouldRun(Description d) {
+            if (d.isTest()) {
+                return methods.contains(d.getMethodName());
+            }
+            for (Description child : d.getChildren()) {
+                if (shouldRun(child)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String describe() {
+            return "methods " + methods;
+        }
+    }
+
+    /**
+     * Aggregates the outcome and duration of every test. With a watchdog (batched runs), a
+     * test still running after timeoutMs is interrupted and reported as TIMEOUT; one the
+     * {@link StallMonitor} found stalled as STALLED.
+     */
+    private static final class OutcomeListener extends RunListener {
+        private final long timeoutMs;
+        private final ScheduledExecutorService watchdog;
+        private final List<TestOutcome> outcomes = Collections.synchronizedList(new ArrayList<>());
+        private final Map<Description, TestDeadline> running = new ConcurrentHashMap<>();
+        // Tests the runner stopped waiting for; their late failure events are ignored.
+        private final Set<Description> abandoned = ConcurrentHashMap.newKeySet();
+        private final Map<Description, Failure> failures = new ConcurrentHashMap<>();
+        private final Set<Description> assumptionFailures = ConcurrentHashMap.newKeySet();
+
+        OutcomeListener(long timeoutMs, ScheduledExecutorService watchdog) {
+            this.timeoutMs = timeoutMs;
+            this.watchdog = watchdog;
+        }
+
+        List<TestOutcome> outcomes() {
+            synchronized (outcomes) {
+                return new ArrayList<>(outcomes);
+            }
+        }
+
+        int size() {
+            return outcomes.size();
+        }
+
+        @Override
+        public void testStarted(Description d) {
+            ExitTrap.takeAttempt();
+            NetworkGuard.takeBlocked(null);
+            running.put(d, TestDeadline.start(watchdog, timeoutMs));
+        }
+
+        @Override
+        public void testFailure(Failure failure) {
+            Description d = failure.getDescription();
+            if (abandoned.contains(d)) {
+                return;
+            }
+            if (!running.containsKey(d)) {
+                // Class-level failure (e.g. @BeforeClass): no test of it started.
+                outcomes.add(new TestOutcome(selectorOf(d), TestOutcome.Status.FAILED, 0, failure.getException()));
+                return;
+            }
+            failures.put(d, failure);
+        }
+
+        @Override
+        public void testAssumptionFailure(Failure failure) {
+            assumptionFailures.add(failure.getDescription());
+        }
+
+        @Override
+        public void testIgnored(Description d) {
+            outcomes.add(new TestOutcome(selectorOf(d), TestOutcome.Status.SKIPPED, 0, null));
+        }
+
+        @Override
+        public void testFinished(Description d) {
+            TestDeadline deadline = running.remove(d);
+            Failure failure = failures.remove(d);
+            boolean assumption = assumptionFailures.remove(d);
+            if (deadline == null) {
+                // Abandoned earlier and already recorded; its thread only now got through.
+                return;
+            }
+            TestOutcome.Status cutShort = deadline.finish();
+            long durationMs = deadline.elapsedMs();
+            Throwable thrown = failure != null ? failure.getException() : null;
+            TrappedExitException exit = ExitTrap.takeAttempt();
+            NetworkGuard.takeBlocked(selectorOf(d));
+
+            TestOutcome.Status status;
+            if (cutShort != null) {
+                status = cutShort;
+            } else if (failure != null) {
+                status = TestOutcome.Status.FAILED;
+            } else if (exit != null) {
+                // The test swallowed the exception, but it would have ended the JVM.
+                status = TestOutcome.Status.FAILED;
+                thrown = exit;
+            } else if (assumption) {
+                status = TestOutcome.Status.ABORTED;
+            } else {
+                status = TestOutcome.Status.SUCCESSFUL;
+            }
+            outcomes.add(new TestOutcome(selectorOf(d), status, durationMs, thrown));
+        }
+
+        /** Records the tests the runner stopped waiting for; returns how many there were. */
+        int abandonRunning() {
+            int n = 0;
+            for (Description d : new ArrayList<>(running.keySet())) {
+                TestDeadline deadline = running.remove(d);
+                if (deadline == null) continue;
+                failures.remove(d);
+                assumptionFailures.remove(d);
+                abandoned.add(d);
+                outcomes.add(new TestOutcome(selectorOf(d), deadline.abandon(), deadline.elapsedMs(), null));
+                n++;
+            }
+            return n;
+        }
+
+        private static String selectorOf(Description d) {
+            return d.getMethodName() != null ? d.getClassName() + "#" + d.getMethodName() : d.getDisplayName();
+        }
+    }
+
+    private static final class ListenerAdapter extends RunListener {
+        private final List<TestListener> listeners;
+
+        ListenerAdapter(List<TestListener> listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void testStarted(Description d) {
+            TestId t = new TestId(d.getClassName(), d.getMethodName());
+            for (TestListener l : listeners) l.testStarted(t);
+        }
+
+        @Override
+        public void testFinished(Description d) {
+            TestId t = new TestId(d.getClassName(), d.getMethodName());
+            for (TestListener l : listeners) l.testFinished(t);
+        }
+    }
 }
@@ -1,107 +1,202 @@
 package runner;
 
 import model.TestId;
+import org.junit.platform.engine.DiscoverySelector;
+import org.junit.platform.engine.TestExecutionResult;
 import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.engine.support.descriptor.MethodSource;
 import org.junit.platform.launcher.Launcher;
 import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
 import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
 import org.junit.platform.launcher.core.LauncherFactory;
-import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
-import org.junit.platform.launcher.listeners.TestExecutionSummary;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 
 public final class JUnit5TestRunner {
 
+    /** Run the selected tests of a class in one discovery request instead of one per test. */
+    public static final String BATCH_PROP = "junit5.batch";
+
+    private static final String LOG_PREFIX = "[JUnit5TestRunner]";
+
     private final ClassLoader classLoader;
     private final Launcher launcher;
 
     public JUnit5TestRunner(ClassLoader classLoader) {
+        this(classLoader, List.of());
+    }
+
+    public JUnit5TestRunner(ClassLoader classLoader, List<TestListener> listeners) {
+        this(classLoader, listeners, LauncherFactory.create());
+    }
+
+    JUnit5TestRunner(ClassLoader classLoader, List<TestListener> listeners, Launcher launcher) {
         this.classLoader = classLoader;
-        this.launcher = LauncherFactory.create();
+        this.launcher = launcher;
+        if (!listeners.isEmpty()) {
+            launcher.registerTestExecutionListeners(new ListenerAdapter(List.copyOf(listeners)));
+        }
     }
 
-    public void runTests(List<TestId> tests) {
+    /**
+     * Runs the tests, one launcher execution per test or, with {@link #BATCH_PROP}, one
+     * discovery and execution per test class. Returns the outcomes of the tests that ran
+     * (tests abandoned after a timeout have no outcome).
+     */
+    public List<TestOutcome> runTests(List<TestId> tests) {
         Map<String, List<TestId>> byClass = tests.stream()
                 .collect(Collectors.groupingBy(TestId::getClassName));
 
         long timeoutMs = TestTimeouts.resolveTimeoutMs();
+        boolean batched = Boolean.getBoolean(BATCH_PROP);
         ExecutorService executor = TestTimeouts.newExecutor("junit5-runner");
+        ScheduledExecutorService watchdog = batched && timeoutMs > 0 ? TestTimeouts.newWatchdog("junit5-watchdog") : null;
+        List<TestOutcome> outcomes = new ArrayList<>();
 
         try {
             for (Map.Entry<String, List<TestId>> e : byClass.entrySet()) {
                 Class<?> testClass = loadClass(e.getKey());
 
+                if (batched) {
+                    executor = runBatch(testClass, e.getValue(), executor, outcomes, timeoutMs, watchdog);
+                    continue;
+                }
+
                 for (TestId t : e.getValue()) {
-                    LauncherDiscoveryRequest request;
-
-                    if (t.isClassOnly()) {
-                        request = LauncherDiscoveryRequestBuilder.request()
-                                .selectors(DiscoverySelectors.selectClass(testClass))
-                                .build();
-                    } else {
-                        request = LauncherDiscoveryRequestBuilder.request()
-                                .selectors(DiscoverySelectors.selectMethod(testClass, t.getMethodName()))
-                                .build();
-                    }
+                    LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
+                            .selectors(selectorFor(testClass, t))
+                            .build();
 
-                    SummaryGeneratingListener summary = new SummaryGeneratingListener();
-                    launcher.registerTestExecutionListeners(summary);
+                    // Passed to this execution only: listeners registered on the launcher would
+                    // accumulate and be notified by every later execution.
+                    OutcomeListener listener = new OutcomeListener(0, null);
 
                     String selector = t.isClassOnly()
                             ? t.getClassName()
                             : t.getClassName() + "#" + t.getMethodName();
-                    TestExecutionSummary s = runWithTimeout(executor, timeoutMs, selector, () -> {
-                        launcher.execute(request);
-                        return summary.getSummary();
+                    List<TestOutcome> ran = TestTimeouts.runWithTimeout(executor, timeoutMs, selector, LOG_PREFIX, () -> {
+                        launcher.execute(request, listener);
+                        return listener.outcomes();
                     });
-
-                    if (s != null) {
-                        System.out.println("[JUnit5TestRunner] started=" + s.getTestsStartedCount()
-                                + " succeeded=" + s.getTestsSucceededCount()
-                                + " failed=" + s.getTestsFailedCount()
-                                + " skipped=" + s.getTestsSkippedCount());
-                        if (s.getTestsFailedCount() > 0) {
-                            printFailures(selector, s);
-                        }
+                    if (ran == null) {
+                        listener.abandonRunning();
+                        ran = listener.outcomes();
+                        executor = replace(executor);
                     }
+                    report(selector, ran);
+                    outcomes.addAll(ran);
                 }
             }
         } finally {
             executor.shutdownNow();
+            if (watchdog != null) {
+                watchdog.shutdownNow();
+            }
         }
+        return outcomes;
     }
 
-    private TestExecutionSummary runWithTimeout(ExecutorService executor,
-                                                long timeoutMs,
-                                                String selector,
-                                                java.util.concurrent.Callable<TestExecutionSummary> task) {
-        if (timeoutMs <= 0) {
-            try {
-                return task.call();
-            } catch (Exception e) {
-                throw new RuntimeException("Test failed: " + selector, e);
+    /**
+     * One discovery request with all selectors of the class and one aggregating listener, so
+     * discovery and engine setup are paid once per class. Each test gets timeoutMs of its own:
+     * the listener interrupts a test that overruns and the batch continues with the next one.
+     * A test that ignores the interrupt is only abandoned with the whole batch, once the batch
+     * has used up the budget of all its tests (or the {@link StallMonitor} gave up on it); the
+     * tests behind it then run in a new batch, with a new listener: should the abandoned test
+     * ever return, its batch goes on running tests nobody listens to any more.
+     *
+     * @return the executor to continue with, a fresh one if a test was abandoned
+     */
+    private ExecutorService runBatch(Class<?> testClass,
+                                     List<TestId> tests,
+                                     ExecutorService executor,
+                                     List<TestOutcome> outcomes,
+                                     long timeoutMs,
+                                     ScheduledExecutorService watchdog) {
+        List<DiscoverySelector> selectors = new ArrayList<>();
+        for (TestId t : tests) {
+            selectors.add(selectorFor(testClass, t));
+        }
+
+        while (!selectors.isEmpty()) {
+            LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
+                    .selectors(selectors)
+                    .build();
+
+            String selector = testClass.getName() + " (" + selectors.size() + " selectors)";
+            TestPlan plan = launcher.discover(request);
+            long count = plan.countTestIdentifiers(TestIdentifier::isTest);
+            long budgetMs = timeoutMs <= 0 ? 0 : timeoutMs * Math.max(count, 1);
+
+            OutcomeListener listener = new OutcomeListener(timeoutMs, watchdog);
+            List<TestOutcome> ran = TestTimeouts.runWithTimeout(executor, budgetMs, selector, LOG_PREFIX, () -> {
+                launcher.execute(plan, listener);
+                return listener.outcomes();
+            });
+            if (ran != null) {
+                report(selector, ran);
+                outcomes.addAll(ran);
+                return executor;
+            }
+
+            // Keep what completed before the batch was abandoned.
+            int abandoned = listener.abandonRunning();
+            ran = listener.outcomes();
+            report(selector, ran);
+            outcomes.addAll(ran);
+            executor = replace(executor);
+            if (abandoned == 0) {
+                // Stuck outside any test (e.g. @BeforeAll): the rest cannot run either.
+                break;
             }
+            selectors = notYetRun(plan, outcomes);
         }
-        Future<TestExecutionSummary> f = executor.submit(task);
-        try {
-            return f.get(timeoutMs, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException e) {
-            f.cancel(true);
-            System.out.println("[JUnit5TestRunner] TIMEOUT after " + timeoutMs + "ms: " + selector);
-            return null;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Test interrupted: " + selector, e);
-        } catch (Exception e) {
-            throw new RuntimeException("Test failed: " + selector, e);
+        return executor;
+    }
+
+    /** Method selectors for the tests of the plan that have no outcome yet. */
+    private static List<DiscoverySelector> notYetRun(TestPlan plan, List<TestOutcome> outcomes) {
+        Set<String> done = new HashSet<>();
+        for (TestOutcome o : outcomes) done.add(o.getSelector());
+        Map<String, DiscoverySelector> pending = new LinkedHashMap<>();
+        for (TestIdentifier root : plan.getRoots()) {
+            for (TestIdentifier id : plan.getDescendants(root)) {
+                if (!id.isTest()) continue;
+                id.getSource()
+                        .filter(MethodSource.class::isInstance)
+                        .map(MethodSource.class::cast)
+                        .filter(ms -> !done.contains(ms.getClassName() + "#" + ms.getMethodName()))
+                        .ifPresent(ms -> pending.putIfAbsent(ms.getClassName() + "#" + ms.getMethodName(),
+                                DiscoverySelectors.selectMethod(ms.getClassName(), ms.getMethodName(),
+                                        ms.getMethodParameterTypes())));
+            }
         }
+        return new ArrayList<>(pending.values());
+    }
+
+    /** The abandoned test still occupies the executor's thread; later tests need a fresh one. */
+    private static ExecutorService replace(ExecutorService executor) {
+        executor.shutdownNow();
+        return TestTimeouts.newExecutor("junit5-runner");
+    }
+
+    private static DiscoverySelector selectorFor(Class<?> testClass, TestId t) {
+        return t.isClassOnly()
+                ? DiscoverySelectors.selectClass(testClass)
+                : DiscoverySelectors.selectMethod(testClass, t.getMethodName());
     }
 
     private Class<?> loadClass(String fqcn) {
@@ -112,13 +207,150 @@ public final class JUnit5TestRunner {
         }
     }
 
-    private void printFailures(String selector, TestExecutionSummary summary) {
-        for (TestExecutionSummary.Failure failure : summary.getFailures()) {
-            String testDisplay = failure.getTestIdentifier().getDisplayName();
-            Throwable ex = failure.getException();
-            String reason = ex != null ? ex.toString() : "Unknown failure";
-            System.out.println("[JUnit5TestRunner] FAILURE in " + selector
-                    + " -> " + testDisplay + " :: " + reason);
+    private void report(String selector, List<TestOutcome> outcomes) {
+        Map<TestOutcome.Status, Long> counts = outcomes.stream()
+                .collect(Collectors.groupingBy(TestOutcome::getStatus, Collectors.counting()));
+        long skipped = counts.getOrDefault(TestOutcome.Status.SKIPPED, 0L);
+        long timedOut = counts.getOrDefault(TestOutcome.Status.TIMEOUT, 0L);
+        long stalled = counts.getOrDefault(TestOutcome.Status.STALLED, 0L);
+        System.out.println("[JUnit5TestRunner] started=" + (outcomes.size() - skipped)
+                + " succeeded=" + counts.getOrDefault(TestOutcome.Status.SUCCESSFUL, 0L)
+                + " failed=" + counts.getOrDefault(TestOutcome.Status.FAILED, 0L)
+                + " skipped=" + skipped
+                + (timedOut > 0 ? " timedOut=" + timedOut : "")
+                + (stalled > 0 ? " stalled=" + stalled : ""));
+        for (TestOutcome o : outcomes) {
+            if (o.getStatus() == TestOutcome.Status.FAILED) {
+                Throwable ex = o.getFailure();
+                String reason = ex != null ? ex.toString() : "Unknown failure";
+                System.out.println("[JUnit5TestRunner] FAILURE in " + selector
+                        + " -> " + o.getSelector() + " :: " + reason);
+            } else if (o.getStatus() == TestOutcome.Status.TIMEOUT || o.getStatus() == TestOutcome.Status.STALLED) {
+                System.out.println(LOG_PREFIX + " " + o.getStatus() + " after " + o.getDurationMs() + "ms: " + o.getSelector());
+            }
+        }
+    }
+
+    /**
+     * Aggregates the outcome and duration of every test of one execution. With a watchdog, a
+     * test still running after timeoutMs is interrupted and reported as TIMEOUT; one the
+     * {@link StallMonitor} found stalled as STALLED.
+     */
+    private static final class OutcomeListener implements TestExecutionListener {
+        private final long timeoutMs;
+        private final ScheduledExecutorService watchdog;
+        private final List<TestOutcome> outcomes = Collections.synchronizedList(new ArrayList<>());
+        private final Map<TestIdentifier, TestDeadline> running = new ConcurrentHashMap<>();
+        private volatile boolean abandoned;
+
+        OutcomeListener(long timeoutMs, ScheduledExecutorService watchdog) {
+            this.timeoutMs = timeoutMs;
+            this.watchdog = watchdog;
+        }
+
+        List<TestOutcome> outcomes() {
+            synchronized (outcomes) {
+                return new ArrayList<>(outcomes);
+            }
+        }
+
+        @Override
+        public void executionStarted(TestIdentifier id) {
+            if (!id.isTest() || abandoned) return;
+            ExitTrap.takeAttempt();
+            NetworkGuard.takeBlocked(null);
+            running.put(id, TestDeadline.start(watchdog, timeoutMs));
+        }
+
+        @Override
+        public void executionFinished(TestIdentifier id, TestExecutionResult result) {
+            if (!id.isTest()) return;
+            TestDeadline deadline = running.remove(id);
+            if (deadline == null || abandoned) {
+                // Abandoned earlier and already recorded; its thread only now got through.
+                if (deadline != null) deadline.abandon();
+                return;
+            }
+            TestOutcome.Status cutShort = deadline.finish();
+            long durationMs = deadline.elapsedMs();
+            Throwable thrown = result.getThrowable().orElse(null);
+            TrappedExitException exit = ExitTrap.takeAttempt();
+            NetworkGuard.takeBlocked(selectorOf(id));
+
+            TestOutcome.Status status;
+            if (cutShort != null) {
+                status = cutShort;
+            } else if (result.getStatus() == TestExecutionResult.Status.FAILED) {
+                status = TestOutcome.Status.FAILED;
+            } else if (exit != null) {
+                // The test swallowed the exception, but it would have ended the JVM.
+                status = TestOutcome.Status.FAILED;
+                thrown = exit;
+            } else if (result.getStatus() == TestExecutionResult.Status.ABORTED) {
+                status = TestOutcome.Status.ABORTED;
+            } else {
+                status = TestOutcome.Status.SUCCESSFUL;
+            }
+            outcomes.add(new TestOutcome(selectorOf(id), status, durationMs, thrown));
+        }
+
+        @Override
+        public void executionSkipped(TestIdentifier id, String reason) {
+            if (!id.isTest() || abandoned) return;
+            outcomes.add(new TestOutcome(selectorOf(id), TestOutcome.Status.SKIPPED, 0, null));
+        }
+
+        /** Records the tests the runner stopped waiting for; later events are ignored. */
+        int abandonRunning() {
+            abandoned = true;
+            int count = 0;
+            for (TestIdentifier id : new ArrayList<>(running.keySet())) {
+                TestDeadline deadline = running.remove(id);
+                if (deadline != null) {
+                    outcomes.add(new TestOutcome(selectorOf(id), deadline.abandon(), deadline.elapsedMs(), null));
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private static String selectorOf(TestIdentifier id) {
+            return id.getSource()
+                    .filter(MethodSource.class::isInstance)
+                    .map(MethodSource.class::cast)
+                    .map(ms -> ms.getClassName() + "#" + ms.getMethodName())
+                    .orElse(id.getDisplayName());
+        }
+    }
+
+    private static final class ListenerAdapter implements TestExecutionListener {
+        private final List<TestListener> listeners;
+
+        ListenerAdapter(List<TestListener> listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void executionStarted(TestIdentifier id) {
+            TestId t = toTestId(id);
+            if (t == null) return;
+            for (TestListener l : listeners) l.testStarted(t);
+        }
+
+        @Override
+        public void executionFinished(TestIdentifier id, TestExecutionResult result) {
+            TestId t = toTestId(id);
+            if (t == null) return;
+            for (TestListener l : listeners) l.testFinished(t);
+        }
+
+        private static TestId toTestId(TestIdentifier id) {
+            if (!id.isTest()) return null;
+            return id.getSource()
+                    .filter(MethodSource.class::isInstance)
+                    .map(MethodSource.class::cast)
+                    .map(ms -> new TestId(ms.getClassName(), ms.getMethodName()))
+                    .orElse(null);
         }
     }
 }
@@ -0,0 +1,12 @@
+package runner;
+
+/**
+ * Thrown instead of opening a connection or resolving a host name while the
+ * {@link NetworkGuard} is on.
+ */
+public final class NetworkBlockedException extends SecurityException {
+
+    NetworkBlockedException(String target) {
+        super("Network access blocked by " + NetworkGuard.NETWORK_GUARD_PROP + ": " + target);
+    }
+}
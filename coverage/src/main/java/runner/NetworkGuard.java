@@ -0,0 +1,114 @@
+package runner;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Opt-in guard against tests that reach for the network (HTTP clients, registries, cluster
+ * SPIs): connections to anything but loopback and host name lookups other than localhost
+ * fail at once with {@link NetworkBlockedException} instead of waiting for a connect or read
+ * timeout. Listening on local ports and loopback connections still work.
+ *
+ * The runners' outcome listeners print the blocked attempts of each test. Vetoed by the
+ * {@link GuardSecurityManager}; installed once per test JVM by the runner mains.
+ */
+public final class NetworkGuard {
+
+    /** Set to true to refuse non-loopback connections and DNS lookups (default false). */
+    public static final String NETWORK_GUARD_PROP = "test.network.guard";
+
+    private static final int MAX_LISTED = 5;
+
+    // Attempts since the last takeBlocked(), in order; only the first few are kept by name.
+    private static final List<String> BLOCKED = new ArrayList<>();
+    private static int blockedCount;
+
+    private NetworkGuard() {
+    }
+
+    /** Starts refusing network access if enabled by {@link #NETWORK_GUARD_PROP}; idempotent. */
+    public static void install() {
+        if (!Boolean.getBoolean(NETWORK_GUARD_PROP)) return;
+        try {
+            GuardSecurityManager.install().guardNetwork = true;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            System.out.println("[NetworkGuard] cannot guard the network on this JVM: " + e);
+        }
+    }
+
+    /**
+     * Prints the attempts blocked since the last call (if any) for the given test and
+     * forgets them. Listeners call it when a test starts (discarding attempts of earlier
+     * tests' leftover threads) with a null selector, and when it finishes.
+     *
+     * @return the number of blocked attempts
+     */
+    static int takeBlocked(String selector) {
+        List<String> targets;
+        int count;
+        synchronized (BLOCKED) {
+            targets = new ArrayList<>(BLOCKED);
+            count = blockedCount;
+            BLOCKED.clear();
+            blockedCount = 0;
+        }
+        if (count > 0 && selector != null) {
+            System.out.println("[NetworkGuard] blocked " + count + " network attempt(s) in " + selector
+                    + ": " + String.join(", ", targets) + (count > targets.size() ? ", ..." : ""));
+        }
+        return count;
+    }
+
+    /** port -1 is a host name lookup. */
+    static void check(String host, int port) {
+        if (isLocal(host)) return;
+        String target = port < 0 ? "lookup " + host : host + ":" + port;
+        synchronized (BLOCKED) {
+            blockedCount++;
+            if (BLOCKED.size() < MAX_LISTED) {
+                BLOCKED.add(target);
+            }
+        }
+        throw new NetworkBlockedException(target);
+    }
+
+    /** Loopback, the wildcard address or a localhost name; decided without a DNS lookup. */
+    static boolean isLocal(String host) {
+        if (host == null || host.isEmpty()) {
+            return true;
+        }
+        String h = host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1) : host;
+        String lower = h.toLowerCase(Locale.ROOT);
+        if (lower.equals("localhost") || lower.endsWith(".localhost")) {
+            return true;
+        }
+        if (!isIpLiteral(h)) {
+            // Any other name needs DNS.
+            return false;
+        }
+        try {
+            // A literal is parsed without a lookup (and without asking the security manager).
+            InetAddress a = InetAddress.getByName(h);
+            return a.isLoopbackAddress() || a.isAnyLocalAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /** Any IPv6 form (it has a colon) or digits and dots; brackets already stripped. */
+    static boolean isIpLiteral(String h) {
+        if (h.indexOf(':') >= 0) {
+            return true;
+        }
+        for (int i = 0; i < h.length(); i++) {
+            char c = h.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return !h.isEmpty();
+    }
+}
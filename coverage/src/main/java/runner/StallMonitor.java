@@ -0,0 +1,245 @@
+package runner;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects tests that can no longer make progress, so they do not cost the whole test
+ * timeout. A test is stalled when its thread is part of (or blocked on a lock owned by) a
+ * deadlock found by {@link ThreadMXBean#findDeadlockedThreads()}: provably stuck.
+ *
+ * With {@link #IDLE_PROP} a heuristic is added: the test thread has been parked without a
+ * timeout (WAITING/BLOCKED) for {@link #IDLE_MS_PROP} while no other thread of the JVM (JVM
+ * system threads aside) used CPU, was runnable (possibly in native I/O) or was in a timed wait
+ * that could still wake it. It can mistake a slow external event for a stall, hence opt-in.
+ *
+ * A stalled test is interrupted. If it is still stuck {@link #STALL_MS_PROP} later, its runner
+ * thread is reported to {@link TestTimeouts} so the runner abandons it right away.
+ *
+ * Installed once per test JVM by the runner mains; without it nothing is monitored.
+ */
+public final class StallMonitor {
+
+    /** How long an interrupted stalled test may take to come free before it is abandoned, in ms (0 = no monitor). */
+    public static final String STALL_MS_PROP = "test.stall.ms";
+    public static final long DEFAULT_STALL_MS = 1_500;
+    /** Also treat a test parked with no progress anywhere as stalled (default false). */
+    public static final String IDLE_PROP = "test.stall.idle";
+    /** How long a test must sit parked with no progress anywhere under {@link #IDLE_PROP}, in ms. */
+    public static final String IDLE_MS_PROP = "test.stall.idle.ms";
+    public static final long DEFAULT_IDLE_MS = 10_000;
+
+    private static final long POLL_MS = 200;
+    /** "No progress": other threads used less than this share of one CPU during the window. */
+    private static final double IDLE_CPU_SHARE = 0.05;
+
+    // Name prefix of the one JVM system thread that does work for tests: it completes Process.waitFor.
+    private static final String PROCESS_REAPER = "process reaper";
+
+    private static volatile StallMonitor instance;
+
+    // Tool threads (coordinators, watchdogs) whose timed waits must not count as pending work.
+    private static final Set<Thread> IGNORED =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private final long stallMs;
+    private final long idleMs;   // 0 = deadlocks only
+    private final ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Long> lastCpu = new ConcurrentHashMap<>();
+
+    private StallMonitor(long stallMs, long idleMs) {
+        this.stallMs = stallMs;
+        this.idleMs = idleMs;
+    }
+
+    /** Starts the monitor thread unless disabled by {@link #STALL_MS_PROP}; idempotent. */
+    public static synchronized void install() {
+        if (instance != null) return;
+        long stallMs = Long.getLong(STALL_MS_PROP, DEFAULT_STALL_MS);
+        if (stallMs <= 0) return;
+
+        long idleMs = Boolean.getBoolean(IDLE_PROP) ? Math.max(Long.getLong(IDLE_MS_PROP, DEFAULT_IDLE_MS), POLL_MS) : 0;
+        StallMonitor m = new StallMonitor(stallMs, idleMs);
+        Thread t = new Thread(m::loop, "stall-monitor");
+        t.setDaemon(true);
+        ignore(t);
+        t.start();
+        instance = m;
+    }
+
+    /** Excludes a tool thread from the "other threads are idle" check. */
+    static void ignore(Thread t) {
+        IGNORED.add(t);
+    }
+
+    /** Starts watching the given test thread; null if no monitor is installed. */
+    static Watch watch(Thread testThread, Runnable onStall) {
+        StallMonitor m = instance;
+        if (m == null) return null;
+        Watch w = new Watch(m, testThread, onStall);
+        m.watches.add(w);
+        return w;
+    }
+
+    static final class Watch {
+        private final StallMonitor monitor;
+        private final Thread thread;
+        private final Runnable onStall;
+        private long parkedSince;      // 0 = running
+        private long otherCpuAtPark;
+        private long stalledAt;        // 0 = not stalled
+
+        private Watch(StallMonitor monitor, Thread thread, Runnable onStall) {
+            this.monitor = monitor;
+            this.thread = thread;
+            this.onStall = onStall;
+        }
+
+        void close() {
+            monitor.watches.remove(this);
+        }
+    }
+
+    private void loop() {
+        while (true) {
+            try {
+                Thread.sleep(POLL_MS);
+                if (!watches.isEmpty()) {
+                    poll(System.currentTimeMillis());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // Monitoring must never break the run.
+                System.out.println("[StallMonitor] " + e);
+            }
+        }
+    }
+
+    private void poll(long now) {
+        long[] ids = mx.findDeadlockedThreads();
+        Set<Long> deadlocked = new HashSet<>();
+        if (ids != null) {
+            for (long id : ids) deadlocked.add(id);
+        }
+        Activity others = null;
+        if (idleMs > 0) {
+            Set<Long> watched = new HashSet<>();
+            for (Watch w : watches) watched.add(w.thread.getId());
+            others = otherActivity(watched);
+        }
+
+        for (Watch w : watches) {
+            ThreadInfo info = mx.getThreadInfo(w.thread.getId());
+            if (info == null) {
+                w.close();
+                continue;
+            }
+            String reason = stallReason(w, info, deadlocked, others, now);
+            if (reason == null) {
+                w.stalledAt = 0;
+                continue;
+            }
+            if (w.stalledAt == 0) {
+                w.stalledAt = now;
+                System.out.println("[StallMonitor] " + w.thread.getName() + " " + reason + ", interrupting");
+                w.onStall.run();
+            } else if (now - w.stalledAt >= stallMs) {
+                // The interrupt did not free it (monitor deadlock, uninterruptible wait).
+                System.out.println("[StallMonitor] " + w.thread.getName() + " still " + reason + ", abandoning");
+                TestTimeouts.markStuck(w.thread);
+                w.close();
+            }
+        }
+    }
+
+    private String stallReason(Watch w, ThreadInfo info, Set<Long> deadlocked, Activity others, long now) {
+        if (deadlocked.contains(info.getThreadId())
+                || (info.getLockOwnerId() != -1 && deadlocked.contains(info.getLockOwnerId()))) {
+            return "deadlocked on " + info.getLockName();
+        }
+        if (others == null) {
+            return null;
+        }
+
+        Thread.State state = info.getThreadState();
+        if (state != Thread.State.WAITING && state != Thread.State.BLOCKED) {
+            w.parkedSince = 0;
+            return null;
+        }
+        if (w.parkedSince == 0 || others.pending) {
+            // A timed wait or runnable (e.g. native I/O) thread elsewhere may still wake the test.
+            w.parkedSince = now;
+            w.otherCpuAtPark = others.cpuNanos;
+            return null;
+        }
+        long window = now - w.parkedSince;
+        long busyNanos = others.cpuNanos - w.otherCpuAtPark;
+        if (window >= idleMs && busyNanos < IDLE_CPU_SHARE * window * 1_000_000) {
+            return "parked on " + info.getLockName() + " for " + window + "ms with no progress";
+        }
+        if (busyNanos >= IDLE_CPU_SHARE * window * 1_000_000) {
+            // Others are working; restart the window.
+            w.parkedSince = now;
+            w.otherCpuAtPark = others.cpuNanos;
+        }
+        return null;
+    }
+
+    private static final class Activity {
+        long cpuNanos;
+        boolean pending;
+    }
+
+    /**
+     * CPU time used so far and pending work (timed waits, runnable threads) of the threads
+     * other than the watched ones and the tool threads: those of any thread group, e.g.
+     * common-pool workers, except JVM system threads (reference handler, cleaner, compiler
+     * threads) other than the process reaper.
+     */
+    private Activity otherActivity(Set<Long> watched) {
+        Activity a = new Activity();
+        for (Thread t : applicationThreads()) {
+            if (watched.contains(t.getId()) || IGNORED.contains(t)) continue;
+            Thread.State state = t.getState();
+            if (state == Thread.State.TIMED_WAITING || state == Thread.State.RUNNABLE) {
+                a.pending = true;
+            }
+            long cpu = mx.isThreadCpuTimeSupported() ? mx.getThreadCpuTime(t.getId()) : -1;
+            if (cpu >= 0) {
+                // Threads that exited keep contributing their last value, so the sum never drops.
+                lastCpu.put(t.getId(), cpu);
+            }
+        }
+        for (long cpu : lastCpu.values()) a.cpuNanos += cpu;
+        return a;
+    }
+
+    private static Set<Thread> applicationThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] all = new Thread[root.activeCount() + 16];
+        int n = root.enumerate(all, true);
+        Set<Thread> threads = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            Thread t = all[i];
+            ThreadGroup g = t.getThreadGroup();
+            boolean system = g != null && (g.getParent() == null || "InnocuousThreadGroup".equals(g.getName()));
+            if (g == null || (system && !t.getName().startsWith(PROCESS_REAPER))) {
+                continue;   // exited, or a JVM system thread
+            }
+            threads.add(t);
+        }
+        return threads;
+    }
+}
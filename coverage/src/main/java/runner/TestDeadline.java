@@ -0,0 +1,82 @@
+package runner;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-test deadline: created when a test starts, on the test thread, it interrupts that
+ * thread once timeoutMs have passed (batched runs) or when the {@link StallMonitor} finds the
+ * test stalled, unless the test finished first. Used by the runners' outcome listeners.
+ */
+final class TestDeadline {
+
+    private final Thread thread = Thread.currentThread();
+    private final long startNanos = System.nanoTime();
+    private ScheduledFuture<?> expiry;
+    private StallMonitor.Watch stallWatch;
+    private boolean finished;
+    private TestOutcome.Status cutShort;   // TIMEOUT or STALLED once interrupted
+
+    /** Starts timing the current test; without a watchdog (or timeoutMs <= 0) there is no deadline. */
+    static TestDeadline start(ScheduledExecutorService watchdog, long timeoutMs) {
+        TestDeadline d = new TestDeadline();
+        StallMonitor.Watch w = StallMonitor.watch(d.thread, () -> d.interrupt(TestOutcome.Status.STALLED));
+        ScheduledFuture<?> f = watchdog != null && timeoutMs > 0
+                ? watchdog.schedule(() -> d.interrupt(TestOutcome.Status.TIMEOUT), timeoutMs, TimeUnit.MILLISECONDS)
+                : null;
+        synchronized (d) {
+            d.stallWatch = w;
+            d.expiry = f;
+        }
+        return d;
+    }
+
+    private synchronized void interrupt(TestOutcome.Status reason) {
+        if (!finished && cutShort == null) {
+            cutShort = reason;
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Marks the test finished, after which no interrupt can follow. If it had been
+     * interrupted, the interrupt is cleared when called on the test thread, so it cannot leak
+     * into the next test.
+     *
+     * @return TIMEOUT or STALLED if the test was cut short, otherwise null
+     */
+    TestOutcome.Status finish() {
+        TestOutcome.Status reason;
+        synchronized (this) {
+            finished = true;
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+            if (stallWatch != null) {
+                stallWatch.close();
+            }
+            reason = cutShort;
+        }
+        if (reason != null && Thread.currentThread() == thread) {
+            Thread.interrupted();
+        }
+        return reason;
+    }
+
+    /** For a test the runner stopped waiting for: why, STALLED or (by default) TIMEOUT. */
+    synchronized TestOutcome.Status abandon() {
+        finished = true;
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+        if (stallWatch != null) {
+            stallWatch.close();
+        }
+        return cutShort == TestOutcome.Status.STALLED ? cutShort : TestOutcome.Status.TIMEOUT;
+    }
+
+    long elapsedMs() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,17 @@
+package runner;
+
+import model.TestId;
+
+/**
+ * Framework-neutral test lifecycle callbacks, adapted from JUnit 4 RunListener and
+ * JUnit Platform TestExecutionListener events by the runners.
+ * Callbacks arrive on the thread that executes the test.
+ */
+public interface TestListener {
+
+    default void testStarted(TestId test) {
+    }
+
+    default void testFinished(TestId test) {
+    }
+}
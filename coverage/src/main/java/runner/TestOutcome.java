@@ -0,0 +1,32 @@
+package runner;
+
+/**
+ * Result of one executed (or skipped) test method, as aggregated by the runners.
+ */
+public final class TestOutcome {
+
+    public enum Status { SUCCESSFUL, FAILED, ABORTED, SKIPPED, TIMEOUT, STALLED }
+
+    private final String selector;     // fqcn#method, or the display name if there is no method source
+    private final Status status;
+    private final long durationMs;
+    private final Throwable failure;    // null unless FAILED/ABORTED (or the interrupted test threw)
+
+    public TestOutcome(String selector, Status status, long durationMs, Throwable failure) {
+        this.selector = selector;
+        this.status = status;
+        this.durationMs = durationMs;
+        this.failure = failure;
+    }
+
+    public String getSelector() { return selector; }
+    public Status getStatus() { return status; }
+    public long getDurationMs() { return durationMs; }
+    public Throwable getFailure() { return failure; }
+
+    @Override
+    public String toString() {
+        return selector + " " + status + " (" + durationMs + "ms)"
+                + (failure != null ? " :: " + failure : "");
+    }
+}
@@ -1,9 +1,20 @@
 package runner;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class TestTimeouts {
 
@@ -11,6 +22,16 @@ public final class TestTimeouts {
     public static final String TIMEOUT_ENV = "TEST_TIMEOUT_MS";
     public static final long DEFAULT_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
 
+    // Threads handed out by newExecutor; a timed-out test keeps its thread alive after cancel().
+    private static final Set<Thread> RUNNER_THREADS =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    // Runner threads the StallMonitor gave up on; their runner stops waiting for them.
+    private static final Set<Thread> STUCK_THREADS =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private static final long POLL_MS = 100;
+
     private TestTimeouts() {
     }
 
@@ -35,8 +56,100 @@ public final class TestTimeouts {
             Thread t = new Thread(r);
             t.setDaemon(true);
             t.setName(namePrefix + "-" + t.getId());
+            RUNNER_THREADS.add(t);
             return t;
         };
         return Executors.newSingleThreadExecutor(tf);
     }
+
+    /** Timer thread for {@link TestDeadline}s of batched runs. */
+    static ScheduledExecutorService newWatchdog(String name) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            StallMonitor.ignore(t);
+            return t;
+        });
+    }
+
+    /** Called by the {@link StallMonitor} for a test thread that an interrupt did not free. */
+    static void markStuck(Thread t) {
+        STUCK_THREADS.add(t);
+    }
+
+    /**
+     * Runs task on the executor and waits up to timeoutMs for it; with timeoutMs <= 0 it runs
+     * inline, unbounded. Returns null if the task was abandoned, either after the timeout or
+     * as soon as its thread is marked stuck. An abandoned task keeps the executor's only
+     * thread, so callers must not submit to that executor again.
+     */
+    static <T> T runWithTimeout(ExecutorService executor,
+                                long timeoutMs,
+                                String selector,
+                                String logPrefix,
+                                Callable<T> task) {
+        if (timeoutMs <= 0) {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new RuntimeException("Test failed: " + selector, e);
+            }
+        }
+        // The waiting thread is not test work for the stall check.
+        StallMonitor.ignore(Thread.currentThread());
+        AtomicReference<Thread> runnerThread = new AtomicReference<>();
+        Future<T> f = executor.submit(() -> {
+            runnerThread.set(Thread.currentThread());
+            return task.call();
+        });
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            while (true) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    f.cancel(true);
+                    System.out.println(logPrefix + " TIMEOUT after " + timeoutMs + "ms: " + selector);
+                    return null;
+                }
+                try {
+                    return f.get(Math.min(left, POLL_MS), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    Thread t = runnerThread.get();
+                    if (t != null && STUCK_THREADS.remove(t)) {
+                        f.cancel(true);
+                        System.out.println(logPrefix + " STALLED: " + selector);
+                        return null;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Test interrupted: " + selector, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Test failed: " + selector, e);
+        }
+    }
+
+    /**
+     * Waits up to graceMs for all runner threads to terminate.
+     *
+     * @return true if a runner thread is still alive, i.e. a cancelled test ignored the interrupt
+     */
+    public static boolean hasRunawayThreads(long graceMs) throws InterruptedException {
+        List<Thread> threads;
+        synchronized (RUNNER_THREADS) {
+            threads = new ArrayList<>(RUNNER_THREADS);
+        }
+        long deadline = System.currentTimeMillis() + graceMs;
+        for (Thread t : threads) {
+            long left = deadline - System.currentTimeMillis();
+            if (left > 0) {
+                t.join(left);
+            }
+            if (t.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,19 @@
+package runner;
+
+/**
+ * Thrown instead of terminating the test JVM when a test calls System.exit or Runtime.halt
+ * (see {@link ExitTrap}).
+ */
+public final class TrappedExitException extends SecurityException {
+
+    private final int status;
+
+    TrappedExitException(int status) {
+        super("Test attempted to exit the JVM with status " + status);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,44 @@
+package app;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BytecodeTestDiscovererTest {
+
+    public static class JUnit4Style {
+        @Test public void b() { }
+        @Test public void a() { }
+        public void helper() { }
+    }
+
+    public static class JUnit5Style {
+        @org.junit.jupiter.api.Test void plain() { }
+        @org.junit.jupiter.api.RepeatedTest(2) void repeated() { }
+        @org.junit.jupiter.params.ParameterizedTest
+        @org.junit.jupiter.params.provider.ValueSource(ints = 1)
+        void param(int x) { }
+        // JUnit 5 wins: like ListTests, JUnit 4 methods are not listed next to JUnit 5 ones.
+        @Test public void legacy() { }
+    }
+
+    @Test
+    public void listsJUnit4TestsSorted() throws Exception {
+        assertEquals(List.of("a", "b"), BytecodeTestDiscoverer.list(bytesOf(JUnit4Style.class)));
+    }
+
+    @Test
+    public void prefersJUnit5Annotations() throws Exception {
+        assertEquals(List.of("param", "plain", "repeated"), BytecodeTestDiscoverer.list(bytesOf(JUnit5Style.class)));
+    }
+
+    private static byte[] bytesOf(Class<?> c) throws Exception {
+        String resource = "/" + c.getName().replace('.', '/') + ".class";
+        try (InputStream in = BytecodeTestDiscovererTest.class.getResourceAsStream(resource)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package app;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CandidatePrioritizerTest {
+
+    public static class Target {
+        public int a() { return 1; }
+        public int a(int x) { return x; }
+        public int b() { return 2; }
+    }
+
+    public static class Calls {
+        public int twoMethods(Target t) { return t.a() + t.a() + t.b(); }
+        public int overloads(Target t) { return t.a() + t.a(3); }
+        public int noTarget(String s) { return s.length() + s.trim().length(); }
+    }
+
+    @Test
+    public void signalsAreScaledByTheirLargestValue() {
+        CandidatePrioritizer p = new CandidatePrioritizer()
+                .signal("calls", Map.of("x", 10, "y", 5))
+                .signal("probes", Map.of("x", 100, "y", 400));
+
+        // x: (1 + 0.25) / 2, y: (0.5 + 1) / 2; unscaled sums would put x first.
+        assertEquals(List.of("y", "x"), p.order(List.of("x", "y")));
+    }
+
+    @Test
+    public void scoreIsTheAverageOverTheSignalsPresent() {
+        CandidatePrioritizer p = new CandidatePrioritizer()
+                .signal("calls", Map.of("p", 4, "q", 2))
+                .signal("history", Map.of("q", 10, "r", 10));
+
+        // p: 1 (calls only), r: 1 (history only), q: (0.5 + 1) / 2; a sum would rank q first.
+        assertEquals(List.of("r", "p", "q"), p.order(List.of("q", "r", "p")));
+    }
+
+    @Test
+    public void tiesKeepTheCandidateOrder() {
+        CandidatePrioritizer p = new CandidatePrioritizer()
+                .signal("calls", Map.of("a", 3, "b", 3, "c", 3, "d", 1));
+
+        assertEquals(List.of("c", "a", "b", "d"), p.order(List.of("c", "d", "a", "b")));
+    }
+
+    @Test
+    public void candidatesWithoutSignalGoLastInTheirOrder() {
+        CandidatePrioritizer p = new CandidatePrioritizer()
+                .signal("calls", Map.of("x", 0, "y", 3))
+                .signal("empty", Map.of());
+
+        // A zero signal still ranks above no signal at all; an all-zero or empty signal is harmless.
+        assertEquals(List.of("y", "x", "n1", "n2"), p.order(List.of("n1", "x", "n2", "y")));
+        assertEquals(Set.of("calls"), p.signalNames());
+        assertEquals(List.of("z", "n"), new CandidatePrioritizer()
+                .signal("zero", Map.of("z", 0))
+                .order(List.of("n", "z")));
+    }
+
+    @Test
+    public void referencedMethodsCountsDistinctAnalyzedMethodsPerTestMethod() throws Exception {
+        File testClasses = new File(CandidatePrioritizerTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        String calls = Calls.class.getName();
+
+        Map<String, Integer> counts = CandidatePrioritizer.referencedMethods(testClasses, calls,
+                Set.of(Target.class.getName().replace('.', '/')));
+
+        assertEquals(Integer.valueOf(2), counts.get(calls + "#twoMethods"));
+        assertEquals(Integer.valueOf(2), counts.get(calls + "#overloads"));
+        assertEquals(Integer.valueOf(0), counts.get(calls + "#noTarget"));
+        assertTrue(counts.containsKey(calls + "#<init>"));
+        assertNull(CandidatePrioritizer.referencedMethods(testClasses, "app.NoSuchTest", Set.of()));
+    }
+}
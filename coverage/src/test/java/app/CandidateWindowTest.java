@@ -0,0 +1,118 @@
+package app;
+
+import io.FilterJournal;
+import jacoco.TestDelta;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CandidateWindowTest {
+
+    private static final int CANDIDATES = 12;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final String header = FilterJournal.header("pkg.ManualTest", "pkg.Agt_ESTest",
+            new ExecutionDataStore(), List.of("test0"));
+
+    @Test
+    public void outOfOrderCandidatesReplayLikeSequentialOnes() throws Exception {
+        List<Integer> finished = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger replaying = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+
+        List<String> sequential = replay(1, k -> units(k));
+        List<String> parallel = replay(3, k -> {
+            maxAhead.accumulateAndGet(k - replaying.get(), Math::max);
+            // Later candidates of the window finish first.
+            Thread.sleep(20L * (CANDIDATES - k));
+            finished.add(k);
+            return units(k);
+        }, replaying);
+
+        assertEquals(sequential, parallel);
+        assertNotEquals("candidates finished in index order", sortedCopy(finished), finished);
+        assertTrue("window ran " + maxAhead.get() + " ahead", maxAhead.get() < 2 * 3);
+    }
+
+    @Test
+    public void evaluationFailuresSurfaceAtTheirIndex() throws Exception {
+        try (CandidateWindow<Integer> window = new CandidateWindow<>(0, 4, 2, k -> {
+            if (k == 2) throw new IOException("fork failed");
+            return k;
+        })) {
+            assertEquals(Integer.valueOf(0), window.take(0));
+            assertEquals(Integer.valueOf(1), window.take(1));
+            try {
+                window.take(2);
+                fail("failure of candidate 2 must be rethrown");
+            } catch (IOException e) {
+                assertEquals("fork failed", e.getMessage());
+            }
+        }
+    }
+
+    /** Units a candidate covers: overlapping ranges, so later candidates add less and less. */
+    private static Set<Integer> units(int k) {
+        Set<Integer> units = new HashSet<>();
+        if (k % 5 == 4) return units;   // hits nothing
+        for (int u = k; u < k + 3 + (k % 3); u++) units.add(u % 8);
+        return units;
+    }
+
+    private List<String> replay(int parallelism, CandidateWindow.Evaluation<Set<Integer>> evaluation) throws Exception {
+        return replay(parallelism, evaluation, new AtomicInteger());
+    }
+
+    /** The keep/drop replay of CoverageFilterApp over unit sets; returns the journal read back. */
+    private List<String> replay(int parallelism, CandidateWindow.Evaluation<Set<Integer>> evaluation,
+                                AtomicInteger replaying) throws Exception {
+        File file = new File(tmp.newFolder(), FilterJournal.FILE_NAME);
+        Set<Integer> current = new HashSet<>();
+        try (FilterJournal journal = FilterJournal.create(file, header, FilterJournal.Restored.NONE);
+             CandidateWindow<Set<Integer>> window = new CandidateWindow<>(0, CANDIDATES, parallelism, evaluation)) {
+            for (int i = 0; i < CANDIDATES; i++) {
+                replaying.set(i);
+                Set<Integer> cand = window.take(i);
+                TestDelta td = new TestDelta("pkg.Agt_ESTest#test" + i, cand.size(), 0, 0, 0);
+                FilterJournal.Decision decision;
+                if (cand.isEmpty()) {
+                    decision = FilterJournal.Decision.FAST_DROP;
+                } else if (current.addAll(cand)) {
+                    decision = FilterJournal.Decision.KEEP;
+                } else {
+                    decision = FilterJournal.Decision.DROP;
+                }
+                journal.candidate(i, td, decision, null);
+            }
+        }
+        List<String> entries = new ArrayList<>();
+        for (FilterJournal.Entry e : FilterJournal.read(file, header).getEntries()) {
+            entries.add(e.getIndex() + " " + e.getTestDelta().getTestSelector() + " " + e.getDecision());
+        }
+        assertEquals(CANDIDATES, entries.size());
+        return entries;
+    }
+
+    private static List<Integer> sortedCopy(List<Integer> list) {
+        List<Integer> sorted = new ArrayList<>(list);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,198 @@
+package app;
+
+import io.ContentCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import runner.TestOutcome;
+import runner.TestOutcome.Status;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoverageCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final String savedCacheDir = System.getProperty(ContentCache.CACHE_DIR_PROP);
+    private final String savedCacheProp = System.getProperty(CoverageCache.CACHE_PROP);
+    private File testClasses;
+    private String selector;
+
+    @Before
+    public void emptyCache() throws IOException {
+        System.setProperty(ContentCache.CACHE_DIR_PROP, tmp.newFolder("cache").getPath());
+        System.clearProperty(CoverageCache.CACHE_PROP);
+        testClasses = tmp.newFolder("test-classes");
+        copy(Sample.class, testClasses);
+        selector = Sample.class.getName() + "#test0";
+    }
+
+    @After
+    public void restoreProperties() {
+        restore(ContentCache.CACHE_DIR_PROP, savedCacheDir);
+        restore(CoverageCache.CACHE_PROP, savedCacheProp);
+    }
+
+    public static class Sample {
+        @Test public void test0() { }
+    }
+
+    /** Writes a distinct exec file per fork and reports the given status for its selectors. */
+    private final class StubForks implements CoverageCache.Forks {
+        String fingerprint = "sut-1";
+        Status status = Status.SUCCESSFUL;
+        final List<String> forked = new ArrayList<>();
+
+        @Override
+        public String testClassesPath() {
+            return testClasses.getPath();
+        }
+
+        @Override
+        public String coverageFingerprint() {
+            return fingerprint;
+        }
+
+        @Override
+        public Map<String, Status> runSelectors(List<String> selectors, File execFile, boolean append)
+                throws IOException {
+            forked.addAll(selectors);
+            Files.write(execFile.toPath(), ("exec of fork " + forked.size()).getBytes(StandardCharsets.UTF_8));
+            return Map.of(selectors.get(0), status);
+        }
+    }
+
+    @Test
+    public void durationsKeepTheWorstStatusPerTest() throws IOException {
+        File file = new File(tmp.getRoot(), "x.exec.durations");
+        RunMany.writeDurations(file, List.of(
+                new TestOutcome("T#ok", Status.SUCCESSFUL, 10, null),
+                new TestOutcome("T#param", Status.SUCCESSFUL, 5, null),
+                new TestOutcome("T#param", Status.TIMEOUT, 500, null),
+                new TestOutcome("T#param", Status.FAILED, 7, null),
+                new TestOutcome("T#skip", Status.SKIPPED, 0, null),
+                new TestOutcome("T#skip", Status.SUCCESSFUL, 3, null)));
+
+        assertEquals(List.of("T#ok\t10\tSUCCESSFUL", "T#param\t12\tTIMEOUT", "T#skip\t3\tSUCCESSFUL"),
+                Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        assertEquals(Map.of("T#ok", Status.SUCCESSFUL, "T#param", Status.TIMEOUT, "T#skip", Status.SUCCESSFUL),
+                RunMany.readOutcomes(file));
+        assertTrue(RunMany.readOutcomes(new File(tmp.getRoot(), "missing")).isEmpty());
+    }
+
+    @Test
+    public void onlyFinishedForksAreCacheable() {
+        assertTrue(CoverageCache.cacheable(Map.of("T#a", Status.SUCCESSFUL, "T#b", Status.SKIPPED,
+                "T#c", Status.ABORTED)));
+        assertFalse(CoverageCache.cacheable(Map.of()));
+        for (Status bad : List.of(Status.FAILED, Status.TIMEOUT, Status.STALLED)) {
+            assertFalse(bad.name(), CoverageCache.cacheable(Map.of("T#a", Status.SUCCESSFUL, "T#b", bad)));
+        }
+    }
+
+    @Test
+    public void unchangedSelectorIsAHitWithTheStoredExecAndOutcomes() throws Exception {
+        StubForks forks = new StubForks();
+        forks.status = Status.ABORTED;
+        File first = new File(tmp.getRoot(), "first.exec");
+        File second = new File(tmp.getRoot(), "out/second.exec");
+
+        Map<String, Status> ran = new CoverageCache(forks).runSelector(selector, first);
+        CoverageCache later = new CoverageCache(forks);
+        Map<String, Status> cached = later.runSelector(selector, second);
+
+        assertEquals(List.of(selector), forks.forked);
+        assertEquals(Map.of(selector, Status.ABORTED), ran);
+        assertEquals(ran, cached);
+        assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(second.toPath()));
+        assertEquals(1, later.hits());
+        assertEquals(0, later.misses());
+    }
+
+    @Test
+    public void changedTestClassesOrFingerprintMiss() throws Exception {
+        StubForks forks = new StubForks();
+        File exec = new File(tmp.getRoot(), "x.exec");
+        new CoverageCache(forks).runSelector(selector, exec);
+
+        // A helper the test may call changed, not the test class itself.
+        Files.writeString(new File(testClasses, "fixture.txt").toPath(), "v2", StandardCharsets.UTF_8);
+        CoverageCache afterTestChange = new CoverageCache(forks);
+        afterTestChange.runSelector(selector, exec);
+        assertEquals(1, afterTestChange.misses());
+
+        forks.fingerprint = "sut-2";
+        CoverageCache afterSutChange = new CoverageCache(forks);
+        afterSutChange.runSelector(selector, exec);
+        assertEquals(1, afterSutChange.misses());
+
+        assertEquals(List.of(selector, selector, selector), forks.forked);
+        CoverageCache unchanged = new CoverageCache(forks);
+        unchanged.runSelector(selector, exec);
+        assertEquals(1, unchanged.hits());
+    }
+
+    @Test
+    public void failedOrTimedOutForksAreNeverStored() throws Exception {
+        for (Status bad : List.of(Status.FAILED, Status.TIMEOUT, Status.STALLED)) {
+            StubForks forks = new StubForks();
+            forks.status = bad;
+            forks.fingerprint = "sut-" + bad;
+            File exec = new File(tmp.getRoot(), bad + ".exec");
+
+            assertEquals(Map.of(selector, bad), new CoverageCache(forks).runSelector(selector, exec));
+            CoverageCache again = new CoverageCache(forks);
+            assertEquals(Map.of(selector, bad), again.runSelector(selector, exec));
+            assertEquals(bad.name(), 2, forks.forked.size());
+            assertEquals(bad.name(), 0, again.hits());
+        }
+    }
+
+    @Test
+    public void selectorsOutsideTheTestClassesAndADisabledCacheAlwaysFork() throws Exception {
+        StubForks forks = new StubForks();
+        File exec = new File(tmp.getRoot(), "x.exec");
+        CoverageCache cache = new CoverageCache(forks);
+        cache.runSelector("pkg.Elsewhere#test0", exec);
+        cache.runSelector("pkg.Elsewhere#test0", exec);
+        assertEquals(0, cache.hits());
+
+        cache.runSelector(selector, exec);
+        System.setProperty(CoverageCache.CACHE_PROP, "false");
+        CoverageCache disabled = new CoverageCache(forks);
+        disabled.runSelector(selector, exec);
+        assertFalse(disabled.isEnabled());
+        assertEquals(0, disabled.hits());
+        assertEquals(0, disabled.misses());
+        assertEquals(4, forks.forked.size());
+    }
+
+    private static void copy(Class<?> type, File classes) throws IOException {
+        String resource = type.getName().replace('.', '/') + ".class";
+        File target = new File(classes, resource);
+        target.getParentFile().mkdirs();
+        try (InputStream in = type.getResourceAsStream("/" + resource)) {
+            Files.write(target.toPath(), in.readAllBytes());
+        }
+    }
+
+    private static void restore(String name, String value) {
+        if (value == null) System.clearProperty(name);
+        else System.setProperty(name, value);
+    }
+}
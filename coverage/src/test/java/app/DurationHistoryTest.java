@@ -0,0 +1,97 @@
+package app;
+
+import io.ContentCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class DurationHistoryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final String savedCacheDir = System.getProperty(ContentCache.CACHE_DIR_PROP);
+    private DurationHistory history;
+
+    @Before
+    public void emptyHistory() throws IOException {
+        System.setProperty(ContentCache.CACHE_DIR_PROP, tmp.newFolder("cache").getPath());
+        history = DurationHistory.load(tmp.newFolder("tests").getPath());
+    }
+
+    @After
+    public void restoreCacheDir() {
+        if (savedCacheDir == null) System.clearProperty(ContentCache.CACHE_DIR_PROP);
+        else System.setProperty(ContentCache.CACHE_DIR_PROP, savedCacheDir);
+    }
+
+    @Test
+    public void budgetIsClampedToTheMinimumAndTheFallback() {
+        history.record("pkg.A#fast", 40);
+        history.record("pkg.A#slow", 2_000);
+
+        assertEquals(DurationHistory.MIN_BUDGET_MS, history.budgetMs("pkg.A#fast", 3.0, 120_000));
+        assertEquals(6_000, history.budgetMs("pkg.A#slow", 3.0, 120_000));
+        assertEquals(5_000, history.budgetMs("pkg.A#slow", 3.0, 5_000));
+        assertEquals("unbounded fallback", 6_000, history.budgetMs("pkg.A#slow", 3.0, 0));
+        assertEquals("no history", 120_000, history.budgetMs("pkg.A#new", 3.0, 120_000));
+        assertEquals(0, history.budgetMs("pkg.A#new", 3.0, 0));
+    }
+
+    @Test
+    public void classTotalSumsTheMethodsOfThatClassOnly() {
+        assertEquals(-1, history.classTotalMs("pkg.A"));
+        history.record("pkg.A#one", 100);
+        history.record("pkg.A#two", 250);
+        history.record("pkg.AB#one", 1_000);
+        history.record("pkg.A#two", 350);   // smoothed: (250 + 350) / 2
+
+        assertEquals(400, history.classTotalMs("pkg.A"));
+        assertEquals(1_000, history.classTotalMs("pkg.AB"));
+        assertEquals(-1, history.classTotalMs("pkg.B"));
+    }
+
+    @Test
+    public void recordAllSkipsTestsThatDidNotComplete() throws IOException {
+        File durations = tmp.newFile("durations.tsv");
+        Files.writeString(durations.toPath(), String.join("\n",
+                "pkg.A#ok\t100\tSUCCESSFUL",
+                "pkg.A#failed\t200\tFAILED",
+                "pkg.A#aborted\t300\tABORTED",
+                "pkg.A#skipped\t400\tSKIPPED",
+                "pkg.A#timeout\t500\tTIMEOUT",
+                "pkg.A#stalled\t600\tSTALLED",
+                "pkg.A#noStatus\t700",
+                "\t800\tSUCCESSFUL",
+                "garbage") + "\n", StandardCharsets.UTF_8);
+
+        history.recordAll(durations);
+
+        assertEquals(100, history.observedMs("pkg.A#ok"));
+        assertEquals(200, history.observedMs("pkg.A#failed"));
+        assertEquals(300, history.observedMs("pkg.A#aborted"));
+        assertEquals(-1, history.observedMs("pkg.A#skipped"));
+        assertEquals(-1, history.observedMs("pkg.A#timeout"));
+        assertEquals(-1, history.observedMs("pkg.A#stalled"));
+        assertEquals(700, history.observedMs("pkg.A#noStatus"));
+        assertEquals(1_300, history.classTotalMs("pkg.A"));
+    }
+
+    @Test
+    public void savedHistoryIsReloaded() throws IOException {
+        history.record("pkg.A#one", 100);
+        history.save();
+
+        DurationHistory reloaded = DurationHistory.load(new File(tmp.getRoot(), "tests").getPath());
+        assertEquals(100, reloaded.observedMs("pkg.A#one"));
+    }
+}
@@ -0,0 +1,128 @@
+package app;
+
+import io.CsvReportWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ForkSupervisorTest {
+
+    private static final long DEADLINE_MS = 500;
+    private static final List<String> SELECTORS = List.of("pkg.Agt_ESTest#test1", "pkg.Agt_ESTest#test2");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** A hung fork: starts a child process, reports it, and never exits. */
+    public static class HungFork {
+        public static void main(String[] args) throws Exception {
+            Process child = new ProcessBuilder("sleep", "300").start();
+            System.out.println("child " + child.pid());
+            System.out.flush();
+            Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void waitForKillsTheTreeAtTheDeadlineAndReportsIt() throws Exception {
+        File dumps = tmp.newFolder("dumps");
+        Process fork = startHungFork();
+        ProcessHandle child = awaitChild(fork);
+
+        long start = System.nanoTime();
+        ForkTimeoutException timeout = null;
+        try {
+            ForkSupervisor.waitFor(fork, DEADLINE_MS, SELECTORS, dumps);
+            fail("a hung fork must time out");
+        } catch (ForkTimeoutException e) {
+            timeout = e;
+        }
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("waited " + waitedMs + "ms", waitedMs >= DEADLINE_MS);
+        assertEquals(SELECTORS, timeout.getSelectors());
+        assertEquals(DEADLINE_MS, timeout.getDeadlineMs());
+        assertTreeDead(fork, child);
+        assertNotNull("jcmd thread dump", timeout.getThreadDump());
+        assertTrue(Files.readString(timeout.getThreadDump().toPath()).contains("HungFork.main"));
+
+        File csv = new File(tmp.getRoot(), "fork_timeouts.csv");
+        new CsvReportWriter().writeForkTimeouts(csv, List.of(timeout.toRow("candidate")));
+        List<String> lines = Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertEquals("stage,test_selectors,deadline_ms,thread_dump", lines.get(0));
+        assertTrue(lines.get(1), lines.get(1).startsWith(
+                "candidate,pkg.Agt_ESTest#test1 pkg.Agt_ESTest#test2," + DEADLINE_MS + ","));
+        assertTrue(lines.get(1), lines.get(1).endsWith(timeout.getThreadDump().getPath()));
+    }
+
+    @Test
+    public void watchKillsTheTreeAtTheDeadline() throws Exception {
+        Process fork = startHungFork();
+        ProcessHandle child = awaitChild(fork);
+
+        ForkSupervisor.Watch watch = ForkSupervisor.watch(fork, DEADLINE_MS, SELECTORS, tmp.newFolder("dumps"));
+        assertTrue("killed by the watch", fork.waitFor(30, TimeUnit.SECONDS));
+        watch.cancel();
+
+        assertNotNull(watch.timeout());
+        assertEquals(SELECTORS, watch.timeout().getSelectors());
+        assertTreeDead(fork, child);
+    }
+
+    @Test
+    public void forkFinishingInTimeIsNotTouched() throws Exception {
+        Process fork = new ProcessBuilder("sleep", "0").start();
+        assertEquals(0, ForkSupervisor.waitFor(fork, 30_000, SELECTORS, tmp.getRoot()));
+
+        Process watched = new ProcessBuilder("sleep", "0").start();
+        ForkSupervisor.Watch watch = ForkSupervisor.watch(watched, 30_000, SELECTORS, tmp.getRoot());
+        assertEquals(0, watched.waitFor());
+        watch.cancel();
+        assertNull(watch.timeout());
+    }
+
+    private static Process startHungFork() throws IOException {
+        File java = new File(System.getProperty("java.home"), "bin/java");
+        return new ProcessBuilder(java.getPath(), "-cp", System.getProperty("java.class.path"), HungFork.class.getName())
+                .redirectErrorStream(true)
+                .start();
+    }
+
+    /** Waits until the fork has started its child, so the kill has a tree to take down. */
+    private static ProcessHandle awaitChild(Process fork) throws IOException {
+        BufferedReader out = new BufferedReader(new InputStreamReader(fork.getInputStream(), StandardCharsets.UTF_8));
+        for (String line; (line = out.readLine()) != null; ) {
+            if (line.startsWith("child ")) {
+                return ProcessHandle.of(Long.parseLong(line.substring(6))).orElseThrow();
+            }
+        }
+        throw new AssertionError("fork exited before starting its child");
+    }
+
+    private static void assertTreeDead(Process fork, ProcessHandle child) throws Exception {
+        assertFalse("fork alive", fork.isAlive());
+        // The orphaned child is reaped by whoever adopts it; wait for that rather than poll once.
+        try {
+            child.onExit().get(10, TimeUnit.SECONDS);
+        } catch (java.util.concurrent.TimeoutException e) {
+            fail("child " + child.pid() + " of the fork still alive");
+        }
+    }
+}
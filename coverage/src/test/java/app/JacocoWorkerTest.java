@@ -0,0 +1,218 @@
+package app;
+
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.tools.ExecFileLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import runner.TestOutcome;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class JacocoWorkerTest {
+
+    private static final File AGENT_JAR =
+            new File("../dataset-builder/integration_pipeline/jacoco-deps/org.jacoco.agent-run-0.8.14.jar");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** Stands in for RunWorker: the selector says how to answer, the exec file gets the worker's pid. */
+    public static class FakeWorker {
+        public static void main(String[] args) throws Exception {
+            PrintStream out = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            out.println(RunWorker.REPLY_PREFIX + RunWorker.READY);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split("\t");
+                File exec = new File(parts[2]);
+                String selector = parts[3];
+                Files.writeString(exec.toPath(), Long.toString(ProcessHandle.current().pid()));
+                File marker = new File(exec.getPath() + ".crashed");
+                if (selector.equals("crash") || (selector.equals("crashonce") && marker.createNewFile())) {
+                    System.exit(3);
+                }
+                out.println("test output");
+                switch (selector) {
+                    case "poison" -> out.println(RunWorker.REPLY_PREFIX + RunWorker.POISONED);
+                    case "fail" -> out.println(RunWorker.REPLY_PREFIX + RunWorker.FAILED + " boom");
+                    default -> out.println(RunWorker.REPLY_PREFIX + RunWorker.OK);
+                }
+            }
+        }
+    }
+
+    public static class Sut {
+        static final List<String> SEEN = new ArrayList<>();
+
+        static int touch() {
+            SEEN.add("x");
+            return SEEN.size();
+        }
+    }
+
+    public static class ClinitTest {
+        @Test
+        public void touchesSut() {
+            assertEquals(1, Sut.touch());
+        }
+    }
+
+    @Test
+    public void workerIsRecycledAfterMaxRequests() throws Exception {
+        try (JacocoWorker worker = new JacocoWorker(fakeWorkerCommand(), 2)) {
+            long first = request(worker, "ok");
+            assertEquals(first, request(worker, "ok"));
+            assertNotEquals(first, request(worker, "ok"));
+        }
+    }
+
+    @Test
+    public void poisonedWorkerIsReplaced() throws Exception {
+        try (JacocoWorker worker = new JacocoWorker(fakeWorkerCommand(), 0)) {
+            long first = request(worker, "ok");
+            assertEquals(first, request(worker, "poison"));
+            assertNotEquals(first, request(worker, "ok"));
+        }
+    }
+
+    @Test
+    public void failedRequestThrowsAndReplacesWorker() throws Exception {
+        try (JacocoWorker worker = new JacocoWorker(fakeWorkerCommand(), 0)) {
+            long first = request(worker, "ok");
+            try {
+                request(worker, "fail");
+                fail("failed reply must throw");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("boom"));
+            }
+            assertNotEquals(first, request(worker, "ok"));
+        }
+    }
+
+    @Test
+    public void crashedRequestIsRetriedOnceInAFreshWorker() throws Exception {
+        try (JacocoWorker worker = new JacocoWorker(fakeWorkerCommand(), 0)) {
+            File exec = new File(tmp.getRoot(), "crashonce.exec");
+            worker.run(List.of("crashonce"), exec, false, 0);
+            assertTrue(new File(exec.getPath() + ".crashed").isFile());
+
+            try {
+                worker.run(List.of("crash"), new File(tmp.getRoot(), "crash.exec"), false, 0);
+                fail("second crash must not be retried");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("worker exit=3"));
+            }
+        }
+    }
+
+    @Test
+    public void requestLoaderDefinesOnlyClassesUnderItsRoots() throws Exception {
+        ClassLoader parent = getClass().getClassLoader();
+        try (IsolatingClassLoader cl = new IsolatingClassLoader(List.of(testClassesDir().getPath()), parent)) {
+            Class<?> sut = cl.loadClass(Sut.class.getName());
+            assertNotSame(Sut.class, sut);
+            assertSame(cl, sut.getClassLoader());
+            assertSame(Test.class, cl.loadClass(Test.class.getName()));
+            assertSame(IsolatingClassLoader.class, cl.loadClass(IsolatingClassLoader.class.getName()));
+            assertSame(String.class, cl.loadClass(String.class.getName()));
+        }
+    }
+
+    @Test
+    public void everyRequestOfOneWorkerRecordsTheStaticInitializer() throws Exception {
+        assumeTrue("JaCoCo agent jar not found", AGENT_JAR.isFile());
+        File libs = tmp.newFolder("libs");
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            File f = new File(entry);
+            if (f.isFile() && f.getName().endsWith(".jar")) {
+                Files.createSymbolicLink(new File(libs, f.getName()).toPath(), f.getAbsoluteFile().toPath());
+            }
+        }
+        String tests = testClassesDir().getPath();
+        String tool = new File(RunWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+
+        String[] props = { ForkedJacocoRunner.WORKER_PROP, ForkedJacocoRunner.WORKER_MAX_REQUESTS_PROP,
+                io.ContentCache.CACHE_DIR_PROP };
+        String[] saved = new String[props.length];
+        for (int i = 0; i < props.length; i++) saved[i] = System.getProperty(props[i]);
+        System.setProperty(ForkedJacocoRunner.WORKER_PROP, "true");
+        System.setProperty(ForkedJacocoRunner.WORKER_MAX_REQUESTS_PROP, "0");
+        System.setProperty(io.ContentCache.CACHE_DIR_PROP, tmp.newFolder("cache").getPath());
+        try (ForkedJacocoRunner runner = new ForkedJacocoRunner(
+                AGENT_JAR.getAbsolutePath(), libs, tests, tests, tool, "app.RunMany")) {
+            List<String> sessions = new ArrayList<>();
+            for (int i = 1; i <= 2; i++) {
+                File exec = new File(tmp.getRoot(), "r" + i + ".exec");
+                Map<String, TestOutcome.Status> outcomes =
+                        runner.runSelectors(List.of(ClinitTest.class.getName()), exec, false);
+                assertFalse(outcomes.isEmpty());
+                for (TestOutcome.Status s : outcomes.values()) assertEquals(TestOutcome.Status.SUCCESSFUL, s);
+
+                ExecFileLoader loader = new ExecFileLoader();
+                loader.load(exec);
+                sessions.add(loader.getSessionInfoStore().getInfos().get(0).getId());
+                assertTrue("request " + i + " must cover Sut.<clinit>",
+                        clinitCovered(loader, Sut.class));
+            }
+            assertEquals("both requests must be served by one worker", sessions.get(0), sessions.get(1));
+        } finally {
+            for (int i = 0; i < props.length; i++) {
+                if (saved[i] == null) System.clearProperty(props[i]);
+                else System.setProperty(props[i], saved[i]);
+            }
+        }
+    }
+
+    private long request(JacocoWorker worker, String selector) throws Exception {
+        File exec = tmp.newFile();
+        worker.run(List.of(selector), exec, false, 0);
+        return Long.parseLong(Files.readString(exec.toPath()).trim());
+    }
+
+    private static List<String> fakeWorkerCommand() {
+        return List.of(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), FakeWorker.class.getName());
+    }
+
+    private static boolean clinitCovered(ExecFileLoader loader, Class<?> type) throws Exception {
+        String resource = type.getName().replace('.', '/') + ".class";
+        File classFile = new File(testClassesDir(), resource);
+        CoverageBuilder builder = new CoverageBuilder();
+        new Analyzer(loader.getExecutionDataStore(), builder).analyzeAll(classFile);
+        for (IClassCoverage cc : builder.getClasses()) {
+            for (IMethodCoverage m : cc.getMethods()) {
+                if (m.getName().equals("<clinit>")) {
+                    return m.getInstructionCounter().getCoveredCount() > 0;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static File testClassesDir() throws Exception {
+        return new File(JacocoWorkerTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+}
@@ -0,0 +1,89 @@
+package app;
+
+import io.ContentCache;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ManifestSchedulerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final String savedCacheDir = System.getProperty(ContentCache.CACHE_DIR_PROP);
+
+    @After
+    public void restoreCacheDir() {
+        if (savedCacheDir == null) System.clearProperty(ContentCache.CACHE_DIR_PROP);
+        else System.setProperty(ContentCache.CACHE_DIR_PROP, savedCacheDir);
+    }
+
+    @Test
+    public void jsonManifestAcceptsArraysAndNamedArguments() throws IOException {
+        File manifest = tmp.newFile("targets.json");
+        Files.writeString(manifest.toPath(), "{\"targets\": [\n"
+                + "  [\"sut\", \"w1\", \"pkg.ManualTest\", \"pkg.A_ESTest\", \"agent.jar\", \"sut\", \"libs\", \"tests\"],\n"
+                + "  {\"classesDir\": \"sut\", \"workDir\": \"w2\", \"manualTestClass\": \"pkg.ManualTest\",\n"
+                + "   \"agtTestClass\": \"pkg.B_ESTest\", \"jacocoAgent\": \"agent.jar\", \"sutClasses\": \"sut\",\n"
+                + "   \"libsDir\": \"libs\", \"testClassesDir\": \"tests\", \"testTimeoutMs\": 60000}\n"
+                + "]}\n", StandardCharsets.UTF_8);
+
+        List<ManifestScheduler.Target> targets = ManifestScheduler.readManifest(manifest, tmp.getRoot());
+
+        assertEquals(2, targets.size());
+        assertEquals(List.of("sut", "w1", "pkg.ManualTest", "pkg.A_ESTest", "agent.jar", "sut", "libs", "tests"),
+                targets.get(0).args);
+        assertEquals("pkg.B_ESTest", targets.get(1).agtTestClass());
+        assertEquals("60000", targets.get(1).args.get(8));
+        assertEquals(new File(tmp.getRoot(), "w2"), targets.get(1).workDir);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void jsonTargetWithoutRequiredArgumentIsRejected() throws IOException {
+        File manifest = tmp.newFile("targets.json");
+        Files.writeString(manifest.toPath(), "[{\"classesDir\": \"sut\", \"workDir\": \"w\"}]", StandardCharsets.UTF_8);
+
+        ManifestScheduler.readManifest(manifest, tmp.getRoot());
+    }
+
+    @Test
+    public void unknownTargetsFirstThenLongestExpectedThenManifestOrder() throws IOException {
+        System.setProperty(ContentCache.CACHE_DIR_PROP, tmp.newFolder("cache").getPath());
+        File manifest = tmp.newFile("targets.tsv");
+        StringBuilder lines = new StringBuilder("# classesDir\tworkDir\t...\n");
+        String[][] targets = { { "A", "tests1" }, { "B", "tests1" }, { "C", "tests2" }, { "D", "tests1" }, { "E", "tests1" } };
+        for (String[] t : targets) {
+            lines.append(String.join("\t", "sut", "w" + t[0], "pkg.ManualTest", "pkg." + t[0] + "_ESTest",
+                    "agent.jar", "sut", "libs", t[1])).append('\n');
+        }
+        Files.writeString(manifest.toPath(), lines, StandardCharsets.UTF_8);
+        List<ManifestScheduler.Target> read = ManifestScheduler.readManifest(manifest, tmp.getRoot());
+
+        // B and D ran as whole targets before; C only has per-test history (manual + AGT).
+        DurationHistory targetHistory = DurationHistory.loadTargets();
+        targetHistory.record(read.get(1).key, 100);
+        targetHistory.record(read.get(3).key, 500);
+        DurationHistory tests2 = DurationHistory.load(new File(tmp.getRoot(), "tests2").getPath());
+        tests2.record("pkg.ManualTest#m", 200);
+        tests2.record("pkg.C_ESTest#t", 300);
+        tests2.save();
+
+        List<ManifestScheduler.Target> order = ManifestScheduler.schedule(read, targetHistory, tmp.getRoot());
+
+        List<String> started = new ArrayList<>();
+        for (ManifestScheduler.Target t : order) started.add(t.agtTestClass() + " " + t.expectedMs);
+        long unknown = ManifestScheduler.UNKNOWN;
+        assertEquals(List.of("pkg.A_ESTest " + unknown, "pkg.E_ESTest " + unknown,
+                "pkg.C_ESTest 500", "pkg.D_ESTest 500", "pkg.B_ESTest 100"), started);
+    }
+}
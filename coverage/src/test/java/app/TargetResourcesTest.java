@@ -0,0 +1,47 @@
+package app;
+
+import jacoco.AnalysisScope;
+import jacoco.CoverageAnalyzer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TargetResourcesTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void changedInputsGetFreshResources() throws Exception {
+        File sut = tmp.newFolder("sut");
+        File libs = tmp.newFolder("libs");
+        File tests = tmp.newFolder("tests");
+        File clazz = new File(sut, "A.class");
+        Files.write(clazz.toPath(), new byte[] { 1, 2, 3 });
+
+        try (TargetResources resources = new TargetResources()) {
+            CoverageAnalyzer analyzer = resources.analyzer(sut, AnalysisScope.all());
+            ForkedJacocoRunner runner = resources.runner("agent.jar", libs, sut.getPath(), tests.getPath(), "tool.jar", null);
+
+            resources.dropStale();
+            assertSame(analyzer, resources.analyzer(sut, AnalysisScope.all()));
+            assertSame(runner, resources.runner("agent.jar", libs, sut.getPath(), tests.getPath(), "tool.jar", null));
+
+            Files.write(clazz.toPath(), new byte[] { 1, 2, 3, 4 });
+            resources.dropStale();
+            assertNotSame(analyzer, resources.analyzer(sut, AnalysisScope.all()));
+            assertNotSame(runner, resources.runner("agent.jar", libs, sut.getPath(), tests.getPath(), "tool.jar", null));
+
+            runner = resources.runner("agent.jar", libs, sut.getPath(), tests.getPath(), "tool.jar", null);
+            Files.write(new File(libs, "new.jar").toPath(), new byte[0]);
+            resources.dropStale();
+            assertNotSame(runner, resources.runner("agent.jar", libs, sut.getPath(), tests.getPath(), "tool.jar", null));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io;
+
+import jacoco.TestDelta;
+import model.ForkTimeoutRow;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FilterJournalTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final String header = FilterJournal.header("pkg.ManualTest", "pkg.Agt_ESTest",
+            new ExecutionDataStore(), List.of("test0", "test1", "test2"));
+
+    @Test
+    public void restoresDecidedCandidatesUpToTornLine() throws IOException {
+        File file = new File(tmp.getRoot(), FilterJournal.FILE_NAME);
+        ExecutionDataStore probes = new ExecutionDataStore();
+        probes.put(new ExecutionData(7L, "pkg/A", new boolean[] { true, false, true }));
+
+        try (FilterJournal journal = FilterJournal.create(file, header, FilterJournal.Restored.NONE)) {
+            journal.candidate(0, new TestDelta("pkg.Agt_ESTest#test0", 3, 1, 2, 9), FilterJournal.Decision.KEEP, probes);
+            journal.timeout(new ForkTimeoutRow("candidate", "pkg.Agt_ESTest#test1", 500, null));
+            journal.candidate(1, new TestDelta("pkg.Agt_ESTest#test1", 0, 0, 0, 0), FilterJournal.Decision.FAST_DROP, null);
+            journal.timeout(new ForkTimeoutRow("candidate", "pkg.Agt_ESTest#test2", 500, null));
+        }
+        try (FileWriter w = new FileWriter(file, true)) {
+            w.write("C\t2\tpkg.Agt_ESTest#test2\tdrop\t1");   // killed mid-line
+        }
+
+        FilterJournal.Restored restored = FilterJournal.read(file, header);
+
+        assertEquals(2, restored.getEntries().size());
+        FilterJournal.Entry kept = restored.getEntries().get(0);
+        assertEquals(FilterJournal.Decision.KEEP, kept.getDecision());
+        assertEquals(9, kept.getTestDelta().getAddedInstructions());
+        assertArrayEquals(new boolean[] { true, false, true }, kept.getProbes().get(7L).getProbes());
+        assertEquals(FilterJournal.Decision.FAST_DROP, restored.getEntries().get(1).getDecision());
+        // test2 runs again, so its timeout is not restored.
+        assertEquals(1, restored.getTimeouts().size());
+        assertEquals("pkg.Agt_ESTest#test1", restored.getTimeouts().get(0).getTestSelectors());
+
+        // Rewritten without the torn line; appending continues after the restored entries.
+        FilterJournal.create(file, header, restored).close();
+        assertEquals(2, FilterJournal.read(file, header).getEntries().size());
+    }
+
+    @Test
+    public void ignoresJournalOfAnotherRun() throws IOException {
+        File file = new File(tmp.getRoot(), FilterJournal.FILE_NAME);
+        try (FilterJournal journal = FilterJournal.create(file, header, FilterJournal.Restored.NONE)) {
+            journal.candidate(0, new TestDelta("pkg.Agt_ESTest#test0", 1, 1, 1, 1), FilterJournal.Decision.DROP, null);
+        }
+        String other = FilterJournal.header("pkg.ManualTest", "pkg.Agt_ESTest",
+                new ExecutionDataStore(), List.of("test0", "test1"));
+
+        assertSame(FilterJournal.Restored.NONE, FilterJournal.read(file, other));
+    }
+}
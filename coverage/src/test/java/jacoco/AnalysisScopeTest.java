@@ -0,0 +1,171 @@
+package jacoco;
+
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.internal.data.CRC64;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AnalysisScopeTest {
+
+    private static final String[] PROPS =
+            { AnalysisScope.MODE_PROP, AnalysisScope.INCLUDES_PROP, AnalysisScope.EXCLUDES_PROP };
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final String[] saved = new String[PROPS.length];
+    {
+        for (int i = 0; i < PROPS.length; i++) saved[i] = System.getProperty(PROPS[i]);
+    }
+
+    @After
+    public void restoreProperties() {
+        for (int i = 0; i < PROPS.length; i++) {
+            if (saved[i] == null) System.clearProperty(PROPS[i]);
+            else System.setProperty(PROPS[i], saved[i]);
+        }
+    }
+
+    static class Executed {
+        int twice(int x) {
+            return x > 0 ? 2 * x : 0;
+        }
+    }
+
+    static class NeverExecuted {
+        int half(int x) {
+            return x / 2;
+        }
+    }
+
+    @Test
+    public void defaultsAreTheSharedAllScope() {
+        assertSame(AnalysisScope.all(), scope(null, null, null, "pkg.Foo_ESTest"));
+        assertTrue(AnalysisScope.all().accepts("any/pkg/Foo$1"));
+    }
+
+    @Test
+    public void cutModeKeepsOnlyThePackageOfTheClassUnderTest() {
+        AnalysisScope scope = scope("cut", null, null, "pkg.sub.Foo_ESTest");
+        assertTrue(scope.accepts("pkg/sub/Foo"));
+        assertTrue(scope.accepts("pkg/sub/Bar$Inner"));
+        assertFalse(scope.accepts("pkg/sub/deeper/Foo"));
+        assertFalse(scope.accepts("pkg/Foo"));
+        assertFalse(scope.accepts("pkg/subway/Foo"));
+        assertFalse(scope.accepts("Foo"));
+    }
+
+    @Test
+    public void cutModeInTheDefaultPackage() {
+        AnalysisScope scope = scope("cut", null, null, "Foo_ESTest");
+        assertTrue(scope.accepts("Foo"));
+        assertTrue(scope.accepts("Bar$1"));
+        assertFalse(scope.accepts("pkg/Foo"));
+    }
+
+    @Test
+    public void cutModeNeedsTheClassUnderTest() {
+        try {
+            scope("cut", null, null, " ");
+            fail("cut without a class must be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(AnalysisScope.MODE_PROP));
+        }
+    }
+
+    @Test
+    public void includesAndExcludesUseJacocoWildcards() {
+        AnalysisScope scope = scope(null, "pkg.*:other.Exact", "*Generated*:pkg.sub.?ock", null);
+        assertTrue(scope.accepts("pkg/Foo"));
+        assertTrue(scope.accepts("pkg/sub/Foo$Bar"));
+        assertTrue(scope.accepts("other/Exact"));
+        assertFalse(scope.accepts("other/Exactly"));
+        assertFalse(scope.accepts("third/Foo"));
+        assertFalse(scope.accepts("pkg/FooGenerated"));
+        assertFalse(scope.accepts("pkg/sub/Mock"));
+        assertTrue(scope.accepts("pkg/sub/Stock"));
+    }
+
+    @Test
+    public void unknownModeIsRejected() {
+        try {
+            scope("some", null, null, null);
+            fail("unknown mode must be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("some"));
+        }
+    }
+
+    @Test
+    public void execScopeReportsTheSameTotalsAsAll() throws IOException {
+        File classes = tmp.newFolder("classes");
+        byte[] executed = copy(Executed.class, classes);
+        copy(NeverExecuted.class, classes);
+
+        long id = CRC64.classId(executed);
+        boolean[] probes = new boolean[ClassProbeModel.build(id, executed).probeCount];
+        probes[0] = true;
+        ExecutionDataStore store = new ExecutionDataStore();
+        store.put(new ExecutionData(id, Executed.class.getName().replace('.', '/'), probes));
+        ProbeSnapshot snapshot = ProbeSnapshot.of(store);
+
+        CoverageAnalyzer.AnalysisResult all = new CoverageAnalyzer(classes, AnalysisScope.all()).analyzeSnapshot(snapshot);
+        CoverageAnalyzer.AnalysisResult exec =
+                new CoverageAnalyzer(classes, scope("exec", null, null, null)).analyzeSnapshot(snapshot);
+
+        assertEquals(2, all.getPerClass().size());
+        assertEquals(1, exec.getPerClass().size());
+        assertTrue(all.getCoverageSet().size() > 0);
+        assertEquals(all.getCoverageSet().getCoveredUnits(), exec.getCoverageSet().getCoveredUnits());
+        assertEquals(coveredTotals(all.getPerClass()), coveredTotals(exec.getPerClass()));
+    }
+
+    private static AnalysisScope scope(String mode, String includes, String excludes, String cutClass) {
+        String[] values = { mode, includes, excludes };
+        for (int i = 0; i < PROPS.length; i++) {
+            if (values[i] == null) System.clearProperty(PROPS[i]);
+            else System.setProperty(PROPS[i], values[i]);
+        }
+        return AnalysisScope.fromSystemProperties(cutClass);
+    }
+
+    /** Covered lines, methods, branches and instructions over all classes. */
+    private static String coveredTotals(Map<String, IClassCoverage> perClass) {
+        int lines = 0, methods = 0, branches = 0, instructions = 0;
+        for (IClassCoverage cc : perClass.values()) {
+            lines += cc.getLineCounter().getCoveredCount();
+            methods += cc.getMethodCounter().getCoveredCount();
+            branches += cc.getBranchCounter().getCoveredCount();
+            instructions += cc.getInstructionCounter().getCoveredCount();
+        }
+        return lines + "/" + methods + "/" + branches + "/" + instructions;
+    }
+
+    private static byte[] copy(Class<?> type, File classes) throws IOException {
+        String resource = type.getName().replace('.', '/') + ".class";
+        byte[] bytes;
+        try (InputStream in = type.getResourceAsStream("/" + resource)) {
+            bytes = in.readAllBytes();
+        }
+        File target = new File(classes, resource);
+        target.getParentFile().mkdirs();
+        Files.write(target.toPath(), bytes);
+        return bytes;
+    }
+}
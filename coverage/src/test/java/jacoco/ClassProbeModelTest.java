@@ -0,0 +1,203 @@
+package jacoco;
+
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.internal.data.CRC64;
+import model.UnitDictionary;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClassProbeModelTest {
+
+    private final UnitDictionary dictionary = new UnitDictionary();
+
+    @Test
+    public void summariesMatchJacocoOnFixture() throws IOException {
+        assertMatchesJacoco(bytes(Fixture.class), new Random(1), 200);
+    }
+
+    @Test
+    public void summariesMatchJacocoOnMainClasses() throws IOException {
+        Path classes = Path.of(ClassProbeModel.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(classes)) {
+            walk.filter(p -> p.toString().endsWith(".class")).forEach(files::add);
+        }
+        assertTrue(files.size() > 20);
+        Random random = new Random(2);
+        for (Path f : files) {
+            assertMatchesJacoco(Files.readAllBytes(f), random, 20);
+        }
+    }
+
+    @Test
+    public void syntheticClassesAreSkippedLikeJacoco() throws Exception {
+        // javac generates a synthetic holder class for the switch map of Fixture.kind.
+        assertNull(ClassProbeModel.build(1L, bytes(Class.forName(ClassProbeModelTest.class.getName() + "$1"))));
+    }
+
+    /** Nothing, everything, each probe alone (up to 100 probes) and random vectors give JaCoCo's summary. */
+    private void assertMatchesJacoco(byte[] bytes, Random random, int vectors) throws IOException {
+        long id = CRC64.classId(bytes);
+        ClassProbeModel model = ClassProbeModel.build(id, bytes);
+        if (model == null) return;
+
+        int n = model.probeCount;
+        List<boolean[]> probes = new ArrayList<>();
+        probes.add(null);
+        boolean[] all = new boolean[n];
+        Arrays.fill(all, true);
+        probes.add(all);
+        for (int p = 0; p < n && n <= 100; p++) {
+            boolean[] one = new boolean[n];
+            one[p] = true;
+            probes.add(one);
+        }
+        for (int v = 0; v < vectors; v++) {
+            double density = random.nextDouble();
+            boolean[] some = new boolean[n];
+            for (int p = 0; p < n; p++) some[p] = random.nextDouble() < density;
+            probes.add(some);
+        }
+
+        for (boolean[] hit : probes) {
+            ExecutionDataStore store = new ExecutionDataStore();
+            if (hit != null) store.put(new ExecutionData(id, model.name, hit.clone()));
+            CoverageBuilder builder = new CoverageBuilder();
+            new Analyzer(store, builder).analyzeClass(bytes, model.name);
+            IClassCoverage cc = builder.getClasses().iterator().next();
+
+            ClassSummary expected = ClassSummary.of(cc, dictionary);
+            ClassSummary actual = model.summary(hit, dictionary);
+            assertNotNull(actual);
+            String where = model.name + " " + (hit == null ? "null" : Arrays.toString(hit));
+            assertEquals(where, expected.firstLine, actual.firstLine);
+            assertArrayEquals(where, expected.lineStatus, actual.lineStatus);
+            assertEquals(where, expected.coveredLines, actual.coveredLines);
+            assertEquals(where, expected.coveredInstructions, actual.coveredInstructions);
+            assertEquals(where, expected.coveredBranches, actual.coveredBranches);
+            assertEquals(where, expected.coveredMethods, actual.coveredMethods);
+            assertArrayEquals(where, expected.unitIds, actual.unitIds);
+        }
+    }
+
+    private static byte[] bytes(Class<?> c) throws IOException {
+        try (InputStream in = c.getResourceAsStream("/" + c.getName().replace('.', '/') + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Branches, switches, loops, finally blocks and try-with-resources, which the filters rewrite. */
+    @SuppressWarnings("unused")
+    static final class Fixture {
+
+        static int branches(int a, int b) {
+            if (a > 0 && b > 0) {
+                return a + b;
+            } else if (a < 0 || b < 0) {
+                return a - b;
+            }
+            return a == b ? 0 : 1;
+        }
+
+        static int loop(int[] values) {
+            int sum = 0;
+            for (int v : values) {
+                if (v % 2 == 0) continue;
+                sum += v;
+            }
+            while (sum > 100) sum /= 2;
+            return sum;
+        }
+
+        static String strings(String s) {
+            switch (s) {
+                case "a":
+                    return "A";
+                case "b":
+                case "c":
+                    return "BC";
+                default:
+                    return s;
+            }
+        }
+
+        static int kind(Thread.State state) {
+            switch (state) {
+                case NEW:
+                    return 0;
+                case RUNNABLE:
+                    return 1;
+                default:
+                    return 2;
+            }
+        }
+
+        static int lookup(int key) {
+            switch (key) {
+                case 1: return 10;
+                case 1000: return 20;
+                case 100000: return 30;
+                default: return -1;
+            }
+        }
+
+        static int withFinally(int a) {
+            try {
+                if (a > 1) throw new IllegalStateException();
+                return a;
+            } catch (IllegalStateException e) {
+                return -a;
+            } finally {
+                System.out.flush();
+            }
+        }
+
+        static int resources(String path) throws IOException {
+            try (InputStream in = Files.newInputStream(Path.of(path))) {
+                return in.read();
+            }
+        }
+
+        static Object lambda(List<String> xs) {
+            return xs.stream().filter(x -> x.isEmpty() ? false : x.charAt(0) == 'a').count();
+        }
+
+        synchronized int locked(int a) {
+            synchronized (this) {
+                return a + 1;
+            }
+        }
+
+        static String pattern(Object o) {
+            if (o instanceof String s && !s.isEmpty()) return s;
+            return String.valueOf(o);
+        }
+
+        static void nothing() {
+        }
+
+        static File file(String name) {
+            return name == null ? null : new File(name);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package jacoco;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.internal.data.CRC64;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CoverageAnalyzerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    static class Initialized {
+        static final int[] TABLE = table();
+
+        private static int[] table() {
+            return new int[] { 1, 2, 3 };
+        }
+
+        static int get(int i) {
+            return i >= 0 ? TABLE[i] : 0;
+        }
+    }
+
+    @Test
+    public void staticInitializerIsCreditedToEveryTestHittingTheClass() throws IOException {
+        byte[] bytes = bytes(Initialized.class);
+        File classes = tmp.newFolder("classes");
+        Files.write(new File(classes, "Initialized.class").toPath(), bytes);
+        long id = CRC64.classId(bytes);
+        ClassProbeModel model = ClassProbeModel.build(id, bytes);
+        boolean[] all = new boolean[model.probeCount];
+        Arrays.fill(all, true);
+        boolean[] init = model.staticInitHits(all);
+        int initProbes = 0;
+        int other = -1;
+        for (int p = 0; p < init.length; p++) {
+            if (init[p]) initProbes++;
+            else if (other < 0) other = p;
+        }
+        assertEquals("one probe each in <clinit> and table()", 2, initProbes);
+
+        // The first test runs the initializer and table(); the later one only calls get().
+        boolean[] first = init.clone();
+        first[other] = true;
+        boolean[] later = new boolean[model.probeCount];
+        later[other] = true;
+        assertNull(model.staticInitHits(later));
+
+        String name = Initialized.class.getName().replace('.', '/');
+        File exec = tmp.newFile("sessions.exec");
+        try (OutputStream out = new FileOutputStream(exec)) {
+            ExecutionDataWriter writer = new ExecutionDataWriter(out);
+            writer.visitSessionInfo(new SessionInfo("T#a", 0, 0));
+            writer.visitClassExecution(new ExecutionData(id, name, first));
+            writer.visitSessionInfo(new SessionInfo("T#b", 0, 0));
+            writer.visitClassExecution(new ExecutionData(id, name, later));
+            writer.visitSessionInfo(new SessionInfo("U#c", 0, 0));
+        }
+
+        Map<String, ExecutionDataStore> sessions = new CoverageAnalyzer(classes).readTestSessions(exec);
+
+        assertEquals(List.of("T#a", "T#b", "U#c"), List.copyOf(sessions.keySet()));
+        assertArrayEquals(first, sessions.get("T#a").get(id).getProbes());
+        assertArrayEquals("a later test gets the initializer probes too", first, sessions.get("T#b").get(id).getProbes());
+        assertNull("a test not touching the class gets no probes of it", sessions.get("U#c").get(id));
+    }
+
+    private static byte[] bytes(Class<?> type) throws IOException {
+        try (InputStream in = type.getResourceAsStream("/" + type.getName().replace('.', '/') + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package jacoco;
+
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.internal.data.CRC64;
+import model.UnitDictionary;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LazyGreedySelectorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void lazySelectionEqualsNaiveGreedy() throws IOException {
+        List<byte[]> classes = List.of(bytes(ClassProbeModelTest.Fixture.class), bytes(Shapes.class));
+        File dir = tmp.newFolder("classes");
+        for (int i = 0; i < classes.size(); i++) {
+            Files.write(new File(dir, "C" + i + ".class").toPath(), classes.get(i));
+        }
+
+        try (ProbeIndex index = ProbeIndex.build(dir, new UnitDictionary())) {
+            for (long seed = 1; seed <= 5; seed++) {
+                Random random = new Random(seed);
+                ExecutionDataStore baseline = store(index, classes, random, 0.1);
+                Map<String, ExecutionDataStore> candidates = new LinkedHashMap<>();
+                for (int t = 0; t < 12; t++) {
+                    candidates.put("T" + t, store(index, classes, random, 0.3));
+                }
+                // Duplicates tie with the earlier test, which must win.
+                candidates.put("T12", candidates.get("T3"));
+
+                for (GreedySelection.Metric metric : GreedySelection.Metric.values()) {
+                    GreedySelection lazy = new LazyGreedySelector(index, AnalysisScope.all(), metric)
+                            .select(ProbeSnapshot.of(baseline), candidates);
+                    List<String> naive = naiveGreedy(classes, metric, baseline, candidates);
+
+                    List<String> picked = new ArrayList<>();
+                    for (GreedySelection.Step step : lazy.getSteps()) {
+                        picked.add(step.getTestSelector() + "+" + step.getGain());
+                    }
+                    assertFalse(naive.isEmpty());
+                    assertEquals("seed " + seed + " " + metric, naive, picked);
+                    assertFalse(lazy.getSelectors().contains("T12"));
+                    assertTrue(lazy.getEvaluations() <= candidates.size() * (lazy.getSteps().size() + 1));
+                }
+            }
+        }
+    }
+
+    /** Each round evaluates every remaining test with JaCoCo's Analyzer and picks the best, earliest first. */
+    private static List<String> naiveGreedy(List<byte[]> classes, GreedySelection.Metric metric,
+                                            ExecutionDataStore baseline, Map<String, ExecutionDataStore> candidates)
+            throws IOException {
+        Map<Long, boolean[]> acc = new HashMap<>();
+        for (ExecutionData d : baseline.getContents()) acc.put(d.getId(), d.getProbes().clone());
+        Map<String, ExecutionDataStore> remaining = new LinkedHashMap<>(candidates);
+        List<String> picked = new ArrayList<>();
+        while (true) {
+            String best = null;
+            int bestGain = 0;
+            for (Map.Entry<String, ExecutionDataStore> c : remaining.entrySet()) {
+                int gain = 0;
+                for (ExecutionData d : c.getValue().getContents()) {
+                    byte[] bytes = classBytes(classes, d.getId());
+                    gain += covered(bytes, metric, or(acc.get(d.getId()), d.getProbes()))
+                            - covered(bytes, metric, acc.get(d.getId()));
+                }
+                if (gain > bestGain) {
+                    best = c.getKey();
+                    bestGain = gain;
+                }
+            }
+            if (best == null) return picked;
+            for (ExecutionData d : remaining.remove(best).getContents()) {
+                acc.put(d.getId(), or(acc.get(d.getId()), d.getProbes()));
+            }
+            picked.add(best + "+" + bestGain);
+        }
+    }
+
+    private static int covered(byte[] bytes, GreedySelection.Metric metric, boolean[] probes) throws IOException {
+        long id = CRC64.classId(bytes);
+        ExecutionDataStore store = new ExecutionDataStore();
+        if (probes != null) store.put(new ExecutionData(id, "C", probes.clone()));
+        CoverageBuilder builder = new CoverageBuilder();
+        new Analyzer(store, builder).analyzeClass(bytes, "C");
+        IClassCoverage cc = builder.getClasses().iterator().next();
+        switch (metric) {
+            case BRANCHES:
+                return cc.getBranchCounter().getCoveredCount();
+            case INSTRUCTIONS:
+                return cc.getInstructionCounter().getCoveredCount();
+            default:
+                return cc.getLineCounter().getCoveredCount();
+        }
+    }
+
+    private static boolean[] or(boolean[] a, boolean[] b) {
+        boolean[] r = b.clone();
+        for (int p = 0; a != null && p < a.length; p++) r[p] |= a[p];
+        return r;
+    }
+
+    private static ExecutionDataStore store(ProbeIndex index, List<byte[]> classes, Random random, double density) {
+        ExecutionDataStore store = new ExecutionDataStore();
+        for (byte[] bytes : classes) {
+            if (random.nextInt(3) == 0) continue;
+            long id = CRC64.classId(bytes);
+            boolean[] probes = new boolean[ClassProbeModel.build(id, bytes).probeCount];
+            for (int p = 0; p < probes.length; p++) probes[p] = random.nextDouble() < density;
+            store.put(new ExecutionData(id, index.className(id), probes));
+        }
+        return store;
+    }
+
+    private static byte[] classBytes(List<byte[]> classes, long id) {
+        for (byte[] bytes : classes) {
+            if (CRC64.classId(bytes) == id) return bytes;
+        }
+        throw new IllegalArgumentException(Long.toHexString(id));
+    }
+
+    private static byte[] bytes(Class<?> c) throws IOException {
+        try (InputStream in = c.getResourceAsStream("/" + c.getName().replace('.', '/') + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    @SuppressWarnings("unused")
+    static final class Shapes {
+
+        static double area(String kind, double a, double b) {
+            if (kind == null) return 0;
+            switch (kind) {
+                case "square":
+                    return a * a;
+                case "rect":
+                    return a * b;
+                case "circle":
+                    return Math.PI * a * a;
+                default:
+                    return a > 0 && b > 0 ? a * b / 2 : 0;
+            }
+        }
+
+        static int sides(String kind) {
+            return "triangle".equals(kind) ? 3 : kind.startsWith("r") || kind.startsWith("s") ? 4 : 0;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package jacoco;
+
+import io.ContentCache;
+import model.UnitDictionary;
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProbeIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final String savedCacheDir = System.getProperty(ContentCache.CACHE_DIR_PROP);
+
+    @After
+    public void restoreCacheDir() {
+        if (savedCacheDir == null) System.clearProperty(ContentCache.CACHE_DIR_PROP);
+        else System.setProperty(ContentCache.CACHE_DIR_PROP, savedCacheDir);
+    }
+
+    static class Outer {
+        int sign(int x) {
+            return x > 0 ? 1 : x < 0 ? -1 : 0;
+        }
+    }
+
+    static class Inner {
+        String name(Object o) {
+            return o == null ? "null" : o.getClass().getSimpleName();
+        }
+    }
+
+    static class Deep {
+        int sum(int[] xs) {
+            int s = 0;
+            for (int x : xs) s += x;
+            return s;
+        }
+    }
+
+    @Test
+    public void jarIndexMatchesJacocoOnTheExtractedTreeAndIsCached() throws IOException {
+        System.setProperty(ContentCache.CACHE_DIR_PROP, tmp.newFolder("cache").getPath());
+        File jar = tmp.newFile("app.jar");
+        byte[] deepJar = jar(Map.of(entry(Deep.class), bytes(Deep.class)));
+        byte[] innerJar = jar(Map.of(entry(Inner.class), bytes(Inner.class), "nested/deep.jar", deepJar));
+        Files.write(jar.toPath(), jar(Map.of(
+                "BOOT-INF/classes/" + entry(Outer.class), bytes(Outer.class),
+                "BOOT-INF/lib/inner.jar", innerJar,
+                "META-INF/versions/11/" + entry(Outer.class), bytes(Outer.class),
+                "README.txt", "not a class".getBytes(StandardCharsets.UTF_8))));
+        File extracted = extract(jar, tmp.newFolder("extracted"));
+
+        // Random probes for every class JaCoCo finds in the extracted tree.
+        ExecutionDataStore store = new ExecutionDataStore();
+        CoverageBuilder shapes = new CoverageBuilder();
+        new Analyzer(new ExecutionDataStore(), shapes).analyzeAll(extracted);
+        Random random = new Random(3);
+        for (IClassCoverage cc : shapes.getClasses()) {
+            boolean[] probes = new boolean[ClassProbeModel.build(cc.getId(), classBytes(cc)).probeCount];
+            for (int p = 0; p < probes.length; p++) probes[p] = random.nextBoolean();
+            store.put(new ExecutionData(cc.getId(), cc.getName(), probes));
+        }
+        CoverageBuilder expected = new CoverageBuilder();
+        new Analyzer(store, expected).analyzeAll(extracted);
+
+        UnitDictionary dictionary = new UnitDictionary();
+        Map<Long, IClassCoverage> byId = new HashMap<>();
+        for (IClassCoverage cc : expected.getClasses()) byId.put(cc.getId(), cc);
+        assertEquals(3, byId.size());
+
+        try (ProbeIndex index = ProbeIndex.build(jar, dictionary)) {
+            assertEquals(byId.keySet(), new HashSet<>(index.classIds()));
+            for (IClassCoverage cc : byId.values()) {
+                assertEquals(cc.getName(), index.className(cc.getId()));
+                assertSameSummary(ClassSummary.of(cc, dictionary),
+                        index.summary(cc.getId(), store.get(cc.getId()).getProbes()), cc.getName());
+            }
+        }
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(log, true, StandardCharsets.UTF_8));
+        try (ProbeIndex cached = ProbeIndex.build(jar, dictionary)) {
+            System.setOut(out);
+            assertTrue(log.toString(StandardCharsets.UTF_8), log.toString(StandardCharsets.UTF_8).contains("from cached index"));
+            assertEquals(byId.keySet(), new HashSet<>(cached.classIds()));
+            for (IClassCoverage cc : byId.values()) {
+                assertSameSummary(ClassSummary.of(cc, dictionary),
+                        cached.summary(cc.getId(), store.get(cc.getId()).getProbes()), cc.getName());
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void assertSameSummary(ClassSummary expected, ClassSummary actual, String where) {
+        assertNotNull(where, actual);
+        assertEquals(where, expected.firstLine, actual.firstLine);
+        assertArrayEquals(where, expected.lineStatus, actual.lineStatus);
+        assertEquals(where, expected.coveredLines, actual.coveredLines);
+        assertEquals(where, expected.coveredInstructions, actual.coveredInstructions);
+        assertEquals(where, expected.coveredBranches, actual.coveredBranches);
+        assertEquals(where, expected.coveredMethods, actual.coveredMethods);
+        assertArrayEquals(where, expected.unitIds, actual.unitIds);
+    }
+
+    private static byte[] classBytes(IClassCoverage cc) throws IOException {
+        for (Class<?> c : new Class<?>[] { Outer.class, Inner.class, Deep.class }) {
+            if (c.getName().replace('.', '/').equals(cc.getName())) return bytes(c);
+        }
+        throw new AssertionError("unexpected class " + cc.getName());
+    }
+
+    private static String entry(Class<?> c) {
+        return c.getName().replace('.', '/') + ".class";
+    }
+
+    private static byte[] bytes(Class<?> c) throws IOException {
+        try (InputStream in = c.getResourceAsStream("/" + entry(c))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] jar(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> e : new TreeMap<>(entries).entrySet()) {
+                zip.putNextEntry(new ZipEntry(e.getKey()));
+                zip.write(e.getValue());
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Unzips the outer jar only; nested jars stay jars, as in an unpacked fat jar. */
+    private static File extract(File jar, File dir) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(jar.toPath()))) {
+            for (ZipEntry e; (e = zip.getNextEntry()) != null; ) {
+                if (e.getName().startsWith("META-INF/versions/")) continue;
+                File f = new File(dir, e.getName());
+                f.getParentFile().mkdirs();
+                try (OutputStream out = new FileOutputStream(f)) {
+                    zip.transferTo(out);
+                }
+            }
+        }
+        return dir;
+    }
+}
@@ -0,0 +1,72 @@
+package jacoco;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ProbeSnapshotTest {
+
+    private final CoverageAnalyzer analyzer = new CoverageAnalyzer(new File("."));
+
+    @Test
+    public void mergeOrsCandidateWithoutTouchingSnapshot() {
+        ExecutionDataStore baseStore = new ExecutionDataStore();
+        baseStore.put(new ExecutionData(1L, "pkg/A", new boolean[] { true, false, false }));
+        baseStore.put(new ExecutionData(2L, "pkg/B", new boolean[] { true }));
+        ProbeSnapshot base = ProbeSnapshot.of(baseStore);
+
+        ExecutionDataStore cand = new ExecutionDataStore();
+        cand.put(new ExecutionData(1L, "pkg/A", new boolean[] { false, false, true }));
+        cand.put(new ExecutionData(3L, "pkg/C", new boolean[] { true, false }));
+
+        ExecutionDataStore merged = analyzer.merge(base, cand);
+
+        assertArrayEquals(new boolean[] { true, false, true }, merged.get(1L).getProbes());
+        assertArrayEquals(new boolean[] { true }, merged.get(2L).getProbes());
+        assertArrayEquals(new boolean[] { true, false }, merged.get(3L).getProbes());
+
+        // Snapshot unchanged, and independent of the store it was taken from.
+        assertArrayEquals(new boolean[] { true, false, false }, base.probes(1L));
+        assertNull(base.probes(3L));
+        baseStore.get(2L).getProbes()[0] = false;
+        assertArrayEquals(new boolean[] { true }, base.probes(2L));
+    }
+
+    @Test
+    public void unchangedClassesShareSnapshotProbes() {
+        ExecutionDataStore baseStore = new ExecutionDataStore();
+        baseStore.put(new ExecutionData(1L, "pkg/A", new boolean[] { true, true }));
+        ProbeSnapshot base = ProbeSnapshot.of(baseStore);
+
+        ExecutionDataStore cand = new ExecutionDataStore();
+        cand.put(new ExecutionData(1L, "pkg/A", new boolean[] { true, false }));
+
+        ExecutionDataStore merged = analyzer.merge(base, cand);
+
+        assertSame(base.probes(1L), merged.get(1L).getProbes());
+        assertEquals(1, merged.getContents().size());
+        assertFalse(cand.get(1L).getProbes()[1]);
+    }
+
+    @Test
+    public void countBeyondCountsOnlyProbesMissingFromSnapshot() {
+        ExecutionDataStore baseStore = new ExecutionDataStore();
+        baseStore.put(new ExecutionData(1L, "pkg/A", new boolean[] { true, false, false }));
+        ProbeSnapshot base = ProbeSnapshot.of(baseStore);
+
+        ExecutionDataStore cand = new ExecutionDataStore();
+        cand.put(new ExecutionData(1L, "pkg/A", new boolean[] { true, true, false }));
+        cand.put(new ExecutionData(2L, "pkg/B", new boolean[] { true, true }));
+
+        assertEquals(3, base.countBeyond(cand));
+        assertEquals(0, base.countBeyond(baseStore));
+    }
+}
@@ -0,0 +1,107 @@
+package runner;
+
+import model.TestId;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExitTrapTest {
+
+    private final String savedTrap = System.getProperty(ExitTrap.TRAP_EXIT_PROP);
+
+    @After
+    @SuppressWarnings("removal")
+    public void releaseTheTrap() {
+        // The manager stays installed for the rest of this JVM; it must let JUnit exit.
+        if (System.getSecurityManager() instanceof GuardSecurityManager m) {
+            m.trapExit = false;
+        }
+        ExitTrap.takeAttempt();
+        if (savedTrap == null) System.clearProperty(ExitTrap.TRAP_EXIT_PROP);
+        else System.setProperty(ExitTrap.TRAP_EXIT_PROP, savedTrap);
+    }
+
+    public static class SwallowsExit4 {
+        @org.junit.Test public void exits() {
+            try {
+                System.exit(2);
+            } catch (SecurityException ignored) {
+                // a test (or the SUT) that carries on
+            }
+        }
+    }
+
+    public static class SwallowsExit5 {
+        @org.junit.jupiter.api.Test void exits() {
+            try {
+                Runtime.getRuntime().halt(2);
+            } catch (SecurityException ignored) {
+                // a test (or the SUT) that carries on
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("removal")
+    public void offByDefault() {
+        System.clearProperty(ExitTrap.TRAP_EXIT_PROP);
+        ExitTrap.install();
+        assertFalse(System.getSecurityManager() instanceof GuardSecurityManager m && m.trapExit);
+    }
+
+    @Test
+    public void exitAndHaltThrowInsteadOfEndingTheJvm() {
+        install();
+        try {
+            System.exit(3);
+            fail("System.exit must be trapped");
+        } catch (TrappedExitException e) {
+            assertEquals(3, e.getStatus());
+        }
+        try {
+            Runtime.getRuntime().halt(4);
+            fail("Runtime.halt must be trapped");
+        } catch (TrappedExitException e) {
+            assertEquals(4, e.getStatus());
+        }
+        TrappedExitException last = ExitTrap.takeAttempt();
+        assertEquals(4, last.getStatus());
+        assertNull("taken once", ExitTrap.takeAttempt());
+    }
+
+    @Test
+    public void junit4TestSwallowingTheExitFails() {
+        install();
+        List<TestOutcome> outcomes = new JUnit4TestRunner(getClass().getClassLoader())
+                .runTests(List.of(new TestId(SwallowsExit4.class.getName(), "exits")));
+        assertSwallowedExitFailed(outcomes);
+    }
+
+    @Test
+    public void junit5TestSwallowingTheExitFails() {
+        install();
+        List<TestOutcome> outcomes = new JUnit5TestRunner(getClass().getClassLoader())
+                .runTests(List.of(new TestId(SwallowsExit5.class.getName(), "exits")));
+        assertSwallowedExitFailed(outcomes);
+    }
+
+    private static void install() {
+        System.setProperty(ExitTrap.TRAP_EXIT_PROP, "true");
+        ExitTrap.install();
+    }
+
+    private static void assertSwallowedExitFailed(List<TestOutcome> outcomes) {
+        assertEquals(1, outcomes.size());
+        TestOutcome o = outcomes.get(0);
+        assertEquals(TestOutcome.Status.FAILED, o.getStatus());
+        assertTrue(String.valueOf(o.getFailure()), o.getFailure() instanceof TrappedExitException);
+        assertEquals(2, ((TrappedExitException) o.getFailure()).getStatus());
+    }
+}
@@ -0,0 +1,158 @@
+package runner;
+
+import model.TestId;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+import org.junit.runner.Runner;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.MethodSorters;
+import org.junit.runners.model.InitializationError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class JUnit4TestRunnerTest {
+
+    private static final long TIMEOUT_MS = 300;
+
+    private final String savedTimeout = System.getProperty(TestTimeouts.TIMEOUT_PROP);
+    private final String savedBatch = System.getProperty(JUnit4TestRunner.BATCH_PROP);
+
+    @After
+    public void restoreProperties() {
+        restore(TestTimeouts.TIMEOUT_PROP, savedTimeout);
+        restore(JUnit4TestRunner.BATCH_PROP, savedBatch);
+        Hung.release = true;
+    }
+
+    /** Counts how often the class runner (EvoRunner in generated tests) is built. */
+    public static class CountingRunner extends BlockJUnit4ClassRunner {
+        static final AtomicInteger built = new AtomicInteger();
+
+        public CountingRunner(Class<?> testClass) throws InitializationError {
+            super(testClass);
+            built.incrementAndGet();
+        }
+    }
+
+    /** No @FixMethodOrder: JUnit does not re-sort classes that fix their order. */
+    @RunWith(CountingRunner.class)
+    public static class Selected {
+        @Test public void a() { }
+        @Test public void b() { }
+        @Test public void c() { }
+        @Test public void d() { }
+    }
+
+    @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+    public static class Overrun {
+        @Test public void a() { }
+        @Test public void b() throws InterruptedException { Thread.sleep(30_000); }
+        @Test public void c() { }
+    }
+
+    @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+    public static class Hung {
+        static volatile boolean release;
+
+        @Test public void a() { }
+        @Test public void b() {
+            while (!release) {
+                Thread.onSpinWait();   // ignores interrupts
+            }
+        }
+        @Test public void c() { }
+    }
+
+    public static class BrokenSetUp {
+        @BeforeClass public static void setUpClass() {
+            throw new IllegalStateException("no scaffolding");
+        }
+
+        @Test public void a() { }
+        @Test public void b() { }
+    }
+
+    @Test
+    public void batchRequestRunsOnlyTheSelectedMethodsInSelectorOrder() {
+        CountingRunner.built.set(0);
+        List<TestId> tests = tests(Selected.class, "d", "b", "d");
+
+        Runner runner = JUnit4TestRunner.batchRequest(Selected.class, tests).getRunner();
+        List<String> order = new ArrayList<>();
+        for (Description d : runner.getDescription().getChildren()) order.add(d.getMethodName());
+        assertEquals(List.of("d", "b"), order);
+        assertEquals(1, CountingRunner.built.get());
+
+        CountingRunner.built.set(0);
+        System.setProperty(JUnit4TestRunner.BATCH_PROP, "true");
+        List<TestOutcome> outcomes = new JUnit4TestRunner(Selected.class.getClassLoader()).runTests(tests);
+        assertEquals(List.of("d SUCCESSFUL", "b SUCCESSFUL"), describe(outcomes));
+        assertEquals("one runner for the class", 1, CountingRunner.built.get());
+    }
+
+    @Test
+    public void aClassSelectorRunsTheWholeClass() {
+        Runner runner = JUnit4TestRunner.batchRequest(Selected.class,
+                List.of(new TestId(Selected.class.getName(), "b"), new TestId(Selected.class.getName(), null)))
+                .getRunner();
+        assertEquals(4, runner.testCount());
+    }
+
+    @Test
+    public void batchInterruptsAnOverrunningTestAndRunsTheNextOne() {
+        List<TestOutcome> outcomes = runBatched(Overrun.class);
+        assertEquals(List.of("a SUCCESSFUL", "b TIMEOUT", "c SUCCESSFUL"), describe(outcomes));
+    }
+
+    @Test
+    public void testsBehindOneIgnoringTheInterruptRunInANewBatch() {
+        Hung.release = false;
+        List<TestOutcome> outcomes = runBatched(Hung.class);
+        Hung.release = true;
+        assertEquals(List.of("a SUCCESSFUL", "b TIMEOUT", "c SUCCESSFUL"), describe(outcomes));
+    }
+
+    @Test
+    public void beforeClassFailureIsAClassLevelFailure() {
+        List<TestOutcome> outcomes = runBatched(BrokenSetUp.class, "a", "b");
+        assertEquals(1, outcomes.size());
+        TestOutcome o = outcomes.get(0);
+        assertEquals(BrokenSetUp.class.getName(), o.getSelector());
+        assertEquals(TestOutcome.Status.FAILED, o.getStatus());
+        assertEquals("no scaffolding", o.getFailure().getMessage());
+    }
+
+    private static List<TestOutcome> runBatched(Class<?> testClass, String... methods) {
+        System.setProperty(TestTimeouts.TIMEOUT_PROP, Long.toString(TIMEOUT_MS));
+        System.setProperty(JUnit4TestRunner.BATCH_PROP, "true");
+        String[] selected = methods.length > 0 ? methods : new String[] { "a", "b", "c" };
+        return new JUnit4TestRunner(testClass.getClassLoader()).runTests(tests(testClass, selected));
+    }
+
+    private static List<TestId> tests(Class<?> testClass, String... methods) {
+        List<TestId> tests = new ArrayList<>();
+        for (String m : methods) tests.add(new TestId(testClass.getName(), m));
+        return tests;
+    }
+
+    private static List<String> describe(List<TestOutcome> outcomes) {
+        List<String> described = new ArrayList<>();
+        for (TestOutcome o : outcomes) {
+            described.add(o.getSelector().substring(o.getSelector().indexOf('#') + 1) + " " + o.getStatus());
+        }
+        return described;
+    }
+
+    private static void restore(String name, String value) {
+        if (value == null) System.clearProperty(name);
+        else System.setProperty(name, value);
+    }
+}
@@ -0,0 +1,125 @@
+package runner;
+
+import model.TestId;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.platform.launcher.Launcher;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class JUnit5TestRunnerTest {
+
+    private static final long TIMEOUT_MS = 300;
+
+    private final String savedTimeout = System.getProperty(TestTimeouts.TIMEOUT_PROP);
+    private final String savedBatch = System.getProperty(JUnit5TestRunner.BATCH_PROP);
+
+    @After
+    public void restoreProperties() {
+        restore(TestTimeouts.TIMEOUT_PROP, savedTimeout);
+        restore(JUnit5TestRunner.BATCH_PROP, savedBatch);
+        Hung.release = true;
+    }
+
+    @TestMethodOrder(MethodOrderer.MethodName.class)
+    public static class Overrun {
+        @org.junit.jupiter.api.Test void a() { }
+        @org.junit.jupiter.api.Test void b() throws InterruptedException { Thread.sleep(30_000); }
+        @org.junit.jupiter.api.Test void c() { }
+    }
+
+    @TestMethodOrder(MethodOrderer.MethodName.class)
+    public static class Hung {
+        static volatile boolean release;
+
+        @org.junit.jupiter.api.Test void a() { }
+        @org.junit.jupiter.api.Test void b() {
+            while (!release) {
+                Thread.onSpinWait();   // ignores interrupts
+            }
+        }
+        @org.junit.jupiter.api.Test void c() { }
+    }
+
+    /**
+     * Delegates to a real launcher, counting discoveries and listener registrations. A proxy,
+     * as the Launcher interface differs between platform versions.
+     */
+    private static final class CountingLauncher implements InvocationHandler {
+        private final Launcher delegate = LauncherFactory.create();
+        final Launcher launcher = (Launcher) Proxy.newProxyInstance(
+                Launcher.class.getClassLoader(), new Class<?>[] { Launcher.class }, this);
+        int discoveries;
+        final List<Object> registered = new ArrayList<>();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("discover")
+                    || (method.getName().equals("execute") && args[0] instanceof LauncherDiscoveryRequest)) {
+                discoveries++;
+            } else if (method.getName().equals("registerTestExecutionListeners")) {
+                registered.addAll(List.of((Object[]) args[0]));
+            }
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @Test
+    public void batchInterruptsAnOverrunningTestAndRunsTheNextOne() {
+        CountingLauncher launcher = new CountingLauncher();
+        List<TestOutcome> outcomes = runBatched(launcher.launcher, Overrun.class);
+
+        assertEquals(List.of("a SUCCESSFUL", "b TIMEOUT", "c SUCCESSFUL"), describe(outcomes));
+        assertEquals("one discovery for the class", 1, launcher.discoveries);
+        assertEquals("per-execution listeners only", List.of(), launcher.registered);
+    }
+
+    @Test
+    public void testsBehindOneIgnoringTheInterruptRunInANewBatch() {
+        Hung.release = false;
+        CountingLauncher launcher = new CountingLauncher();
+        List<TestOutcome> outcomes = runBatched(launcher.launcher, Hung.class);
+        Hung.release = true;
+
+        assertEquals(List.of("a SUCCESSFUL", "b TIMEOUT", "c SUCCESSFUL"), describe(outcomes));
+        assertEquals("the batch and the re-batch of what did not run", 2, launcher.discoveries);
+        assertEquals(List.of(), launcher.registered);
+    }
+
+    private static List<TestOutcome> runBatched(Launcher launcher, Class<?> testClass) {
+        System.setProperty(TestTimeouts.TIMEOUT_PROP, Long.toString(TIMEOUT_MS));
+        System.setProperty(JUnit5TestRunner.BATCH_PROP, "true");
+        JUnit5TestRunner runner = new JUnit5TestRunner(testClass.getClassLoader(), List.of(), launcher);
+        List<TestId> tests = new ArrayList<>();
+        for (String m : List.of("a", "b", "c")) tests.add(new TestId(testClass.getName(), m));
+        return runner.runTests(tests);
+    }
+
+    private static List<String> describe(List<TestOutcome> outcomes) {
+        List<String> described = new ArrayList<>();
+        for (TestOutcome o : outcomes) {
+            described.add(o.getSelector().substring(o.getSelector().indexOf('#') + 1) + " " + o.getStatus());
+        }
+        return described;
+    }
+
+    private static void restore(String name, String value) {
+        if (value == null) System.clearProperty(name);
+        else System.setProperty(name, value);
+    }
+}
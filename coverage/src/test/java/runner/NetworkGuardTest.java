@@ -0,0 +1,64 @@
+package runner;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NetworkGuardTest {
+
+    @After
+    public void forgetBlocked() {
+        NetworkGuard.takeBlocked(null);
+    }
+
+    @Test
+    public void loopbackAndLocalhostNamesAreLocal() {
+        for (String host : new String[] {
+                "localhost", "LocalHost", "api.localhost", "127.0.0.1", "127.1.2.3",
+                "[::1]", "::1", "0:0:0:0:0:0:0:1", "0.0.0.0", "[::]", "", null }) {
+            assertTrue(host, NetworkGuard.isLocal(host));
+        }
+    }
+
+    @Test
+    public void publicAddressesAndOtherNamesAreNot() {
+        for (String host : new String[] {
+                "8.8.8.8", "10.0.0.1", "[2001:db8::1]", "example.com", "localhost.example.com", "mylocalhost" }) {
+            assertFalse(host, NetworkGuard.isLocal(host));
+        }
+    }
+
+    @Test
+    public void ipLiteralsAreRecognisedWithoutALookup() {
+        assertTrue(NetworkGuard.isIpLiteral("127.0.0.1"));
+        assertTrue(NetworkGuard.isIpLiteral("0.0.0.0"));
+        assertTrue(NetworkGuard.isIpLiteral("::1"));
+        assertTrue(NetworkGuard.isIpLiteral("fe80::1%lo"));
+        assertFalse(NetworkGuard.isIpLiteral("localhost"));
+        assertFalse(NetworkGuard.isIpLiteral("1.2.3.example"));
+        assertFalse(NetworkGuard.isIpLiteral(""));
+    }
+
+    @Test
+    public void checkBlocksConnectionsAndLookupsAndCountsThem() {
+        NetworkGuard.check("127.0.0.1", 8080);
+        NetworkGuard.check("localhost", -1);
+        assertBlocked("8.8.8.8", 53, "8.8.8.8:53");
+        assertBlocked("example.com", -1, "lookup example.com");
+        assertEquals(2, NetworkGuard.takeBlocked("pkg.Foo_ESTest#test0"));
+        assertEquals("forgotten once taken", 0, NetworkGuard.takeBlocked(null));
+    }
+
+    private static void assertBlocked(String host, int port, String target) {
+        try {
+            NetworkGuard.check(host, port);
+            fail(host + " must be blocked");
+        } catch (NetworkBlockedException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(": " + target));
+        }
+    }
+}
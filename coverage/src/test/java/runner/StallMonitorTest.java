@@ -0,0 +1,105 @@
+package runner;
+
+import model.TestId;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StallMonitorTest {
+
+    private static final long TIMEOUT_MS = 60_000;
+    private static final long STALL_MS = 500;
+
+    private final String savedTimeout = System.getProperty(TestTimeouts.TIMEOUT_PROP);
+    private final String savedBatch = System.getProperty(JUnit4TestRunner.BATCH_PROP);
+
+    @BeforeClass
+    public static void installMonitor() {
+        String saved = System.getProperty(StallMonitor.STALL_MS_PROP);
+        System.setProperty(StallMonitor.STALL_MS_PROP, Long.toString(STALL_MS));
+        StallMonitor.install();
+        restore(StallMonitor.STALL_MS_PROP, saved);
+    }
+
+    @After
+    public void restoreProperties() {
+        restore(TestTimeouts.TIMEOUT_PROP, savedTimeout);
+        restore(JUnit4TestRunner.BATCH_PROP, savedBatch);
+    }
+
+    /** The test thread and a helper take two monitors in opposite order. */
+    public static class Deadlocks {
+        @org.junit.Test public void deadlocks() throws InterruptedException {
+            Object first = new Object();
+            Object second = new Object();
+            CountDownLatch bothHeld = new CountDownLatch(2);
+            Thread helper = new Thread(() -> lockBoth(second, first, bothHeld), "deadlock-helper");
+            helper.setDaemon(true);
+            helper.start();
+            lockBoth(first, second, bothHeld);
+        }
+
+        @org.junit.Test public void after() { }
+
+        private static void lockBoth(Object a, Object b, CountDownLatch bothHeld) {
+            synchronized (a) {
+                bothHeld.countDown();
+                try {
+                    bothHeld.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                synchronized (b) {
+                    // never reached: the other thread holds b and waits for a
+                }
+            }
+        }
+    }
+
+    @Test
+    public void deadlockedTestIsStalledLongBeforeItsTimeout() {
+        assertStalledQuickly(false);
+    }
+
+    @Test
+    public void deadlockedTestIsStalledLongBeforeItsTimeoutInABatch() {
+        assertStalledQuickly(true);
+    }
+
+    private static void assertStalledQuickly(boolean batched) {
+        System.setProperty(TestTimeouts.TIMEOUT_PROP, Long.toString(TIMEOUT_MS));
+        System.setProperty(JUnit4TestRunner.BATCH_PROP, Boolean.toString(batched));
+        List<TestId> tests = List.of(
+                new TestId(Deadlocks.class.getName(), "deadlocks"),
+                new TestId(Deadlocks.class.getName(), "after"));
+
+        long start = System.nanoTime();
+        List<TestOutcome> outcomes = new JUnit4TestRunner(Deadlocks.class.getClassLoader()).runTests(tests);
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(List.of("deadlocks STALLED", "after SUCCESSFUL"), describe(outcomes));
+        assertTrue("took " + tookMs + "ms", tookMs < TIMEOUT_MS / 6);
+    }
+
+    private static List<String> describe(List<TestOutcome> outcomes) {
+        List<String> described = new ArrayList<>();
+        for (TestOutcome o : outcomes) {
+            described.add(o.getSelector().substring(o.getSelector().indexOf('#') + 1) + " " + o.getStatus());
+        }
+        return described;
+    }
+
+    private static void restore(String name, String value) {
+        if (value == null) System.clearProperty(name);
+        else System.setProperty(name, value);
+    }
+}